@@ -15,6 +15,29 @@ if [ ! -z "$PROXY_HOST" ]; then
     fi
 fi
 
+# Embedded triple store instead of Fuseki
+if [ ! -z "$EMBEDDED_STORE_LOCATION" ]; then
+    ARGS="${ARGS} -Dsparql.embeddedLocation=${EMBEDDED_STORE_LOCATION}"
+fi
+
+# Size of the connection pool to the SPARQL endpoint
+if [ ! -z "$SPARQL_MAX_CONNECTIONS" ]; then
+    ARGS="${ARGS} -Dsparql.http.maxConnections=${SPARQL_MAX_CONNECTIONS}"
+fi
+
+# Multi-replica mode (several instances sharing SPARQL_ENDPOINT)
+if [ ! -z "$REPLICATION_ENABLED" ]; then
+    ARGS="${ARGS} -Dreplication.enabled=${REPLICATION_ENABLED}"
+fi
+
+# Embedded Lucene index
+if [ ! -z "$INDEX_BACKEND" ]; then
+    ARGS="${ARGS} -Dindex.backend=${INDEX_BACKEND}"
+fi
+if [ ! -z "$LUCENE_DIRECTORY" ]; then
+    ARGS="${ARGS} -Dindex.lucene.directory=${LUCENE_DIRECTORY}"
+fi
+
 # DAPS token validation
 if [ ! -z "$DAPS_VALIDATE_INCOMING" ]; then
     ARGS="${ARGS} -Ddaps.validateIncoming=${DAPS_VALIDATE_INCOMING}"
@@ -0,0 +1,57 @@
+package de.fraunhofer.iais.eis.ids.paris.benchmarks;
+
+import de.fraunhofer.iais.eis.Participant;
+import de.fraunhofer.iais.eis.ids.paris.persistence.ParticipantPersistenceAndIndexing;
+import de.fraunhofer.iais.eis.ids.paris.persistence.ParticipantRepositoryFacade;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the ingestion throughput when onboarding many new participants, one by one compared to bulk registration.
+ * Batching only takes effect against a SPARQL endpoint, so run it with -p sparqlUrl=http://localhost:3030/connectorData
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BulkRegistrationBenchmark {
+
+    @Param({"1000"})
+    public int participantCount;
+
+    @Param({"100", "500"})
+    public int batchSize;
+
+    @Param({""})
+    public String sparqlUrl;
+
+    private ParticipantPersistenceAndIndexing persistence;
+    private List<Participant> participants;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        persistence = new ParticipantPersistenceAndIndexing(new ParticipantRepositoryFacade(sparqlUrl), Participants.CATALOG_URI);
+        persistence.setBulkBatchSize(batchSize);
+    }
+
+    @Setup(Level.Invocation)
+    public void createParticipants() {
+        participants = Participants.create(participantCount, 2);
+    }
+
+    @Benchmark
+    public void updatedOneByOne() throws Exception {
+        for (Participant participant : participants) {
+            persistence.updated(participant);
+        }
+    }
+
+    @Benchmark
+    public void updatedAll() throws Exception {
+        persistence.updatedAll(participants);
+    }
+}
@@ -0,0 +1,103 @@
+package de.fraunhofer.iais.eis.ids.paris.benchmarks;
+
+import de.fraunhofer.iais.eis.Participant;
+import de.fraunhofer.iais.eis.ids.paris.persistence.AdmissionController;
+import de.fraunhofer.iais.eis.ids.paris.persistence.ParticipantPersistenceAndIndexing;
+import de.fraunhofer.iais.eis.ids.paris.persistence.ParticipantRepositoryFacade;
+import de.fraunhofer.iais.eis.ids.paris.persistence.VirtualThreads;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Load test of many connectors registering at the same time, each on a request thread of its own, as Tomcat would handle them.
+ * Compares a pool of platform threads, sized like the Tomcat default, with one virtual thread per registration.
+ * Registrations which are rejected by the admission control are counted rather than failing the benchmark.
+ * Virtual threads require a Java 21 runtime. Run it against a triple store, e.g.
+ * java -jar open-paris-benchmarks/target/benchmarks.jar ConcurrentRegistrationBenchmark -p sparqlUrl=http://localhost:3030/connectorData
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentRegistrationBenchmark {
+
+    @Param({"200", "1000", "5000"})
+    public int concurrentRegistrations;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"200"})
+    public int platformThreads;
+
+    @Param({"32"})
+    public int maxConcurrentRegistrations;
+
+    @Param({""})
+    public String sparqlUrl;
+
+    private ParticipantPersistenceAndIndexing persistence;
+    private AdmissionController admissionController;
+    private ExecutorService executor;
+    private List<Participant> participants;
+
+    /**
+     * Outcome of the registrations, reported next to the benchmark score
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcome {
+        public long accepted;
+        public long rejected;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        persistence = new ParticipantPersistenceAndIndexing(new ParticipantRepositoryFacade(sparqlUrl), Participants.CATALOG_URI);
+        admissionController = new AdmissionController(8, 32, maxConcurrentRegistrations, Duration.ofSeconds(30));
+        persistence.setAdmissionController(admissionController);
+        executor = threads.equals("virtual") ? VirtualThreads.newVirtualThreadPerTaskExecutor() : Executors.newFixedThreadPool(platformThreads);
+        if(executor == null)
+        {
+            throw new IllegalStateException("Virtual threads require Java 21 or newer.");
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createParticipants() {
+        participants = Participants.create(concurrentRegistrations, 2);
+    }
+
+    @Benchmark
+    public void register(Outcome outcome) throws Exception {
+        List<Future<?>> registrations = new ArrayList<>(participants.size());
+        for (Participant participant : participants) {
+            registrations.add(executor.submit(() -> {
+                persistence.updated(participant);
+                return null;
+            }));
+        }
+        for (Future<?> registration : registrations) {
+            try {
+                registration.get();
+                outcome.accepted++;
+            }
+            catch (ExecutionException e)
+            {
+                outcome.rejected++;
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        admissionController.close();
+    }
+}
@@ -0,0 +1,53 @@
+package de.fraunhofer.iais.eis.ids.paris.benchmarks;
+
+import de.fraunhofer.iais.eis.ids.index.common.persistence.JsonLdContextFetchStrategy;
+import de.fraunhofer.iais.eis.ids.paris.persistence.JsonLdContextCache;
+import de.fraunhofer.iais.eis.ids.paris.persistence.ParticipantModelCreator;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the JSON-LD parsing which is done for every registration message.
+ * The context modes compare parsing without an external context, parsing against the context URL (processed per message),
+ * and parsing against the pre-compiled, cached context
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ModelCreatorBenchmark {
+
+    @Param({"1", "3", "5"})
+    public int graphDepth;
+
+    @Param({"none", "fromUrl", "cached"})
+    public String contextMode;
+
+    @Param({"https://w3id.org/idsa/contexts/4.0.0/context.jsonld"})
+    public String contextUrl;
+
+    private final ParticipantModelCreator participantModelCreator = new ParticipantModelCreator();
+    private String selfDescription;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        selfDescription = Participants.create(URI.create("https://participants.example.org/model-creator"), graphDepth, 0).toRdf();
+        if(!contextMode.equals("none"))
+        {
+            participantModelCreator.setContextFetchStrategy(JsonLdContextFetchStrategy.FROM_URL, contextUrl);
+        }
+        if(contextMode.equals("cached"))
+        {
+            participantModelCreator.setContextCache(JsonLdContextCache.load(contextUrl, null));
+        }
+    }
+
+    @Benchmark
+    public ParticipantModelCreator.ParticipantModel toModel() throws Exception {
+        return participantModelCreator.toParticipantModel(selfDescription);
+    }
+}
@@ -0,0 +1,57 @@
+package de.fraunhofer.iais.eis.ids.paris.benchmarks;
+
+import de.fraunhofer.iais.eis.Participant;
+import de.fraunhofer.iais.eis.ParticipantBuilder;
+import de.fraunhofer.iais.eis.util.TypedLiteral;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static de.fraunhofer.iais.eis.util.Util.asList;
+
+/**
+ * Utility class which creates synthetic participants for the benchmarks
+ */
+public final class Participants {
+
+    public static final URI CATALOG_URI = URI.create("http://localhost:8080/catalog/");
+
+    private Participants() {
+    }
+
+    /**
+     * Creates participants with unique URIs
+     * @param count Number of participants
+     * @param graphDepth Depth of each participant graph. 1 creates flat participants, higher values nest member participants
+     * @return List of participants
+     */
+    public static List<Participant> create(int count, int graphDepth) {
+        String prefix = "https://participants.example.org/" + UUID.randomUUID() + "/";
+        List<Participant> participants = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            participants.add(create(URI.create(prefix + i), graphDepth, 0));
+        }
+        return participants;
+    }
+
+    /**
+     * Creates a participant
+     * @param id URI of the participant
+     * @param graphDepth Depth of the participant graph. 1 creates a flat participant, higher values nest member participants
+     * @param revision Revision number, which is part of the description. Different revisions lead to different triples
+     * @return The participant
+     */
+    public static Participant create(URI id, int graphDepth, int revision) {
+        ParticipantBuilder builder = new ParticipantBuilder(id)
+                ._title_(asList(new TypedLiteral("Participant " + id, "en")))
+                ._description_(asList(new TypedLiteral("Synthetic participant for benchmarking, revision " + revision, "en")))
+                ._legalForm_("GmbH");
+        if(graphDepth > 1)
+        {
+            builder._memberParticipant_(asList(create(URI.create(id + "/member"), graphDepth - 1, revision)));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,48 @@
+package de.fraunhofer.iais.eis.ids.paris.benchmarks;
+
+import de.fraunhofer.iais.eis.Participant;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the registration and query hot paths of ParticipantPersistenceAndIndexing
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PersistenceBenchmark {
+
+    private static final String SELECT_QUERY = "PREFIX ids: <https://w3id.org/idsa/core/> " +
+            "SELECT ?participant ?title WHERE { ?participant a ids:Participant ; ids:title ?title . } LIMIT 100";
+
+    /**
+     * Re-announcement of an existing participant with changed content
+     */
+    @Benchmark
+    public void updated(RegistryState registry) throws Exception {
+        Participant participant = registry.randomParticipant();
+        registry.persistence.updated(Participants.create(participant.getId(), registry.graphDepth, ThreadLocalRandom.current().nextInt()));
+    }
+
+    /**
+     * Periodic re-announcement of an existing participant without any change
+     */
+    @Benchmark
+    public void updatedUnchanged(RegistryState registry) throws Exception {
+        registry.persistence.updated(registry.randomParticipant());
+    }
+
+    @Benchmark
+    public Participant requestParticipant(RegistryState registry) throws Exception {
+        return registry.persistence.requestParticipant(registry.randomParticipant().getId());
+    }
+
+    @Benchmark
+    public String getResults(RegistryState registry) throws Exception {
+        return registry.persistence.getResults(SELECT_QUERY);
+    }
+}
@@ -0,0 +1,31 @@
+package de.fraunhofer.iais.eis.ids.paris.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares materialized and streamed evaluation of a SELECT query which matches every participant.
+ * Run with "-prof gc" to compare the allocation rate per query
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class QueryStreamingBenchmark {
+
+    private static final String SELECT_ALL_QUERY = "PREFIX ids: <https://w3id.org/idsa/core/> " +
+            "SELECT ?participant ?p ?o WHERE { ?participant a ids:Participant ; ?p ?o . }";
+
+    @Benchmark
+    public String getResults(RegistryState registry) throws Exception {
+        return registry.persistence.getResults(SELECT_ALL_QUERY);
+    }
+
+    @Benchmark
+    public boolean streamResults(RegistryState registry) throws Exception {
+        return registry.persistence.streamResults(SELECT_ALL_QUERY, OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,98 @@
+package de.fraunhofer.iais.eis.ids.paris.benchmarks;
+
+import de.fraunhofer.iais.eis.Participant;
+import de.fraunhofer.iais.eis.ids.paris.persistence.EmbeddedRepositoryFacade;
+import de.fraunhofer.iais.eis.ids.paris.persistence.ParticipantCache;
+import de.fraunhofer.iais.eis.ids.paris.persistence.ParticipantPersistenceAndIndexing;
+import de.fraunhofer.iais.eis.ids.paris.persistence.ParticipantRepositoryFacade;
+import de.fraunhofer.iais.eis.ids.paris.persistence.TripleStoreHttpClient;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Benchmark state: a registry which is pre-filled with a configurable number of participants.
+ * By default, the in-memory store of the RepositoryFacade stands in for Fuseki. Pass -p sparqlUrl=http://localhost:3030/connectorData to benchmark against a real triple store.
+ * Pass -p backend=sparql,tdb2 to compare the SPARQL endpoint with the embedded TDB2 store.
+ * Pass -p httpConnections=0,32 to compare the default HTTP client of Jena with a pool of keep-alive connections
+ */
+@State(Scope.Benchmark)
+public class RegistryState {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int registrySize;
+
+    @Param({"1", "3"})
+    public int graphDepth;
+
+    @Param({""})
+    public String sparqlUrl;
+
+    @Param({"sparql"})
+    public String backend;
+
+    @Param({"false"})
+    public boolean participantCache;
+
+    @Param({"0"})
+    public int httpConnections;
+
+    public ParticipantRepositoryFacade repositoryFacade;
+    public ParticipantPersistenceAndIndexing persistence;
+    public List<Participant> participants;
+
+    private Path embeddedStoreLocation;
+    private TripleStoreHttpClient httpClient;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if(backend.equals("tdb2"))
+        {
+            embeddedStoreLocation = Files.createTempDirectory("paris-benchmark-tdb2");
+            repositoryFacade = EmbeddedRepositoryFacade.open(embeddedStoreLocation.toString());
+        }
+        else
+        {
+            if(httpConnections > 0)
+            {
+                httpClient = new TripleStoreHttpClient(httpConnections, Duration.ofSeconds(60), Duration.ofSeconds(10));
+                httpClient.install();
+            }
+            repositoryFacade = new ParticipantRepositoryFacade(sparqlUrl);
+        }
+        persistence = new ParticipantPersistenceAndIndexing(repositoryFacade, Participants.CATALOG_URI);
+        if(httpClient != null)
+        {
+            persistence.getGraphStatusCache().setLookupExecutor(httpClient.getLookupExecutor());
+        }
+        if(!participantCache)
+        {
+            persistence.setParticipantCache(new ParticipantCache(Duration.ZERO, 0));
+        }
+        participants = Participants.create(registrySize, graphDepth);
+        persistence.updatedAll(participants);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if(httpClient != null)
+        {
+            httpClient.close();
+        }
+        if(repositoryFacade instanceof EmbeddedRepositoryFacade)
+        {
+            ((EmbeddedRepositoryFacade) repositoryFacade).close();
+        }
+    }
+
+    /**
+     * @return A random participant of the registry
+     */
+    public Participant randomParticipant() {
+        return participants.get(ThreadLocalRandom.current().nextInt(participants.size()));
+    }
+}
@@ -0,0 +1,99 @@
+package de.fraunhofer.iais.eis.ids.paris.benchmarks;
+
+import de.fraunhofer.iais.eis.ids.paris.persistence.EmbeddedRepositoryFacade;
+import de.fraunhofer.iais.eis.ids.paris.persistence.LuceneIndexing;
+import de.fraunhofer.iais.eis.ids.paris.persistence.ParticipantPersistenceAndIndexing;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cold start of a new ParIS node with a large registry: building the index through SPARQL (one request per participant, as the index refresh does)
+ * compared to loading a snapshot. The snapshot path does strictly more work, as it also fills an empty triple store, whereas the refresh reads from
+ * a triple store which is already filled. Both paths end with a complete Lucene index. Both use embedded TDB2 stores, so no triple store has to be set up
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnapshotBootstrapBenchmark {
+
+    @Param({"1000", "10000"})
+    public int registrySize;
+
+    @Param({"2"})
+    public int graphDepth;
+
+    private Path sourceStoreLocation;
+    private EmbeddedRepositoryFacade sourceStore;
+    private Path snapshot;
+
+    private Path targetStoreLocation;
+    private EmbeddedRepositoryFacade targetStore;
+    private Path indexDirectory;
+    private LuceneIndexing indexing;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        sourceStoreLocation = Files.createTempDirectory("paris-benchmark-source");
+        sourceStore = EmbeddedRepositoryFacade.open(sourceStoreLocation.toString());
+        ParticipantPersistenceAndIndexing source = new ParticipantPersistenceAndIndexing(sourceStore, Participants.CATALOG_URI);
+        source.updatedAll(Participants.create(registrySize, graphDepth));
+        snapshot = Files.createTempFile("paris-benchmark", ".zip");
+        try (OutputStream out = Files.newOutputStream(snapshot)) {
+            source.writeSnapshot(out);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createNode() throws IOException {
+        targetStoreLocation = Files.createTempDirectory("paris-benchmark-target");
+        targetStore = EmbeddedRepositoryFacade.open(targetStoreLocation.toString());
+        indexDirectory = Files.createTempDirectory("paris-benchmark-lucene");
+        indexing = new LuceneIndexing(indexDirectory, Duration.ofSeconds(5));
+    }
+
+    @Benchmark
+    public int refreshFromTripleStore() throws Exception {
+        ParticipantPersistenceAndIndexing persistence = new ParticipantPersistenceAndIndexing(sourceStore, Participants.CATALOG_URI);
+        persistence.setIndexing(indexing);
+        return persistence.refreshIndexOrFail();
+    }
+
+    @Benchmark
+    public long loadSnapshot() throws Exception {
+        ParticipantPersistenceAndIndexing persistence = new ParticipantPersistenceAndIndexing(targetStore, Participants.CATALOG_URI);
+        persistence.setIndexing(indexing);
+        return persistence.loadSnapshot(snapshot).getParticipants();
+    }
+
+    @TearDown(Level.Invocation)
+    public void removeNode() throws IOException {
+        indexing.close();
+        targetStore.close();
+        delete(indexDirectory);
+        delete(targetStoreLocation);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        sourceStore.close();
+        delete(sourceStoreLocation);
+        Files.deleteIfExists(snapshot);
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package de.fraunhofer.iais.eis.ids.paris.benchmarks;
+
+import de.fraunhofer.iais.eis.Participant;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the triple store traffic of registrations and participant requests, issued by many concurrent clients.
+ * Reports latency percentiles, so that the tail latency of the default HTTP client of Jena can be compared with the connection pool, e.g.
+ * java -jar open-paris-benchmarks/target/benchmarks.jar TripleStoreLoadBenchmark -p sparqlUrl=http://localhost:3030/connectorData -p registrySize=1000 -p graphDepth=1 -p httpConnections=0,32
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Threads(16)
+@Fork(1)
+public class TripleStoreLoadBenchmark {
+
+    /**
+     * Re-announcement of an existing participant with changed content
+     */
+    @Benchmark
+    public void updated(RegistryState registry) throws Exception {
+        Participant participant = registry.randomParticipant();
+        registry.persistence.updated(Participants.create(participant.getId(), registry.graphDepth, ThreadLocalRandom.current().nextInt()));
+    }
+
+    @Benchmark
+    public Participant requestParticipant(RegistryState registry) throws Exception {
+        return registry.persistence.requestParticipant(registry.randomParticipant().getId());
+    }
+}
@@ -2,22 +2,30 @@ package de.fraunhofer.iais.eis.ids.paris.impl;
 
 import de.fraunhofer.iais.eis.*;
 import de.fraunhofer.iais.eis.ids.component.core.SelfDescriptionProvider;
+import de.fraunhofer.iais.eis.ids.jsonld.Serializer;
+import de.fraunhofer.iais.eis.ids.paris.persistence.RenderedDocument;
 import de.fraunhofer.iais.eis.util.TypedLiteral;
 import de.fraunhofer.iais.eis.util.Util;
 
+import java.io.IOException;
 import java.net.URI;
 
 import static de.fraunhofer.iais.eis.util.Util.asList;
 
 /**
  * This class is used to create a self description document for an IDS Participant Information Service (ParIS)
- * The description contains information about the operator, security related information and a reference to the catalog
+ * The description contains information about the operator, security related information and a reference to the catalog.
+ * As it only depends on the constructor arguments, it is built once and shared by all callers.
+ * Its serialization is kept for the description endpoint. Responses to IDS DescriptionRequestMessages embed the current catalog, so they are serialized per request
  */
 public class ParISSelfDescription implements SelfDescriptionProvider {
 
     private final URI componentId, maintainerId;
     private final String modelVersion;
 
+    private volatile InfrastructureComponent selfDescription;
+    private volatile RenderedDocument renderedSelfDescription;
+
     /**
      * This is the constructor for the self-description provider of a Participant Information Service
      * @param componentId The ID of this ParIS
@@ -30,10 +38,35 @@ public class ParISSelfDescription implements SelfDescriptionProvider {
         this.modelVersion = modelVersion;
     }
 
-    //TODO: This description should be extended to encompass a description of the available endpoints
-    //  We possibly also need to add further fields, e.g. a SHA256 hash of the transport certificate
     @Override
     public InfrastructureComponent getSelfDescription() {
+        InfrastructureComponent result = selfDescription;
+        if(result == null)
+        {
+            //Concurrent first calls may build it twice, which yields equal descriptions
+            result = buildSelfDescription();
+            selfDescription = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return The self-description, serialized to JSON-LD
+     * @throws IOException thrown, if the self-description could not be serialized
+     */
+    public RenderedDocument getRenderedSelfDescription() throws IOException {
+        RenderedDocument result = renderedSelfDescription;
+        if(result == null)
+        {
+            result = RenderedDocument.render(getSelfDescription(), new Serializer());
+            renderedSelfDescription = result;
+        }
+        return result;
+    }
+
+    //TODO: This description should be extended to encompass a description of the available endpoints
+    //  We possibly also need to add further fields, e.g. a SHA256 hash of the transport certificate
+    private InfrastructureComponent buildSelfDescription() {
         return new ParISBuilder(componentId)
                 ._title_(Util.asList(new TypedLiteral("EIS ParIS", "en")))
                 ._description_(Util.asList(new TypedLiteral("A Participant Information Service with a graph persistence layer", "en")))
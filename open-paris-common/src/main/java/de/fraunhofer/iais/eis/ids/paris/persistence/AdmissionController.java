@@ -0,0 +1,273 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import de.fraunhofer.iais.eis.RejectionReason;
+import de.fraunhofer.iais.eis.ids.component.core.RejectMessageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control for the work done by the ParIS, such that expensive queries cannot starve registrations and vice versa.
+ * Queries run on a bounded pool of their own and are cancelled once they exceed their timeout. If all query workers are busy and the
+ * waiting queue is full, further queries are rejected immediately.
+ * Registrations run on the calling thread, but only a limited number of them at a time. They are never cancelled once started,
+ * as interrupting a write half-way could leave the triple store and the index inconsistent.
+ * Rejections carry the reason TEMPORARILY_NOT_AVAILABLE and a RejectedExecutionException as cause, such that callers can retry later
+ */
+public class AdmissionController implements Closeable {
+
+    /**
+     * A unit of work which is subject to admission control
+     * @param <T> Type of the result
+     */
+    @FunctionalInterface
+    public interface Task<T> {
+        T call() throws IOException, RejectMessageException;
+    }
+
+    private final ThreadPoolExecutor queryExecutor;
+    private final Semaphore registrationPermits;
+    private final int maxConcurrentRegistrations;
+    private final Duration registrationWaitTimeout;
+    private final Logger logger = LoggerFactory.getLogger(AdmissionController.class);
+
+    private final AtomicLong rejectedQueries = new AtomicLong();
+    private final AtomicLong timedOutQueries = new AtomicLong();
+    private final AtomicLong rejectedRegistrations = new AtomicLong();
+
+    /**
+     * Constructor
+     * @param maxConcurrentQueries Number of queries which are evaluated concurrently
+     * @param queryQueueCapacity Number of queries which may wait for a free worker
+     * @param maxConcurrentRegistrations Number of registrations which are processed concurrently
+     * @param registrationWaitTimeout Maximum time a registration waits for a free slot before it is rejected
+     */
+    public AdmissionController(int maxConcurrentQueries, int queryQueueCapacity, int maxConcurrentRegistrations, Duration registrationWaitTimeout) {
+        this(maxConcurrentQueries, queryQueueCapacity, maxConcurrentRegistrations, registrationWaitTimeout, null);
+    }
+
+    /**
+     * Constructor
+     * @param maxConcurrentQueries Number of queries which are evaluated concurrently
+     * @param queryQueueCapacity Number of queries which may wait for a free worker
+     * @param maxConcurrentRegistrations Number of registrations which are processed concurrently
+     * @param registrationWaitTimeout Maximum time a registration waits for a free slot before it is rejected
+     * @param queryThreadFactory Factory of the query workers, e.g. of virtual threads. May be null, in which case the workers are platform daemon threads
+     */
+    public AdmissionController(int maxConcurrentQueries, int queryQueueCapacity, int maxConcurrentRegistrations, Duration registrationWaitTimeout,
+                               ThreadFactory queryThreadFactory) {
+        ThreadFactory threadFactory = queryThreadFactory;
+        if(threadFactory == null)
+        {
+            AtomicInteger threadNumber = new AtomicInteger();
+            threadFactory = runnable -> {
+                Thread thread = new Thread(runnable, "paris-query-worker-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+        this.queryExecutor = new ThreadPoolExecutor(maxConcurrentQueries, maxConcurrentQueries, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queryQueueCapacity)), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        this.queryExecutor.allowCoreThreadTimeOut(true);
+        this.registrationPermits = new Semaphore(maxConcurrentRegistrations, true);
+        this.maxConcurrentRegistrations = maxConcurrentRegistrations;
+        this.registrationWaitTimeout = registrationWaitTimeout;
+    }
+
+    /**
+     * Function to evaluate a query on the query pool
+     * @param query The query evaluation
+     * @param timeout Time after which the evaluation is cancelled
+     * @param <T> Type of the result
+     * @return Result of the query
+     * @throws RejectMessageException thrown with reason TEMPORARILY_NOT_AVAILABLE, if the query pool is saturated,
+     * with reason TOO_MANY_RESULTS, if the query did not complete in time, or if the query itself was rejected
+     */
+    public <T> T query(Task<T> query, Duration timeout) throws RejectMessageException {
+        Future<T> future;
+        try {
+            future = queryExecutor.submit(query::call);
+        }
+        catch (RejectedExecutionException e)
+        {
+            rejectedQueries.incrementAndGet();
+            throw new RejectMessageException(RejectionReason.TEMPORARILY_NOT_AVAILABLE, e);
+        }
+        return await(future, timeout);
+    }
+
+    /**
+     * Function to admit a query whose evaluation can only start later, e.g. once the stream to which its result is written is available.
+     * A query worker, or a place in the queue, is taken immediately, so a saturated query pool is reported before anything is sent to the client.
+     * The worker waits for the evaluation to be handed over via {@link QueryReservation#run(Task, Duration)}
+     * @param handOverTimeout Time the worker waits for the evaluation, before it becomes available for other queries
+     * @return The reservation, which must be closed if the evaluation is not run
+     * @throws RejectMessageException thrown with reason TEMPORARILY_NOT_AVAILABLE, if the query pool is saturated
+     */
+    public QueryReservation reserveQuery(Duration handOverTimeout) throws RejectMessageException {
+        CompletableFuture<Task<?>> handOver = new CompletableFuture<>();
+        Future<Object> future;
+        try {
+            future = queryExecutor.submit(() -> handOver.get(handOverTimeout.toMillis(), TimeUnit.MILLISECONDS).call());
+        }
+        catch (RejectedExecutionException e)
+        {
+            rejectedQueries.incrementAndGet();
+            throw new RejectMessageException(RejectionReason.TEMPORARILY_NOT_AVAILABLE, e);
+        }
+        return new QueryReservation(handOver, future);
+    }
+
+    /**
+     * A query worker which was reserved by {@link #reserveQuery(Duration)}
+     */
+    public class QueryReservation implements Closeable {
+        private final CompletableFuture<Task<?>> handOver;
+        private final Future<Object> future;
+
+        private QueryReservation(CompletableFuture<Task<?>> handOver, Future<Object> future) {
+            this.handOver = handOver;
+            this.future = future;
+        }
+
+        /**
+         * Function to evaluate the query on the reserved worker. Can only be called once
+         * @param query The query evaluation
+         * @param timeout Time after which the evaluation is cancelled
+         * @param <T> Type of the result
+         * @return Result of the query
+         * @throws RejectMessageException thrown with reason TOO_MANY_RESULTS, if the query did not complete in time, or if the query itself was rejected
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T run(Task<T> query, Duration timeout) throws RejectMessageException {
+            if(!handOver.complete(query))
+            {
+                throw new IllegalStateException("The reserved worker was already used or released.");
+            }
+            return (T) await(future, timeout);
+        }
+
+        /**
+         * Releases the worker, if the query was not run
+         */
+        @Override
+        public void close() {
+            handOver.complete(() -> null);
+        }
+    }
+
+    private <T> T await(Future<T> future, Duration timeout) throws RejectMessageException {
+        try {
+            return future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e)
+        {
+            //Interrupts the worker. The evaluation itself ends by the timeout which is set on its query execution or on its requests to the triple store
+            future.cancel(true);
+            timedOutQueries.incrementAndGet();
+            logger.warn("Query was cancelled after " + timeout.toMillis() + " ms.");
+            throw new RejectMessageException(RejectionReason.TOO_MANY_RESULTS, new Exception("The query could not be evaluated within " + timeout.getSeconds() + " seconds. Please restrict your query."));
+        }
+        catch (InterruptedException e)
+        {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RejectMessageException(RejectionReason.INTERNAL_RECIPIENT_ERROR, e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if(cause instanceof RejectMessageException)
+            {
+                throw (RejectMessageException) cause;
+            }
+            if(cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            if(cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw new RejectMessageException(RejectionReason.INTERNAL_RECIPIENT_ERROR, (Exception) cause);
+        }
+    }
+
+    /**
+     * Function to process a registration (or removal) once a registration slot is free
+     * @param registration The registration
+     * @param <T> Type of the result
+     * @return Result of the registration
+     * @throws IOException thrown, if the registration failed due to connectivity issues
+     * @throws RejectMessageException thrown with reason TEMPORARILY_NOT_AVAILABLE, if no slot became free in time, or if the registration itself was rejected
+     */
+    public <T> T register(Task<T> registration) throws IOException, RejectMessageException {
+        try {
+            if(!registrationPermits.tryAcquire(registrationWaitTimeout.toMillis(), TimeUnit.MILLISECONDS))
+            {
+                rejectedRegistrations.incrementAndGet();
+                throw new RejectMessageException(RejectionReason.TEMPORARILY_NOT_AVAILABLE, new RejectedExecutionException("Too many concurrent registrations. Please try again later."));
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RejectMessageException(RejectionReason.INTERNAL_RECIPIENT_ERROR, e);
+        }
+        try {
+            return registration.call();
+        }
+        finally {
+            registrationPermits.release();
+        }
+    }
+
+    /**
+     * @return Number of queries which are currently evaluated or waiting
+     */
+    public int getActiveQueries() {
+        return queryExecutor.getActiveCount() + queryExecutor.getQueue().size();
+    }
+
+    /**
+     * @return Number of registrations which are currently processed or waiting for a slot
+     */
+    public int getActiveRegistrations() {
+        return maxConcurrentRegistrations - registrationPermits.availablePermits() + registrationPermits.getQueueLength();
+    }
+
+    /**
+     * @return Number of queries which were rejected because the query pool was saturated
+     */
+    public long getRejectedQueries() {
+        return rejectedQueries.get();
+    }
+
+    /**
+     * @return Number of queries which were cancelled because they exceeded their timeout
+     */
+    public long getTimedOutQueries() {
+        return timedOutQueries.get();
+    }
+
+    /**
+     * @return Number of registrations which were rejected because no registration slot became free in time
+     */
+    public long getRejectedRegistrations() {
+        return rejectedRegistrations.get();
+    }
+
+    /**
+     * Stops the query workers. Queries which are still running are interrupted
+     */
+    @Override
+    public void close() {
+        queryExecutor.shutdownNow();
+    }
+}
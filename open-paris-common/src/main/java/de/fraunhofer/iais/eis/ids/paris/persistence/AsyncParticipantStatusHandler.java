@@ -0,0 +1,603 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import de.fraunhofer.iais.eis.Participant;
+import de.fraunhofer.iais.eis.RejectionReason;
+import de.fraunhofer.iais.eis.ids.component.core.RejectMessageException;
+import de.fraunhofer.iais.eis.ids.jsonld.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.SocketException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ParticipantStatusHandler which accepts updates into a bounded queue and applies them asynchronously via a pool of workers.
+ * Callers are acknowledged as soon as the update is queued (and written to the journal, if one is configured).
+ * Repeated updates of the same participant which are still queued are coalesced, such that only the latest one is applied.
+ * If the queue is full, a RejectMessageException with reason TEMPORARILY_NOT_AVAILABLE is thrown, such that senders can retry later.
+ * Updates which fail because the triple store or index could not be reached are retried with exponential backoff, up to a limited number of attempts.
+ * Note that errors which occur while applying an update (e.g. deleting an unknown participant) can no longer be reported to the sender
+ */
+public class AsyncParticipantStatusHandler implements ParticipantStatusHandler, Closeable {
+
+    private static class PendingWrite {
+        final long sequenceNumber;
+        final Participant participant; //null for unavailable
+        final URI participantUri;
+        //Guarded by the handler
+        int attempts = 0;
+        long notBefore = 0;
+
+        PendingWrite(long sequenceNumber, Participant participant, URI participantUri) {
+            this.sequenceNumber = sequenceNumber;
+            this.participant = participant;
+            this.participantUri = participantUri;
+        }
+    }
+
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60000;
+    //Roughly five minutes of retries, before an update is given up
+    private static final int MAX_ATTEMPTS = 10;
+
+    private final ParticipantStatusHandler delegate;
+    private final int capacity;
+    private final Path journalFile;
+    private final ExecutorService workers;
+    private final Logger logger = LoggerFactory.getLogger(AsyncParticipantStatusHandler.class);
+
+    //Guarded by this
+    private final Map<URI, PendingWrite> pending = new HashMap<>();
+    private final Set<URI> inFlight = new HashSet<>();
+    //Participants whose pending write can be taken right away, i.e. which are neither in flight nor waiting for a retry, in the order in which they became ready
+    private final LinkedHashSet<URI> ready = new LinkedHashSet<>();
+    //Writes which wait for a retry. Entries whose write was replaced in the meantime are skipped
+    private final PriorityQueue<PendingWrite> delayed = new PriorityQueue<>(Comparator.comparingLong(write -> write.notBefore));
+    private long nextSequenceNumber = 0;
+    private Writer journal;
+    private FileOutputStream journalStream;
+    //Incremented whenever the journal is compacted, i.e. replaced by an empty file
+    private long journalGeneration = 0;
+    private long appendedRecords = 0;
+    private boolean closed = false;
+
+    //Group commit: a single caller syncs all records which were appended so far, while concurrent callers wait for it
+    private final Object syncMonitor = new Object();
+    //Guarded by syncMonitor
+    private long syncedRecords = 0;
+    private boolean syncing = false;
+
+    /**
+     * Constructor. If a journal file is given, updates which were not applied before the last shutdown are replayed
+     * @param delegate The handler which actually persists the changes
+     * @param capacity Maximum number of participants with pending updates
+     * @param workerCount Number of workers which apply updates concurrently
+     * @param journalFile Append-only file to which accepted updates are written before they are acknowledged. May be null, in which case pending updates are lost on shutdown
+     * @throws IOException thrown, if the journal could not be read or opened
+     */
+    public AsyncParticipantStatusHandler(ParticipantStatusHandler delegate, int capacity, int workerCount, Path journalFile) throws IOException {
+        this.delegate = delegate;
+        this.capacity = capacity;
+        this.journalFile = journalFile;
+        if(journalFile != null)
+        {
+            List<String> discarded = replayJournal();
+            synchronized (this) {
+                openJournal(true);
+                //Otherwise, replaced writes would be replayed again after the writes which replaced them were applied
+                for (String record : discarded) {
+                    appendToJournal(record);
+                }
+            }
+            syncJournal(Long.MAX_VALUE);
+        }
+        AtomicInteger workerIndex = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "paris-registration-worker-" + workerIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::work);
+        }
+    }
+
+    /**
+     * Queues the update of a participant
+     * @param participant The updated participant which was announced to the ParIS
+     * @throws IOException thrown, if the update could not be written to the journal
+     * @throws RejectMessageException thrown with reason TEMPORARILY_NOT_AVAILABLE, if the queue is full
+     */
+    @Override
+    public void updated(Participant participant) throws IOException, RejectMessageException {
+        enqueue(participant.getId(), participant);
+    }
+
+    /**
+     * Queues the removal of a participant
+     * @param participantUri A URI reference to the participant which is now unavailable
+     * @throws IOException thrown, if the update could not be written to the journal
+     * @throws RejectMessageException thrown with reason TEMPORARILY_NOT_AVAILABLE, if the queue is full
+     */
+    @Override
+    public void unavailable(URI participantUri) throws IOException, RejectMessageException {
+        enqueue(participantUri, null);
+    }
+
+    private void enqueue(URI participantUri, Participant participant) throws IOException, RejectMessageException {
+        //Serialized before taking the monitor, as serializing a participant is expensive and would block all workers and senders meanwhile
+        String entry = journalFile == null ? null : journalEntry(participantUri, participant);
+        long record;
+        synchronized (this) {
+            if(closed)
+            {
+                throw new RejectMessageException(RejectionReason.TEMPORARILY_NOT_AVAILABLE, new IllegalStateException("The ParIS is shutting down."));
+            }
+            //A pending update of the same participant is replaced and does not occupy an additional slot
+            if(!pending.containsKey(participantUri) && pending.size() >= capacity)
+            {
+                throw new RejectMessageException(RejectionReason.TEMPORARILY_NOT_AVAILABLE, new IllegalStateException("Too many pending registrations. Please try again later."));
+            }
+            PendingWrite write = new PendingWrite(nextSequenceNumber++, participant, participantUri);
+            if(entry != null)
+            {
+                appendToJournal(write.sequenceNumber + " " + entry);
+            }
+            PendingWrite superseded = pending.put(participantUri, write);
+            if(superseded != null)
+            {
+                appendToJournal("C " + superseded.sequenceNumber);
+            }
+            //A participant in flight becomes ready once the worker is done with it. A replaced retry is not waited for
+            if(!inFlight.contains(participantUri))
+            {
+                ready.add(participantUri);
+            }
+            record = appendedRecords;
+            notifyAll();
+        }
+        //The sender is acknowledged once the write is durable
+        syncJournal(record);
+    }
+
+    /**
+     * @return Number of participants with pending updates
+     */
+    public synchronized int getQueueSize() {
+        return pending.size();
+    }
+
+    /**
+     * @return Maximum number of participants with pending updates
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private void work() {
+        while(true)
+        {
+            PendingWrite write;
+            try {
+                write = take();
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            if(write == null)
+            {
+                return;
+            }
+            try {
+                if(write.participant != null)
+                {
+                    delegate.updated(write.participant);
+                }
+                else
+                {
+                    delegate.unavailable(write.participantUri);
+                }
+                complete(write, "C");
+            }
+            catch (Exception e)
+            {
+                if(isNotAdmitted(e))
+                {
+                    //Rejected by admission control, as too many registrations are in progress. This does not count as failed attempt
+                    logger.warn("Pending update of " + write.participantUri + " was not admitted. Retrying.");
+                    retryLater(write, RETRY_DELAY_MILLIS);
+                }
+                else if(isConnectionFailure(e) && write.attempts + 1 < MAX_ATTEMPTS)
+                {
+                    //Triple store or index not reachable. Keep the write, unless a newer one arrived in the meantime
+                    write.attempts++;
+                    long delay = Math.min(MAX_RETRY_DELAY_MILLIS, RETRY_DELAY_MILLIS << (write.attempts - 1));
+                    logger.warn("Failed to apply pending update of " + write.participantUri + ". Retrying in " + delay / 1000 + " seconds.", e);
+                    retryLater(write, delay);
+                }
+                else
+                {
+                    //Retrying would not help, e.g. because the participant could not be parsed
+                    logger.error("Dropping pending update of " + write.participantUri + ", as it could not be applied.", e);
+                    complete(write, "F");
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true, if the write was rejected by admission control
+     */
+    private static boolean isNotAdmitted(Exception e) {
+        return e instanceof RejectMessageException && e.getCause() instanceof RejectedExecutionException;
+    }
+
+    /**
+     * @return true, if the write failed because the triple store or the index could not be reached. Such failures are usually wrapped
+     */
+    private static boolean isConnectionFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            //Includes refused connections, and read or connect timeouts
+            if(cause instanceof SocketException || cause instanceof InterruptedIOException || cause instanceof UnknownHostException)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Puts a write back into the queue, such that it is taken again once the delay has passed
+     */
+    private synchronized void retryLater(PendingWrite write, long delayMillis) {
+        inFlight.remove(write.participantUri);
+        if(pending.containsKey(write.participantUri))
+        {
+            //A newer write of the same participant arrived in the meantime and replaces this one
+            ready.add(write.participantUri);
+            markInJournal(write, "C");
+        }
+        else
+        {
+            write.notBefore = System.currentTimeMillis() + delayMillis;
+            pending.put(write.participantUri, write);
+            delayed.add(write);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Takes the pending write of the participant which became ready first, i.e. which is neither being processed by another worker nor waiting for a retry
+     * @return next write, or null if this handler was closed
+     */
+    private synchronized PendingWrite take() throws InterruptedException {
+        while(!closed)
+        {
+            long now = System.currentTimeMillis();
+            while(!delayed.isEmpty() && delayed.peek().notBefore <= now)
+            {
+                PendingWrite write = delayed.poll();
+                if(pending.get(write.participantUri) == write)
+                {
+                    ready.add(write.participantUri);
+                }
+            }
+            if(!ready.isEmpty())
+            {
+                Iterator<URI> iterator = ready.iterator();
+                URI participantUri = iterator.next();
+                iterator.remove();
+                inFlight.add(participantUri);
+                return pending.remove(participantUri);
+            }
+            if(delayed.isEmpty())
+            {
+                wait();
+            }
+            else
+            {
+                wait(delayed.peek().notBefore - now);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finishes the processing of a write
+     * @param write The write
+     * @param mark "C" if the write was applied, "F" if it failed and was given up
+     */
+    private synchronized void complete(PendingWrite write, String mark) {
+        inFlight.remove(write.participantUri);
+        if(pending.containsKey(write.participantUri))
+        {
+            //A newer write of the same participant arrived while this one was applied
+            ready.add(write.participantUri);
+        }
+        markInJournal(write, mark);
+        notifyAll();
+    }
+
+    /**
+     * Records in the journal that a write must not be replayed. The record does not need to be durable: if it is lost in a crash,
+     * the write is replayed once more, while a newer write of the same participant is replayed after it
+     */
+    private void markInJournal(PendingWrite write, String mark) {
+        try {
+            appendToJournal(mark + " " + write.sequenceNumber);
+            if(journal != null)
+            {
+                journal.flush();
+            }
+            compactJournalIfIdle();
+        }
+        catch (IOException e)
+        {
+            logger.warn("Failed to write to registration journal.", e);
+        }
+    }
+
+    /**
+     * @return Journal record of a write, without its sequence number
+     */
+    private static String journalEntry(URI participantUri, Participant participant) {
+        if(participant != null)
+        {
+            return "U " + Base64.getEncoder().encodeToString(participant.toRdf().getBytes(StandardCharsets.UTF_8));
+        }
+        return "D " + participantUri;
+    }
+
+    private void appendToJournal(String record) throws IOException {
+        if(journal == null)
+        {
+            return;
+        }
+        journal.write(record);
+        journal.write('\n');
+        appendedRecords++;
+    }
+
+    /**
+     * Waits until the given number of journal records is durable, such that acknowledged writes survive a crash of the host.
+     * If no other caller is syncing the journal, the calling thread syncs all records which were appended so far,
+     * such that concurrent callers share a single sync instead of syncing one after another
+     * @param record Number of records which must be durable
+     * @throws IOException thrown, if the journal could not be synced
+     */
+    private void syncJournal(long record) throws IOException {
+        if(journalFile == null)
+        {
+            return;
+        }
+        synchronized (syncMonitor) {
+            while(syncing && syncedRecords < record)
+            {
+                try {
+                    syncMonitor.wait();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the registration journal.");
+                }
+            }
+            if(syncedRecords >= record)
+            {
+                return;
+            }
+            syncing = true;
+        }
+        long synced = -1;
+        try {
+            FileOutputStream stream;
+            long generation;
+            long appended;
+            synchronized (this) {
+                if(journal == null)
+                {
+                    throw new IOException("The registration journal is closed.");
+                }
+                journal.flush();
+                stream = journalStream;
+                generation = journalGeneration;
+                appended = appendedRecords;
+            }
+            try {
+                stream.getFD().sync();
+            }
+            catch (IOException e)
+            {
+                synchronized (this) {
+                    if(generation == journalGeneration)
+                    {
+                        throw e;
+                    }
+                }
+                //The journal was compacted in the meantime, which happens only once all writes in it have been applied
+            }
+            synced = appended;
+        }
+        finally {
+            synchronized (syncMonitor) {
+                syncing = false;
+                syncedRecords = Math.max(syncedRecords, synced);
+                //If the sync failed, the next waiting caller tries again
+                syncMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Truncates the journal once all writes have been applied, such that it does not grow indefinitely
+     */
+    private void compactJournalIfIdle() throws IOException {
+        if(journal != null && pending.isEmpty() && inFlight.isEmpty())
+        {
+            journal.close();
+            openJournal(false);
+            journalGeneration++;
+        }
+    }
+
+    private void openJournal(boolean append) throws IOException {
+        journalStream = new FileOutputStream(journalFile.toFile(), append);
+        journal = new BufferedWriter(new OutputStreamWriter(journalStream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Re-queues all writes from the journal which were neither completed nor given up before the last shutdown
+     * @return Journal records which mark the writes that are not replayed, because they were replaced by newer writes of the same participant or cannot be read
+     */
+    private List<String> replayJournal() throws IOException {
+        List<String> discarded = new ArrayList<>();
+        if(!Files.exists(journalFile))
+        {
+            return discarded;
+        }
+        Serializer serializer = new Serializer();
+        Map<Long, String> records = new LinkedHashMap<>();
+        //Length of the journal up to the end of the last complete record
+        long complete = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(journalFile))) {
+            //Records are split at the byte level, as UTF-8 never encodes other characters with a newline byte
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long read = 0;
+            int b;
+            while((b = in.read()) != -1)
+            {
+                read++;
+                if(b != '\n')
+                {
+                    line.write(b);
+                    continue;
+                }
+                complete = read;
+                readJournalRecord(line.toString(StandardCharsets.UTF_8.name()), records);
+                line.reset();
+            }
+        }
+        if(complete < Files.size(journalFile))
+        {
+            //Incomplete last record after a crash, e.g. "C 12" torn to "C 1". The write was never acknowledged, so it can be ignored.
+            //It is cut off, as the records appended from now on would otherwise continue it
+            logger.warn("Ignoring incomplete last record of registration journal.");
+            try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+                channel.truncate(complete);
+            }
+        }
+        for (Map.Entry<Long, String> record : records.entrySet()) {
+            nextSequenceNumber = Math.max(nextSequenceNumber, record.getKey() + 1);
+            String[] parts = record.getValue().split(" ", 2);
+            PendingWrite write;
+            if(parts[0].equals("U"))
+            {
+                Participant participant;
+                try {
+                    participant = serializer.deserialize(new String(Base64.getDecoder().decode(parts[1]), StandardCharsets.UTF_8), Participant.class);
+                }
+                catch (IOException | IllegalArgumentException e)
+                {
+                    logger.error("Dropping pending update " + record.getKey() + " from journal, as it could not be read.", e);
+                    discarded.add("F " + record.getKey());
+                    continue;
+                }
+                write = new PendingWrite(record.getKey(), participant, participant.getId());
+            }
+            else
+            {
+                try {
+                    write = new PendingWrite(record.getKey(), null, URI.create(parts[1]));
+                }
+                catch (IllegalArgumentException e)
+                {
+                    logger.error("Dropping pending removal " + record.getKey() + " from journal, as it could not be read.", e);
+                    discarded.add("F " + record.getKey());
+                    continue;
+                }
+            }
+            PendingWrite replaced = pending.put(write.participantUri, write);
+            if(replaced != null)
+            {
+                discarded.add("C " + replaced.sequenceNumber);
+            }
+            ready.add(write.participantUri);
+        }
+        if(!pending.isEmpty())
+        {
+            logger.info("Replaying " + pending.size() + " pending registration updates from journal.");
+        }
+        return discarded;
+    }
+
+    /**
+     * Reads a complete journal record
+     * @param line The record
+     * @param records Writes which were neither completed nor given up so far, by sequence number
+     */
+    private void readJournalRecord(String line, Map<Long, String> records) {
+        String[] parts = line.split(" ", 3);
+        try {
+            if(parts.length == 2 && (parts[0].equals("C") || parts[0].equals("F")))
+            {
+                records.remove(Long.parseLong(parts[1]));
+                return;
+            }
+            if(parts.length == 3 && (parts[1].equals("U") || parts[1].equals("D")))
+            {
+                records.put(Long.parseLong(parts[0]), parts[1] + " " + parts[2]);
+                return;
+            }
+        }
+        catch (NumberFormatException ignored)
+        {
+        }
+        logger.warn("Skipping unreadable record in registration journal: " + (line.length() > 40 ? line.substring(0, 40) + "..." : line));
+    }
+
+    /**
+     * Stops accepting updates and waits for the workers to finish the updates they are currently applying.
+     * Updates which are still queued remain in the journal and are replayed on next startup
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        workers.shutdown();
+        try {
+            if(!workers.awaitTermination(30, TimeUnit.SECONDS))
+            {
+                logger.warn("Registration workers did not terminate in time.");
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if(journal != null)
+            {
+                journal.flush();
+                journalStream.getFD().sync();
+                journal.close();
+                journal = null;
+            }
+        }
+    }
+}
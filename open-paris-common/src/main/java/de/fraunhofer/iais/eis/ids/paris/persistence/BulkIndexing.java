@@ -0,0 +1,30 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import de.fraunhofer.iais.eis.Participant;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Optional extension for Indexing implementations which can write many participants in one request.
+ * If the configured indexing does not implement this interface, participants are written one by one
+ */
+public interface BulkIndexing {
+
+    /**
+     * Function to add many participants to the index in one bulk request. Participants which are already indexed are replaced
+     * @param participants The participants to be added or replaced
+     * @throws IOException thrown, if the index could not be reached or the bulk request failed
+     */
+    void addAll(Collection<Participant> participants) throws IOException;
+
+    /**
+     * Function to replace the entire content of an index with the given participants.
+     * Implementations should build the new content in a shadow index and swap it in atomically (e.g. via an alias switch),
+     * such that readers keep seeing the previous content until the new content is complete
+     * @param indexName Name of the index to be replaced
+     * @param participants The participants which make up the new content of the index
+     * @throws IOException thrown, if the index could not be reached or the swap failed
+     */
+    void replaceAll(String indexName, Collection<Participant> participants) throws IOException;
+}
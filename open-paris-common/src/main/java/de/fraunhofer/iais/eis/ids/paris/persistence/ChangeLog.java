@@ -0,0 +1,467 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.query.ParameterizedSparqlString;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.rdfconnection.RDFConnection;
+import org.apache.jena.update.UpdateRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ordered, persistent log of all modifications of participants, which allows consumers to synchronize incrementally
+ * ("changes since sequence number N") instead of re-reading the entire registry.
+ * The log is kept in the default graph of the triple store, such that it survives restarts and is shared by all replicas,
+ * which follow the modifications made by each other through it.
+ * Every entry has a sequence number, which is assigned within the same SPARQL Update as the entry itself,
+ * so that sequence numbers are unique and increase in commit order.
+ * Entries are removed after a retention period. Consumers which fall behind further are told to resynchronize completely.
+ * The same applies if modifications could not be recorded: the log then skips a sequence number and marks it as removed
+ */
+public class ChangeLog implements Closeable {
+
+    /**
+     * Kind of modification of a participant
+     */
+    public enum ChangeType {
+        /**
+         * The participant was registered or its self-description was updated
+         */
+        UPDATED,
+        /**
+         * The participant was unregistered (passivated)
+         */
+        REMOVED
+    }
+
+    /**
+     * Entry of the change log
+     */
+    public static class Change {
+        private final long sequence;
+        private final String participant;
+        private final ChangeType type;
+        private final String time;
+        private final String origin;
+
+        Change(long sequence, String participant, ChangeType type, String time, String origin) {
+            this.sequence = sequence;
+            this.participant = participant;
+            this.type = type;
+            this.time = time;
+            this.origin = origin;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public String getParticipant() {
+            return participant;
+        }
+
+        public ChangeType getType() {
+            return type;
+        }
+
+        /**
+         * @return Time of the modification as xsd:dateTime, according to the clock of the triple store
+         */
+        public String getTime() {
+            return time;
+        }
+
+        /**
+         * @return Identifier of the replica which made the modification. Not part of the public representation
+         */
+        String getOrigin() {
+            return origin;
+        }
+    }
+
+    /**
+     * Response to a "changes since" request
+     */
+    public static class ChangeSet {
+        private final long since;
+        private final long lastSequence;
+        private final long prunedSequence;
+        private final List<Change> changes;
+
+        ChangeSet(long since, long lastSequence, long prunedSequence, List<Change> changes) {
+            this.since = since;
+            this.lastSequence = lastSequence;
+            this.prunedSequence = prunedSequence;
+            this.changes = changes;
+        }
+
+        public long getSince() {
+            return since;
+        }
+
+        /**
+         * @return Sequence number of the latest entry of the change log. If no changes are returned, consumers may continue from here
+         */
+        public long getLastSequence() {
+            return lastSequence;
+        }
+
+        /**
+         * @return true, if entries after the requested sequence number were already removed. The consumer has to re-read the entire registry
+         * and continue from {@link #getLastSequence()}
+         */
+        public boolean isResyncRequired() {
+            return since < prunedSequence;
+        }
+
+        public List<Change> getChanges() {
+            return changes;
+        }
+
+        /**
+         * @return true, if the change log contains further entries after the returned ones
+         */
+        public boolean isIncomplete() {
+            return !changes.isEmpty() && changes.get(changes.size() - 1).getSequence() < lastSequence;
+        }
+    }
+
+    private static final String PREFIXES = "PREFIX changes: <urn:paris:changes:> ";
+    private static final String HEAD = "urn:paris:changes:head";
+    //Waiting requests re-check the change log at least this often, e.g. in case a signal was missed
+    private static final Duration RECHECK_INTERVAL = Duration.ofSeconds(5);
+
+    private final ParticipantRepositoryFacade repositoryFacade;
+    private final String origin;
+    private final ScheduledExecutorService scheduler;
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean checkPending = new AtomicBoolean();
+    //Set if entries could not be recorded. The gap is marked in the log as soon as the triple store can be written again
+    private final AtomicBoolean gapPending = new AtomicBoolean();
+    private final Logger logger = LoggerFactory.getLogger(ChangeLog.class);
+
+    private static class Waiter {
+        final long since;
+        final int limit;
+        //Returned if no entries are appended before the timeout
+        final ChangeSet unchanged;
+        final CompletableFuture<ChangeSet> result = new CompletableFuture<>();
+
+        Waiter(long since, int limit, ChangeSet unchanged) {
+            this.since = since;
+            this.limit = limit;
+            this.unchanged = unchanged;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param repositoryFacade The triple store which holds the change log. Requires direct access to the SPARQL endpoint
+     * @param origin Identifier of this replica, which is recorded with each entry
+     */
+    public ChangeLog(ParticipantRepositoryFacade repositoryFacade, String origin) {
+        this.repositoryFacade = repositoryFacade;
+        this.origin = origin;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "paris-change-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkWaiters, RECHECK_INTERVAL.toMillis(), RECHECK_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Function to append entries to the change log, one per participant, with consecutive sequence numbers.
+     * If the entries cannot be recorded, a gap is marked in the log later on, such that consumers resynchronize
+     * @param participants URIs of the modified participants
+     * @param type Kind of the modification
+     * @throws RuntimeException thrown, if the entries could not be recorded
+     */
+    public void record(Collection<String> participants, ChangeType type) {
+        if(participants.isEmpty())
+        {
+            return;
+        }
+        UpdateRequest request = new UpdateRequest();
+        boolean markGap = gapPending.getAndSet(false);
+        if(markGap)
+        {
+            gapUpdate().getOperations().forEach(request::add);
+        }
+        StringBuilder values = new StringBuilder();
+        int i = 0;
+        for (String ignored : participants) {
+            values.append("(?participant").append(i).append(' ').append(i + 1).append(") ");
+            i++;
+        }
+        //The head holds the latest sequence number, so that appending does not need to scan the log
+        ParameterizedSparqlString update = new ParameterizedSparqlString(PREFIXES +
+                "DELETE { ?head changes:last ?last . } " +
+                "INSERT { ?head changes:last ?newLast . ?entry changes:sequence ?sequence ; changes:participant ?participant ; changes:type ?type ; changes:time ?now ; changes:origin ?origin . } " +
+                "WHERE { " +
+                "OPTIONAL { ?head changes:last ?last . } " +
+                "VALUES (?participant ?offset) { " + values + "} " +
+                "BIND(COALESCE(?last, 0) + ?offset AS ?sequence) " +
+                "BIND(COALESCE(?last, 0) + ?count AS ?newLast) " +
+                "BIND(IRI(CONCAT(\"urn:paris:changes:entry:\", STR(?sequence))) AS ?entry) " +
+                "BIND(NOW() AS ?now) }");
+        update.setIri("head", HEAD);
+        update.setLiteral("count", participants.size());
+        update.setLiteral("type", type.name());
+        update.setLiteral("origin", origin);
+        i = 0;
+        for (String participant : participants) {
+            update.setIri("participant" + i++, participant);
+        }
+        update.asUpdate().getOperations().forEach(request::add);
+        try {
+            repositoryFacade.update(request);
+        }
+        catch (RuntimeException e)
+        {
+            //Consumers must not miss these entries unnoticed
+            gapPending.set(true);
+            throw e;
+        }
+        signal();
+    }
+
+    /**
+     * Internal function which builds the update that skips a sequence number and marks everything up to it as removed.
+     * Consumers which have not yet seen all entries before the gap are thereby told to resynchronize
+     */
+    private UpdateRequest gapUpdate() {
+        ParameterizedSparqlString update = new ParameterizedSparqlString(PREFIXES +
+                "DELETE { ?head changes:last ?last ; changes:pruned ?pruned . } " +
+                "INSERT { ?head changes:last ?gap ; changes:pruned ?gap . } " +
+                "WHERE { OPTIONAL { ?head changes:last ?last . } OPTIONAL { ?head changes:pruned ?pruned . } BIND(COALESCE(?last, 0) + 1 AS ?gap) }");
+        update.setIri("head", HEAD);
+        return update.asUpdate();
+    }
+
+    /**
+     * Internal function which marks a gap for entries which could not be recorded, unless this was done together with later entries
+     */
+    private void markPendingGap() {
+        if(!gapPending.getAndSet(false))
+        {
+            return;
+        }
+        try {
+            repositoryFacade.update(gapUpdate());
+            logger.warn("Marked a gap in the change log for modifications which could not be recorded. Consumers have to resynchronize.");
+            signal();
+        }
+        catch (RuntimeException e)
+        {
+            gapPending.set(true);
+            logger.warn("Failed to mark a gap in the change log.", e);
+        }
+    }
+
+    /**
+     * Function to retrieve the entries after a sequence number
+     * @param since Sequence number of the last entry which the consumer has seen, or 0 to start from the beginning
+     * @param limit Maximum number of entries to be returned
+     * @return The entries, in the order of their sequence numbers
+     */
+    public ChangeSet getChanges(long since, int limit) {
+        ParameterizedSparqlString headQuery = new ParameterizedSparqlString(PREFIXES +
+                "SELECT ?last ?pruned WHERE { OPTIONAL { ?head changes:last ?last . } OPTIONAL { ?head changes:pruned ?pruned . } }");
+        headQuery.setIri("head", HEAD);
+        ParameterizedSparqlString changesQuery = new ParameterizedSparqlString(PREFIXES +
+                "SELECT ?sequence ?participant ?type ?time ?origin WHERE { " +
+                "?entry changes:sequence ?sequence ; changes:participant ?participant ; changes:type ?type ; changes:time ?time . " +
+                "OPTIONAL { ?entry changes:origin ?origin . } " +
+                "FILTER(?sequence > ?since) } ORDER BY ?sequence LIMIT " + Math.max(1, limit));
+        changesQuery.setLiteral("since", since);
+
+        long[] head = new long[2];
+        List<Change> changes = new ArrayList<>();
+        try (RDFConnection connection = repositoryFacade.connect()) {
+            connection.querySelect(headQuery.asQuery(), solution -> {
+                head[0] = longOrZero(solution, "last");
+                head[1] = longOrZero(solution, "pruned");
+            });
+            if(since < head[0])
+            {
+                connection.querySelect(changesQuery.asQuery(), solution -> changes.add(new Change(
+                        solution.getLiteral("sequence").getLong(),
+                        solution.getResource("participant").getURI(),
+                        ChangeType.valueOf(solution.getLiteral("type").getString()),
+                        solution.getLiteral("time").getLexicalForm(),
+                        solution.contains("origin") ? solution.getLiteral("origin").getString() : "")));
+            }
+        }
+        return new ChangeSet(since, head[0], head[1], changes);
+    }
+
+    /**
+     * @return Identifier of the replica which records its modifications in this change log
+     */
+    public String getOrigin() {
+        return origin;
+    }
+
+    /**
+     * @return Sequence number of the latest entry of the change log, or 0 if it is empty
+     */
+    public long getLastSequence() {
+        return getChanges(Long.MAX_VALUE, 1).getLastSequence();
+    }
+
+    private static long longOrZero(QuerySolution solution, String variable) {
+        return solution.contains(variable) ? solution.getLiteral(variable).getLong() : 0;
+    }
+
+    /**
+     * Function to retrieve the entries after a sequence number, waiting for new entries if there are none yet (long polling)
+     * @param since Sequence number of the last entry which the consumer has seen
+     * @param limit Maximum number of entries to be returned
+     * @param timeout Maximum time to wait for new entries. After the timeout, an empty change set is returned
+     * @return Future of the entries. Waiting does not block a thread
+     */
+    public CompletableFuture<ChangeSet> awaitChanges(long since, int limit, Duration timeout) {
+        ChangeSet changeSet = getChanges(since, limit);
+        if(!changeSet.getChanges().isEmpty() || changeSet.isResyncRequired() || timeout.isZero() || timeout.isNegative())
+        {
+            return CompletableFuture.completedFuture(changeSet);
+        }
+        Waiter waiter = new Waiter(since, limit, changeSet);
+        waiters.add(waiter);
+        try {
+            scheduler.schedule(() -> {
+                if(waiters.remove(waiter))
+                {
+                    waiter.result.complete(waiter.unchanged);
+                }
+            }, timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e)
+        {
+            //Closed
+            waiters.remove(waiter);
+            return CompletableFuture.completedFuture(changeSet);
+        }
+        //An entry might have been appended between the query above and the registration of the waiter
+        signal();
+        return waiter.result;
+    }
+
+    /**
+     * Function to wake up waiting requests, e.g. after another replica modified participants. Concurrent signals are coalesced
+     */
+    public void signal() {
+        if(waiters.isEmpty() || !checkPending.compareAndSet(false, true))
+        {
+            return;
+        }
+        try {
+            scheduler.execute(() -> {
+                checkPending.set(false);
+                checkWaiters();
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            checkPending.set(false);
+        }
+    }
+
+    /**
+     * Internal function which answers the waiting requests for which entries were appended. The change log is read once for all of them,
+     * starting at the earliest sequence number which is waited for, and only requests which are not covered by that read are answered individually
+     */
+    private void checkWaiters() {
+        markPendingGap();
+        List<Waiter> current = new ArrayList<>(waiters);
+        if(current.isEmpty())
+        {
+            return;
+        }
+        long since = Long.MAX_VALUE;
+        int limit = 1;
+        for (Waiter waiter : current) {
+            since = Math.min(since, waiter.since);
+            limit = Math.max(limit, waiter.limit);
+        }
+        try {
+            ChangeSet shared = getChanges(since, limit);
+            for (Waiter waiter : current) {
+                List<Change> changes = new ArrayList<>();
+                for (Change change : shared.getChanges()) {
+                    if(change.getSequence() > waiter.since && changes.size() < waiter.limit)
+                    {
+                        changes.add(change);
+                    }
+                }
+                ChangeSet changeSet = new ChangeSet(waiter.since, shared.getLastSequence(), shared.prunedSequence, changes);
+                if(changes.isEmpty() && !changeSet.isResyncRequired() && shared.isIncomplete() && waiter.since < shared.getLastSequence())
+                {
+                    //Entries for this request were beyond the shared read
+                    changeSet = getChanges(waiter.since, waiter.limit);
+                }
+                if((!changeSet.getChanges().isEmpty() || changeSet.isResyncRequired()) && waiters.remove(waiter))
+                {
+                    waiter.result.complete(changeSet);
+                }
+            }
+        }
+        catch (RuntimeException e)
+        {
+            logger.warn("Failed to read change log.", e);
+        }
+    }
+
+    /**
+     * Function to remove entries which are older than the retention period. The head is kept, so sequence numbers continue
+     * @param retention Minimum age of the entries to be removed
+     * @return Number of removed entries
+     */
+    public int removeOldEntries(Duration retention) {
+        ParameterizedSparqlString query = new ParameterizedSparqlString(PREFIXES +
+                "SELECT (MAX(?sequence) AS ?max) ?pruned WHERE { " +
+                "?entry changes:sequence ?sequence ; changes:time ?time . " +
+                "OPTIONAL { ?head changes:pruned ?pruned . } " +
+                "FILTER(?time < NOW() - ?retention) } GROUP BY ?pruned");
+        query.setIri("head", HEAD);
+        query.setLiteral("retention", "PT" + retention.getSeconds() + "S", XSDDatatype.XSDdayTimeDuration);
+        long[] range = new long[2];
+        try (RDFConnection connection = repositoryFacade.connect()) {
+            connection.querySelect(query.asQuery(), solution -> {
+                range[0] = longOrZero(solution, "pruned");
+                range[1] = longOrZero(solution, "max");
+            });
+        }
+        if(range[1] <= range[0])
+        {
+            return 0;
+        }
+        ParameterizedSparqlString update = new ParameterizedSparqlString(PREFIXES +
+                "DELETE { ?head changes:pruned ?pruned . } INSERT { ?head changes:pruned ?max . } WHERE { OPTIONAL { ?head changes:pruned ?pruned . } } ; " +
+                "DELETE { ?entry ?p ?o . } WHERE { ?entry changes:sequence ?sequence ; ?p ?o . FILTER(?sequence <= ?max) }");
+        update.setIri("head", HEAD);
+        update.setLiteral("max", range[1]);
+        repositoryFacade.update(update.asUpdate());
+        logger.info("Removed " + (range[1] - range[0]) + " entries from the change log.");
+        return (int) (range[1] - range[0]);
+    }
+
+    /**
+     * Stops the background checks. Waiting requests are answered with an empty change set
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        Waiter waiter;
+        while ((waiter = waiters.poll()) != null) {
+            waiter.result.complete(waiter.unchanged);
+        }
+    }
+}
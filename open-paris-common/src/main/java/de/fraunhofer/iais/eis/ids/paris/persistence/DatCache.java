@@ -0,0 +1,208 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.fraunhofer.iais.eis.DynamicAttributeToken;
+import de.fraunhofer.iais.eis.ids.component.core.SecurityTokenProvider;
+import de.fraunhofer.iais.eis.ids.component.core.TokenRetrievalException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cache of the Dynamic Attribute Token (DAT) which is attached to response messages.
+ * The token is reused until shortly before its expiry ("exp" claim) and refreshed in the background ahead of time,
+ * so that sending a response does not wait for a round trip to the DAPS. Concurrent refreshes are coalesced into a single fetch.
+ * Only if no valid token is available, e.g. directly after startup or after a longer DAPS outage, callers wait for the fetch
+ */
+public class DatCache implements Closeable {
+
+    private static final Duration RETRY_INTERVAL = Duration.ofSeconds(5);
+
+    private final SecurityTokenProvider securityTokenProvider;
+    private final Duration refreshMargin;
+    private final Duration defaultLifetime;
+    private final ScheduledExecutorService scheduler;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Logger logger = LoggerFactory.getLogger(DatCache.class);
+
+    private volatile CachedToken current;
+    private final AtomicReference<CompletableFuture<CachedToken>> pendingFetch = new AtomicReference<>();
+    //Only accessed by the scheduler thread
+    private ScheduledFuture<?> scheduledFetch;
+
+    private static class CachedToken {
+        final DynamicAttributeToken token;
+        final Instant refreshAt;
+        final Instant expiresAt;
+
+        CachedToken(DynamicAttributeToken token, Instant refreshAt, Instant expiresAt) {
+            this.token = token;
+            this.refreshAt = refreshAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param securityTokenProvider Provider which fetches new tokens, typically from the DAPS
+     * @param refreshMargin Time before the expiry of a token at which it is refreshed
+     * @param defaultLifetime Assumed lifetime of tokens without "exp" claim
+     */
+    public DatCache(SecurityTokenProvider securityTokenProvider, Duration refreshMargin, Duration defaultLifetime) {
+        this.securityTokenProvider = securityTokenProvider;
+        this.refreshMargin = refreshMargin;
+        this.defaultLifetime = defaultLifetime;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "paris-dat-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Function to obtain a valid token. Returns immediately, unless no valid token is cached
+     * @return A token which is valid for at least a few more seconds
+     * @throws TokenRetrievalException thrown, if no valid token is cached and a new one could not be obtained
+     */
+    public DynamicAttributeToken get() throws TokenRetrievalException {
+        CachedToken token = current;
+        Instant now = Instant.now();
+        if(token != null && now.isBefore(token.expiresAt))
+        {
+            if(!now.isBefore(token.refreshAt))
+            {
+                //The scheduled refresh is late or failed. Trigger it again, but keep serving the still valid token
+                fetch();
+            }
+            return token.token;
+        }
+        try {
+            return fetch().join().token;
+        }
+        catch (CompletionException e)
+        {
+            if(e.getCause() instanceof TokenRetrievalException)
+            {
+                throw (TokenRetrievalException) e.getCause();
+            }
+            if(e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Function to fetch a token in the background, e.g. on startup, such that the first response does not wait for it
+     */
+    public void prefetch() {
+        fetch();
+    }
+
+    /**
+     * Internal function which fetches a new token, unless a fetch is already running, in which case its result is shared
+     * @return The pending fetch
+     */
+    private CompletableFuture<CachedToken> fetch() {
+        CompletableFuture<CachedToken> fetch = new CompletableFuture<>();
+        CompletableFuture<CachedToken> running = pendingFetch.compareAndExchange(null, fetch);
+        if(running != null)
+        {
+            return running;
+        }
+        try {
+            scheduler.execute(() -> {
+                try {
+                    CachedToken token = toCachedToken(securityTokenProvider.getSecurityTokenAsDAT());
+                    current = token;
+                    schedule(Duration.between(Instant.now(), token.refreshAt));
+                    fetch.complete(token);
+                }
+                catch (Exception e)
+                {
+                    logger.warn("Failed to fetch DAT. Retrying in " + RETRY_INTERVAL.getSeconds() + " seconds.", e);
+                    schedule(RETRY_INTERVAL);
+                    fetch.completeExceptionally(e);
+                }
+                finally {
+                    pendingFetch.set(null);
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            //Closed
+            pendingFetch.set(null);
+            fetch.completeExceptionally(e);
+        }
+        return fetch;
+    }
+
+    private void schedule(Duration delay) {
+        //A fetch triggered by a caller replaces the scheduled one
+        if(scheduledFetch != null)
+        {
+            scheduledFetch.cancel(false);
+        }
+        try {
+            scheduledFetch = scheduler.schedule(this::fetch, Math.max(0, delay.toMillis()), TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException ignored) {} //Closed
+    }
+
+    /**
+     * Internal function which determines when a token expires, based on its "exp" claim
+     */
+    private CachedToken toCachedToken(DynamicAttributeToken token) {
+        Instant now = Instant.now();
+        Instant expiresAt = expiryOf(token.getTokenValue());
+        if(expiresAt == null)
+        {
+            expiresAt = now.plus(defaultLifetime);
+        }
+        Duration lifetime = Duration.between(now, expiresAt);
+        //Short-lived tokens are refreshed at half of their lifetime
+        Duration margin = refreshMargin.compareTo(lifetime.dividedBy(2)) < 0 ? refreshMargin : lifetime.dividedBy(2);
+        return new CachedToken(token, expiresAt.minus(margin), expiresAt.minus(margin.dividedBy(4)));
+    }
+
+    /**
+     * Internal function to read the "exp" claim of a JWT. The signature is not verified, as the token was issued to this ParIS
+     * @param jwt The token
+     * @return Point in time at which the token expires, or null if it has no "exp" claim or is no JWT
+     */
+    private Instant expiryOf(String jwt) {
+        String[] parts = jwt == null ? new String[0] : jwt.split("\\.");
+        if(parts.length < 2)
+        {
+            return null;
+        }
+        try {
+            JsonNode exp = objectMapper.readTree(new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8)).get("exp");
+            return exp != null && exp.canConvertToLong() ? Instant.ofEpochSecond(exp.asLong()) : null;
+        }
+        catch (IOException | IllegalArgumentException e)
+        {
+            logger.warn("Failed to read expiry of DAT. Assuming a lifetime of " + defaultLifetime.getSeconds() + " seconds.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Stops the background refresh
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,124 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import org.apache.jena.fuseki.main.FusekiServer;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdfconnection.RDFConnection;
+import org.apache.jena.rdfconnection.RDFConnectionFactory;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.TDB2Factory;
+import org.apache.jena.update.UpdateAction;
+import org.apache.jena.update.UpdateRequest;
+import org.eclipse.jetty.server.ServerConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Repository facade for single-node deployments, which keeps the participants in a transactional TDB2 dataset inside the ParIS JVM
+ * instead of a remote Fuseki instance.
+ * The operations of the ParIS go directly to the dataset API, without any HTTP or query string round trips: existence checks,
+ * participant reads (also for the index refresh), all writes of participant graphs, single or batched, and the change log.
+ * Operations which are implemented inside the RepositoryFacade itself only know the SPARQL endpoint URL, so they reach the same dataset
+ * via a SPARQL endpoint which is only bound to the loopback interface. These are:
+ * <ul>
+ *     <li>the passivation bookkeeping: graphIsActive, getActiveGraphs and changePassivationOfGraph. The graph status cache answers graphIsActive
+ *     for all but the first lookup, and getActiveGraphs is only used by the index refresh, snapshots and streamed queries</li>
+ *     <li>the evaluation of participant queries by the GenericQueryEvaluator, whose results are cached by the query result cache</li>
+ * </ul>
+ */
+public class EmbeddedRepositoryFacade extends ParticipantRepositoryFacade implements Closeable {
+
+    private static final String DATASET_NAME = "/connectorData";
+
+    private final Dataset dataset;
+    private final FusekiServer server;
+    private final Logger logger = LoggerFactory.getLogger(EmbeddedRepositoryFacade.class);
+
+    private EmbeddedRepositoryFacade(Dataset dataset, FusekiServer server) {
+        super("http://localhost:" + localPort(server) + DATASET_NAME);
+        this.dataset = dataset;
+        this.server = server;
+    }
+
+    /**
+     * Opens (or creates) a TDB2 dataset on local disk
+     * @param location Directory of the TDB2 dataset
+     * @return repository facade backed by the dataset
+     * @throws IOException thrown, if the loopback endpoint could not be started
+     */
+    public static EmbeddedRepositoryFacade open(String location) throws IOException {
+        Dataset dataset = TDB2Factory.connectDataset(location);
+        FusekiServer server;
+        try {
+            //Port 0 lets the server bind any free port, which avoids a race with other processes between choosing and binding a port
+            server = FusekiServer.create()
+                    .loopback(true)
+                    .port(0)
+                    .add(DATASET_NAME, dataset)
+                    .build()
+                    .start();
+        }
+        catch (RuntimeException e)
+        {
+            dataset.close();
+            throw new IOException("Failed to start the loopback SPARQL endpoint.", e);
+        }
+        return new EmbeddedRepositoryFacade(dataset, server);
+    }
+
+    private static int localPort(FusekiServer server) {
+        return ((ServerConnector) server.getJettyServer().getConnectors()[0]).getLocalPort();
+    }
+
+    /**
+     * @return The underlying dataset
+     */
+    public Dataset getDataset() {
+        return dataset;
+    }
+
+    @Override
+    public RDFConnection connect() {
+        return RDFConnectionFactory.connect(dataset);
+    }
+
+    @Override
+    public void update(UpdateRequest updateRequest) {
+        Txn.executeWrite(dataset, () -> UpdateAction.execute(updateRequest, dataset));
+    }
+
+    @Override
+    public boolean graphExists(String graphName) {
+        return Txn.calculateRead(dataset, () -> dataset.containsNamedModel(graphName));
+    }
+
+    @Override
+    public Model fetchGraph(String graphName) {
+        return Txn.calculateRead(dataset, () -> ModelFactory.createDefaultModel().add(dataset.getNamedModel(graphName)));
+    }
+
+    @Override
+    public Model constructQuery(String queryString) {
+        return Txn.calculateRead(dataset, () -> {
+            try (QueryExecution queryExecution = QueryExecutionFactory.create(queryString, dataset)) {
+                return queryExecution.execConstruct();
+            }
+        });
+    }
+
+    /**
+     * Stops the loopback SPARQL endpoint and releases the dataset
+     */
+    @Override
+    public void close() {
+        server.stop();
+        dataset.close();
+        logger.info("Embedded triple store closed.");
+    }
+}
@@ -0,0 +1,87 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Statement;
+
+/**
+ * Difference between the stored and the announced content of a participant graph.
+ * Statements without blank nodes are compared one by one, so that only the changed statements need to be written.
+ * Blank nodes have no identity across documents, so the statements containing blank nodes are compared as a whole, up to isomorphism.
+ * If they differ, they cannot be addressed by DELETE DATA, and the graph has to be replaced
+ */
+public class GraphDelta {
+
+    private final Model removals;
+    private final Model additions;
+    private final boolean replacementRequired;
+
+    private GraphDelta(Model removals, Model additions, boolean replacementRequired) {
+        this.removals = removals;
+        this.additions = additions;
+        this.replacementRequired = replacementRequired;
+    }
+
+    /**
+     * Function to compute the difference between two versions of a graph
+     * @param stored The current content of the graph
+     * @param incoming The new content of the graph
+     * @return The difference
+     */
+    public static GraphDelta compute(Model stored, Model incoming) {
+        Model storedGround = ModelFactory.createDefaultModel();
+        Model storedBlank = ModelFactory.createDefaultModel();
+        split(stored, storedGround, storedBlank);
+        Model incomingGround = ModelFactory.createDefaultModel();
+        Model incomingBlank = ModelFactory.createDefaultModel();
+        split(incoming, incomingGround, incomingBlank);
+
+        boolean replacementRequired = !storedBlank.isIsomorphicWith(incomingBlank);
+        return new GraphDelta(storedGround.difference(incomingGround), incomingGround.difference(storedGround), replacementRequired);
+    }
+
+    private static void split(Model model, Model ground, Model blank) {
+        model.listStatements().forEachRemaining(statement -> {
+            if(hasBlankNode(statement))
+            {
+                blank.add(statement);
+            }
+            else
+            {
+                ground.add(statement);
+            }
+        });
+    }
+
+    private static boolean hasBlankNode(Statement statement) {
+        return statement.getSubject().isAnon() || statement.getObject().isAnon();
+    }
+
+    /**
+     * @return true, if both versions of the graph are equal up to blank node renaming
+     */
+    public boolean isEmpty() {
+        return !replacementRequired && removals.isEmpty() && additions.isEmpty();
+    }
+
+    /**
+     * @return true, if statements with blank nodes changed, such that the graph has to be replaced as a whole
+     */
+    public boolean isReplacementRequired() {
+        return replacementRequired;
+    }
+
+    /**
+     * @return Statements without blank nodes which have to be removed from the graph
+     */
+    public Model getRemovals() {
+        return removals;
+    }
+
+    /**
+     * @return Statements without blank nodes which have to be added to the graph
+     */
+    public Model getAdditions() {
+        return additions;
+    }
+}
@@ -0,0 +1,220 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import de.fraunhofer.iais.eis.ids.component.core.RejectMessageException;
+import de.fraunhofer.iais.eis.ids.index.common.persistence.RepositoryFacade;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class caches whether the named graph of a participant exists and whether it is passivated.
+ * It is kept up to date write-through by the persistence layer and reconciled periodically against the triple store,
+ * which remains the single source of truth. Unknown graphs are looked up lazily
+ */
+public class GraphStatusCache {
+
+    /**
+     * Status of a participant graph in the triple store
+     */
+    public enum GraphStatus {
+        ACTIVE, PASSIVE, ABSENT
+    }
+
+    private final RepositoryFacade repositoryFacade;
+    private final Map<String, GraphStatus> statuses = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final Logger logger = LoggerFactory.getLogger(GraphStatusCache.class);
+
+    //Graphs written while a reconciliation is running. Their status is newer than the snapshot obtained from the triple store
+    private final Set<String> writtenDuringReconciliation = ConcurrentHashMap.newKeySet();
+    private volatile boolean reconciling = false;
+
+    //If set, existence and passivation of an unknown graph are looked up concurrently
+    private Executor lookupExecutor;
+
+    /**
+     * Constructor
+     * @param repositoryFacade repository (triple store) which is the source of truth for the cached status
+     */
+    public GraphStatusCache(RepositoryFacade repositoryFacade) {
+        this.repositoryFacade = repositoryFacade;
+    }
+
+    /**
+     * Setter for the executor on which the passivation state of an unknown graph is looked up, while its existence is looked up on the calling thread.
+     * This halves the latency of a cache miss, at the expense of a superfluous request for graphs which do not exist
+     * @param lookupExecutor executor to be used, or null to look up both sequentially
+     */
+    public void setLookupExecutor(Executor lookupExecutor) {
+        this.lookupExecutor = lookupExecutor;
+    }
+
+    /**
+     * Function to obtain the status of a graph. On a cache miss, the status is fetched from the triple store
+     * @param graph Name of the graph
+     * @return Status of the graph
+     * @throws IOException thrown, if the triple store could not be reached
+     * @throws RejectMessageException thrown, if an internal error occurred
+     */
+    public GraphStatus getStatus(String graph) throws IOException, RejectMessageException {
+        GraphStatus status = statuses.get(graph);
+        if(status != null)
+        {
+            hits.incrementAndGet();
+            return status;
+        }
+        misses.incrementAndGet();
+        status = lookupExecutor == null ? lookUp(graph) : lookUpConcurrently(graph);
+        //Don't overwrite a status which was written through in the meantime
+        GraphStatus existing = statuses.putIfAbsent(graph, status);
+        return existing != null ? existing : status;
+    }
+
+    private GraphStatus lookUp(String graph) throws IOException, RejectMessageException {
+        if(!repositoryFacade.graphExists(graph))
+        {
+            return GraphStatus.ABSENT;
+        }
+        return repositoryFacade.graphIsActive(graph) ? GraphStatus.ACTIVE : GraphStatus.PASSIVE;
+    }
+
+    private GraphStatus lookUpConcurrently(String graph) throws IOException, RejectMessageException {
+        CompletableFuture<Boolean> active = CompletableFuture.supplyAsync(() -> {
+            try {
+                return repositoryFacade.graphIsActive(graph);
+            }
+            catch (Exception e)
+            {
+                throw new CompletionException(e);
+            }
+        }, lookupExecutor);
+        if(!repositoryFacade.graphExists(graph))
+        {
+            active.cancel(false);
+            return GraphStatus.ABSENT;
+        }
+        try {
+            return active.join() ? GraphStatus.ACTIVE : GraphStatus.PASSIVE;
+        }
+        catch (CompletionException e)
+        {
+            if(e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+            if(e.getCause() instanceof RejectMessageException)
+            {
+                throw (RejectMessageException) e.getCause();
+            }
+            if(e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Function to record that a graph was created or re-activated in the triple store
+     * @param graph Name of the graph
+     */
+    public void markActive(String graph) {
+        write(graph, GraphStatus.ACTIVE);
+    }
+
+    /**
+     * Function to record that a graph was passivated in the triple store
+     * @param graph Name of the graph
+     */
+    public void markPassive(String graph) {
+        write(graph, GraphStatus.PASSIVE);
+    }
+
+    /**
+     * Function to drop the cached status of a graph, such that it is fetched from the triple store on next access
+     * @param graph Name of the graph
+     */
+    public void invalidate(String graph) {
+        if(reconciling)
+        {
+            writtenDuringReconciliation.add(graph);
+        }
+        statuses.remove(graph);
+    }
+
+    private void write(String graph, GraphStatus status) {
+        if(reconciling)
+        {
+            writtenDuringReconciliation.add(graph);
+        }
+        statuses.put(graph, status);
+    }
+
+    /**
+     * Function to reconcile the cache with the triple store. All active graphs are loaded into the cache.
+     * Cached entries which are not active according to the triple store are dropped and will be looked up lazily
+     * @throws IOException thrown, if the triple store could not be reached
+     * @throws RejectMessageException thrown, if the active graphs could not be determined
+     */
+    public synchronized void reconcile() throws IOException, RejectMessageException {
+        writtenDuringReconciliation.clear();
+        reconciling = true;
+        try {
+            Set<String> activeGraphs = new HashSet<>();
+            for (String graph : repositoryFacade.getActiveGraphs()) {
+                activeGraphs.add(graph);
+            }
+            statuses.keySet().removeIf(graph -> !activeGraphs.contains(graph) && !writtenDuringReconciliation.contains(graph));
+            for (String graph : activeGraphs) {
+                if(!writtenDuringReconciliation.contains(graph))
+                {
+                    statuses.put(graph, GraphStatus.ACTIVE);
+                }
+            }
+            logger.info("Graph status cache reconciled. " + activeGraphs.size() + " active graphs, " + getHits() + " hits, " + getMisses() + " misses so far.");
+        }
+        finally {
+            reconciling = false;
+            writtenDuringReconciliation.clear();
+        }
+    }
+
+    /**
+     * @return Number of lookups which were answered from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return Number of lookups which required a round trip to the triple store
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return Share of lookups which were answered from the cache, between 0 and 1
+     */
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    /**
+     * @return Number of graphs whose status is currently cached
+     */
+    public int size() {
+        return statuses.size();
+    }
+}
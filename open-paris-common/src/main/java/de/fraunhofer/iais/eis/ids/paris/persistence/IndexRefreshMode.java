@@ -0,0 +1,18 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+/**
+ * Enumeration of the strategies which can be used to keep the index in sync with the triple store
+ */
+public enum IndexRefreshMode {
+    /**
+     * All active participants are fetched from the triple store and the index content is replaced as a whole
+     */
+    FULL,
+
+    /**
+     * Only participants which were added, changed or removed since the last refresh are written to the index.
+     * Changes are detected by comparing a digest of each graph, which is computed by the triple store, so unchanged participants are not fetched.
+     * The first refresh after startup is always a full refresh
+     */
+    INCREMENTAL
+}
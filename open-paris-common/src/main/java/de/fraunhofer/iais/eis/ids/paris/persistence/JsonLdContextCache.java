@@ -0,0 +1,139 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import com.github.jsonldjava.core.Context;
+import com.github.jsonldjava.core.DocumentLoader;
+import com.github.jsonldjava.core.JsonLdError;
+import com.github.jsonldjava.core.JsonLdOptions;
+import com.github.jsonldjava.utils.JsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+
+/**
+ * A JSON-LD context document which is fetched once, compiled once and then shared by all threads.
+ * The fetched document is persisted in a local directory, such that the ParIS can be restarted while the context URL is not reachable.
+ * The compiled context must not be modified. JSON-LD processing derives new contexts from it rather than changing it
+ */
+public class JsonLdContextCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(JsonLdContextCache.class);
+    private static final int TIMEOUT_MILLIS = 10000;
+
+    private final String url;
+    private final Context compiledContext;
+    private final JsonLdOptions options;
+
+    private JsonLdContextCache(String url, String contextDocument) throws IOException {
+        this.url = url;
+        //Remote contexts referenced by the document itself are resolved against the cached copy instead of the network
+        DocumentLoader documentLoader = new DocumentLoader();
+        documentLoader.addInjectedDoc(url, contextDocument);
+        this.options = new JsonLdOptions();
+        this.options.setDocumentLoader(documentLoader);
+        try {
+            Object document = JsonUtils.fromString(contextDocument);
+            Object context = document instanceof Map && ((Map<?, ?>) document).containsKey("@context") ? ((Map<?, ?>) document).get("@context") : document;
+            this.compiledContext = new Context(options).parse(context);
+        }
+        catch (JsonLdError e)
+        {
+            throw new IOException("Invalid JSON-LD context document at " + url, e);
+        }
+    }
+
+    /**
+     * Function to obtain a context document. It is fetched from its URL and written to the cache directory.
+     * If the URL cannot be reached, the copy from the cache directory is used instead
+     * @param url URL of the context document
+     * @param cacheDirectory Directory in which fetched context documents are persisted. May be null, in which case nothing is persisted
+     * @return the compiled context
+     * @throws IOException thrown, if the context could neither be fetched nor read from the cache directory, or if it is not valid JSON-LD
+     */
+    public static JsonLdContextCache load(String url, Path cacheDirectory) throws IOException {
+        Path cacheFile = cacheDirectory == null ? null : cacheDirectory.resolve(fileNameOf(url));
+        String contextDocument;
+        try {
+            contextDocument = fetch(url);
+            if(cacheFile != null)
+            {
+                Files.createDirectories(cacheDirectory);
+                Path temporaryFile = Files.createTempFile(cacheDirectory, "context", ".tmp");
+                Files.write(temporaryFile, contextDocument.getBytes(StandardCharsets.UTF_8));
+                Files.move(temporaryFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            logger.info("Fetched JSON-LD context from " + url);
+        }
+        catch (IOException e)
+        {
+            if(cacheFile == null || !Files.exists(cacheFile))
+            {
+                throw e;
+            }
+            logger.warn("Could not fetch JSON-LD context from " + url + ". Using cached copy from " + cacheFile, e);
+            contextDocument = new String(Files.readAllBytes(cacheFile), StandardCharsets.UTF_8);
+        }
+        return new JsonLdContextCache(url, contextDocument);
+    }
+
+    private static String fetch(String url) throws IOException {
+        URLConnection connection = new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        connection.setRequestProperty("Accept", "application/ld+json, application/json");
+        if(connection instanceof HttpURLConnection && ((HttpURLConnection) connection).getResponseCode() >= 300)
+        {
+            throw new IOException("Fetching " + url + " failed with status " + ((HttpURLConnection) connection).getResponseCode());
+        }
+        try (InputStream inputStream = connection.getInputStream()) {
+            byte[] content = inputStream.readAllBytes();
+            return new String(content, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String fileNameOf(String url) {
+        try {
+            StringBuilder fileName = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8))) {
+                fileName.append(String.format("%02x", b));
+            }
+            return fileName.append(".jsonld").toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return URL of the context document
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return The compiled context. Must not be modified
+     */
+    public Context getCompiledContext() {
+        return compiledContext;
+    }
+
+    /**
+     * @return JSON-LD options which resolve the context URL to the cached document
+     */
+    public JsonLdOptions getOptions() {
+        return options;
+    }
+}
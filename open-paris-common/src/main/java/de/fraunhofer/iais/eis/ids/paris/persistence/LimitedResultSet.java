@@ -0,0 +1,91 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.engine.binding.Binding;
+
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * ResultSet wrapper which ends the iteration once the row, byte or time limit is reached.
+ * This allows result writers to stream rows from the triple store to the client without holding the result in memory, while
+ * still enforcing the limits
+ */
+public class LimitedResultSet implements ResultSet {
+
+    private final ResultSet delegate;
+    private final QueryLimits limits;
+    private final LongSupplier bytesWritten;
+    private final long deadline;
+    private int rows = 0;
+    private boolean truncated = false;
+
+    /**
+     * Constructor
+     * @param delegate The result set to be limited
+     * @param limits The limits to be enforced
+     * @param bytesWritten Supplier of the number of bytes written to the client so far
+     */
+    public LimitedResultSet(ResultSet delegate, QueryLimits limits, LongSupplier bytesWritten) {
+        this.delegate = delegate;
+        this.limits = limits;
+        this.bytesWritten = bytesWritten;
+        this.deadline = System.nanoTime() + limits.getTimeout().toNanos();
+    }
+
+    /**
+     * @return true, if the iteration was ended early because a limit was reached
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(!delegate.hasNext())
+        {
+            return false;
+        }
+        if(rows >= limits.getMaxRows() || bytesWritten.getAsLong() >= limits.getMaxBytes() || System.nanoTime() - deadline > 0)
+        {
+            truncated = true;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public QuerySolution next() {
+        rows++;
+        return delegate.next();
+    }
+
+    @Override
+    public QuerySolution nextSolution() {
+        rows++;
+        return delegate.nextSolution();
+    }
+
+    @Override
+    public Binding nextBinding() {
+        rows++;
+        return delegate.nextBinding();
+    }
+
+    @Override
+    public int getRowNumber() {
+        return rows;
+    }
+
+    @Override
+    public List<String> getResultVars() {
+        return delegate.getResultVars();
+    }
+
+    @Override
+    public Model getResourceModel() {
+        return delegate.getResourceModel();
+    }
+}
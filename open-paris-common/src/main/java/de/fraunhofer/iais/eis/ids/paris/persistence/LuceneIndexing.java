@@ -0,0 +1,269 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.fraunhofer.iais.eis.Participant;
+import de.fraunhofer.iais.eis.ids.index.common.persistence.NullIndexing;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Indexing implementation which keeps a full-text index of all active participants in a Lucene directory on local disk,
+ * such that no external search engine is required.
+ * Writes are applied to the index writer immediately, become visible to searches via near-real-time readers within a second,
+ * and are committed (made durable) in batches at a fixed interval rather than per write.
+ * Every literal property of a participant is indexed as exact keyword under its local name (e.g. "legalForm") and as full text
+ */
+public class LuceneIndexing extends NullIndexing<Participant> implements BulkIndexing, ParticipantSearch, Closeable {
+
+    private static final String FIELD_ID = "id";
+    private static final String FIELD_TEXT = "text";
+    private static final Set<String> TEXT_FIELDS = new HashSet<>(Arrays.asList(FIELD_TEXT, "title", "description"));
+    private static final long REFRESH_INTERVAL_MILLIS = 1000;
+
+    private final Directory directory;
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+    private final Analyzer analyzer;
+    private final ScheduledExecutorService scheduler;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Logger logger = LoggerFactory.getLogger(LuceneIndexing.class);
+
+    //Prevents that readers are refreshed while the index content is being replaced
+    private final Object refreshLock = new Object();
+
+    /**
+     * Constructor. Opens the index in the given directory, or creates a new one
+     * @param indexDirectory Directory of the index
+     * @param commitInterval Interval in which pending writes are committed
+     * @throws IOException thrown, if the index could not be opened
+     */
+    public LuceneIndexing(Path indexDirectory, Duration commitInterval) throws IOException {
+        Map<String, Analyzer> textAnalyzers = new HashMap<>();
+        StandardAnalyzer standardAnalyzer = new StandardAnalyzer();
+        TEXT_FIELDS.forEach(field -> textAnalyzers.put(field, standardAnalyzer));
+        //Keyword fields are matched exactly
+        this.analyzer = new PerFieldAnalyzerWrapper(new KeywordAnalyzer(), textAnalyzers);
+        this.directory = FSDirectory.open(indexDirectory);
+        this.writer = new IndexWriter(directory, new IndexWriterConfig(analyzer).setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+        this.searcherManager = new SearcherManager(writer, null);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "paris-lucene-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refresh, REFRESH_INTERVAL_MILLIS, REFRESH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::commit, commitInterval.toMillis(), commitInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void recreateIndex(String indexName) throws IOException {
+        writer.deleteAll();
+        writer.commit();
+        refresh();
+    }
+
+    @Override
+    public void add(Participant participant) throws IOException {
+        writer.updateDocument(new Term(FIELD_ID, participant.getId().toString()), toDocument(participant));
+    }
+
+    @Override
+    public void update(Participant participant) throws IOException {
+        //Replaces the document, or adds it if it is missing
+        add(participant);
+    }
+
+    @Override
+    public void delete(URI participantUri) throws IOException {
+        writer.deleteDocuments(new Term(FIELD_ID, participantUri.toString()));
+    }
+
+    @Override
+    public void addAll(Collection<Participant> participants) throws IOException {
+        for (Participant participant : participants) {
+            add(participant);
+        }
+    }
+
+    /**
+     * Replaces the entire index content. Searches keep seeing the previous content until the new content has been committed
+     * @param indexName Name of the index to be replaced. Ignored, as this index holds participants only
+     * @param participants The participants which make up the new content of the index
+     * @throws IOException thrown, if the index could not be written
+     */
+    @Override
+    public void replaceAll(String indexName, Collection<Participant> participants) throws IOException {
+        synchronized (refreshLock) {
+            writer.deleteAll();
+            addAll(participants);
+            writer.commit();
+            searcherManager.maybeRefreshBlocking();
+        }
+    }
+
+    @Override
+    public List<URI> search(String queryText, int maxResults) throws IOException {
+        MultiFieldQueryParser parser = new MultiFieldQueryParser(TEXT_FIELDS.toArray(new String[0]), analyzer);
+        org.apache.lucene.search.Query query;
+        try {
+            query = parser.parse(queryText);
+        }
+        catch (ParseException e)
+        {
+            throw new IllegalArgumentException("Invalid search query: " + e.getMessage(), e);
+        }
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            List<URI> results = new ArrayList<>();
+            for (ScoreDoc scoreDoc : searcher.search(query, maxResults).scoreDocs) {
+                results.add(URI.create(searcher.doc(scoreDoc.doc).get(FIELD_ID)));
+            }
+            return results;
+        }
+        finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * Internal function which converts a participant to a Lucene document, based on its JSON-LD representation
+     */
+    private Document toDocument(Participant participant) throws IOException {
+        Document document = new Document();
+        document.add(new StringField(FIELD_ID, participant.getId().toString(), Field.Store.YES));
+        addProperties(document, objectMapper.readTree(participant.toRdf()));
+        return document;
+    }
+
+    private void addProperties(Document document, JsonNode node) {
+        if(node.isArray())
+        {
+            node.forEach(element -> addProperties(document, element));
+            return;
+        }
+        if(!node.isObject())
+        {
+            return;
+        }
+        node.fields().forEachRemaining(property -> {
+            if(property.getKey().equals("@context") || property.getKey().equals("@id"))
+            {
+                return;
+            }
+            String field = localName(property.getKey());
+            Iterable<JsonNode> values = property.getValue().isArray() ? property.getValue() : Collections.singletonList(property.getValue());
+            for (JsonNode value : values) {
+                if(value.isValueNode())
+                {
+                    addValue(document, field, value.asText());
+                }
+                else if(value.has("@value"))
+                {
+                    addValue(document, field, value.get("@value").asText());
+                }
+                else if(value.size() == 1 && value.has("@id"))
+                {
+                    //Reference to another resource
+                    document.add(new StringField(field, value.get("@id").asText(), Field.Store.NO));
+                }
+                else
+                {
+                    //Nested resource, e.g. a member participant
+                    addProperties(document, value);
+                }
+            }
+        });
+    }
+
+    private void addValue(Document document, String field, String value) {
+        if(TEXT_FIELDS.contains(field))
+        {
+            document.add(new TextField(field, value, Field.Store.NO));
+        }
+        else
+        {
+            document.add(new StringField(field, value, Field.Store.NO));
+        }
+        document.add(new TextField(FIELD_TEXT, value, Field.Store.NO));
+    }
+
+    private static String localName(String key) {
+        if(key.startsWith("@"))
+        {
+            return key.substring(1);
+        }
+        int separator = Math.max(key.lastIndexOf(':'), Math.max(key.lastIndexOf('/'), key.lastIndexOf('#')));
+        return key.substring(separator + 1);
+    }
+
+    private void refresh() {
+        synchronized (refreshLock) {
+            try {
+                searcherManager.maybeRefresh();
+            }
+            catch (IOException e)
+            {
+                logger.warn("Failed to refresh index readers.", e);
+            }
+        }
+    }
+
+    private void commit() {
+        try {
+            if(writer.hasUncommittedChanges())
+            {
+                writer.commit();
+            }
+        }
+        catch (IOException e)
+        {
+            logger.warn("Failed to commit index changes.", e);
+        }
+    }
+
+    /**
+     * Commits pending writes and closes the index
+     * @throws IOException thrown, if pending writes could not be committed
+     */
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdownNow();
+        try {
+            writer.commit();
+        }
+        finally {
+            searcherManager.close();
+            writer.close();
+            directory.close();
+        }
+    }
+}
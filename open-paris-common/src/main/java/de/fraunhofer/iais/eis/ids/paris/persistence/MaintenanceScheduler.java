@@ -0,0 +1,243 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import de.fraunhofer.iais.eis.ids.component.core.RejectMessageException;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+
+/**
+ * Scheduler of background maintenance jobs, such as the index refresh.
+ * <ul>
+ *     <li>Each job starts after an initial delay and is repeated with a fixed period. A random jitter is added to every run,
+ *     such that replicas which were started together do not run their jobs at the same time</li>
+ *     <li>Jobs run one at a time on a single background thread. The next run of a job is only scheduled once the current one has completed,
+ *     so a job never overlaps with itself</li>
+ *     <li>While the request load is high, runs are postponed, but at most for a configurable time, such that a job cannot be starved</li>
+ *     <li>On shutdown, a running job gets a grace period to complete before it is interrupted</li>
+ * </ul>
+ * The duration and the number of processed items of every run are recorded via {@link ParisMetrics}
+ */
+public class MaintenanceScheduler implements Closeable {
+
+    /**
+     * A maintenance job
+     */
+    @FunctionalInterface
+    public interface Job {
+        /**
+         * Runs the job once
+         * @return Number of processed items
+         * @throws IOException thrown, if the triple store or the index could not be reached
+         * @throws RejectMessageException thrown, if an internal error occurred
+         */
+        int run() throws IOException, RejectMessageException;
+    }
+
+    /**
+     * Timing of a maintenance job
+     */
+    public static class Schedule {
+        private final Duration initialDelay;
+        private final Duration period;
+        private final Duration jitter;
+
+        /**
+         * Constructor
+         * @param initialDelay Time after startup before the first run
+         * @param period Time between the starts of two runs
+         * @param jitter Maximum random delay which is added to every run
+         */
+        public Schedule(Duration initialDelay, Duration period, Duration jitter) {
+            this.initialDelay = initialDelay;
+            this.period = period;
+            this.jitter = jitter;
+        }
+    }
+
+    private static final Duration LOAD_RECHECK_INTERVAL = Duration.ofSeconds(10);
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final ParisMetrics metrics;
+    private final Duration shutdownTimeout;
+    private final Logger logger = LoggerFactory.getLogger(MaintenanceScheduler.class);
+
+    private IntSupplier activeRequests = () -> 0;
+    private int pauseAboveActiveRequests = 0;
+    private Duration maxPostpone = Duration.ZERO;
+
+    /**
+     * Constructor
+     * @param metrics Metrics to which the runs are reported
+     * @param shutdownTimeout Time a running job may take to complete on shutdown, before it is interrupted
+     */
+    public MaintenanceScheduler(ParisMetrics metrics, Duration shutdownTimeout) {
+        this.metrics = metrics;
+        this.shutdownTimeout = shutdownTimeout;
+        this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "paris-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        //Pending runs are dropped on shutdown, only the running ones are waited for
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.executor.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Setter for the load at which runs are postponed
+     * @param activeRequests Number of requests which are currently processed, e.g. queries and registrations
+     * @param pauseAboveActiveRequests Runs are postponed while at least this many requests are active. 0 disables postponing
+     * @param maxPostpone Maximum time by which a run is postponed
+     */
+    public void setLoadLimit(IntSupplier activeRequests, int pauseAboveActiveRequests, Duration maxPostpone) {
+        this.activeRequests = activeRequests;
+        this.pauseAboveActiveRequests = pauseAboveActiveRequests;
+        this.maxPostpone = maxPostpone;
+    }
+
+    /**
+     * Function to schedule a job
+     * @param name Name of the job, used in logs and as "job" tag of the metrics
+     * @param schedule Timing of the job
+     * @param due Checked before every run. If false, the run is skipped, e.g. because another replica is responsible for the job
+     * @param job The job
+     */
+    public void schedule(String name, Schedule schedule, BooleanSupplier due, Job job) {
+        ScheduledJob scheduledJob = new ScheduledJob(name, schedule, due, job);
+        scheduledJob.scheduleAfter(schedule.initialDelay);
+        logger.info("Scheduled maintenance job " + name + " every " + schedule.period.toMinutes() + " minutes, starting in " + schedule.initialDelay.getSeconds() + " seconds.");
+    }
+
+    /**
+     * Internal state of a scheduled job
+     */
+    private class ScheduledJob {
+        private final String name;
+        private final Schedule schedule;
+        private final BooleanSupplier due;
+        private final Job job;
+
+        //Only accessed by the executor thread
+        private long nominalStart;
+        private long postponedSince = -1;
+
+        ScheduledJob(String name, Schedule schedule, BooleanSupplier due, Job job) {
+            this.name = name;
+            this.schedule = schedule;
+            this.due = due;
+            this.job = job;
+        }
+
+        void scheduleAfter(Duration delay) {
+            nominalStart = System.nanoTime() + delay.toNanos();
+            submit(delay.plus(randomJitter()));
+        }
+
+        private void submit(Duration delay) {
+            try {
+                executor.schedule(this::tick, Math.max(0, delay.toMillis()), TimeUnit.MILLISECONDS);
+            }
+            catch (RejectedExecutionException ignored) {} //Shut down
+        }
+
+        private Duration randomJitter() {
+            long jitterMillis = schedule.jitter.toMillis();
+            return jitterMillis > 0 ? Duration.ofMillis(ThreadLocalRandom.current().nextLong(jitterMillis + 1)) : Duration.ZERO;
+        }
+
+        private void tick() {
+            if(postponeIfUnderLoad())
+            {
+                return;
+            }
+            run();
+            //Periods are counted from the nominal start, so that a long run does not shift all subsequent runs
+            nominalStart += schedule.period.toNanos();
+            long remaining = Math.max(0, nominalStart - System.nanoTime());
+            if(remaining == 0)
+            {
+                //The run took longer than a period
+                nominalStart = System.nanoTime();
+            }
+            submit(Duration.ofNanos(remaining).plus(randomJitter()));
+        }
+
+        /**
+         * Postpones the run, if the request load is high. The postponed run is resubmitted by this function
+         * @return true, if the run was postponed
+         */
+        private boolean postponeIfUnderLoad() {
+            if(pauseAboveActiveRequests <= 0 || activeRequests.getAsInt() < pauseAboveActiveRequests)
+            {
+                postponedSince = -1;
+                return false;
+            }
+            long now = System.nanoTime();
+            if(postponedSince < 0)
+            {
+                postponedSince = now;
+                logger.info("Postponing maintenance job " + name + " due to high load.");
+            }
+            if(now - postponedSince >= maxPostpone.toNanos())
+            {
+                logger.warn("Running maintenance job " + name + " despite high load, as it was postponed for " + maxPostpone.toMinutes() + " minutes.");
+                postponedSince = -1;
+                return false;
+            }
+            metrics.recordMaintenanceSkipped(name, "load");
+            submit(LOAD_RECHECK_INTERVAL);
+            return true;
+        }
+
+        private void run() {
+            if(!due.getAsBoolean())
+            {
+                logger.debug("Maintenance job " + name + " is not due on this instance.");
+                metrics.recordMaintenanceSkipped(name, "not_due");
+                return;
+            }
+            Timer.Sample sample = metrics.start();
+            Throwable failure = null;
+            try {
+                int items = job.run();
+                metrics.recordMaintenanceItems(name, items);
+            }
+            catch (IOException | RejectMessageException | RuntimeException e)
+            {
+                failure = e;
+                logger.warn("Maintenance job " + name + " failed.", e);
+            }
+            finally {
+                metrics.stop(sample, ParisMetrics.MAINTENANCE, Tags.of("job", name), failure);
+            }
+        }
+    }
+
+    /**
+     * Stops the scheduler. Pending runs are cancelled, and a running job is interrupted if it does not complete within the shutdown timeout
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if(!executor.awaitTermination(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS))
+            {
+                logger.warn("Maintenance job did not complete within " + shutdownTimeout.getSeconds() + " seconds. Interrupting it.");
+                executor.shutdownNow();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
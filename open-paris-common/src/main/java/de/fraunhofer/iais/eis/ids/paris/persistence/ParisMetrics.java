@@ -0,0 +1,245 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import de.fraunhofer.iais.eis.ids.component.core.RejectMessageException;
+import io.micrometer.core.instrument.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Micrometer instrumentation of the registration, query, triple store and index operations of the ParIS.
+ * Timers publish percentile histograms, such that latency quantiles can be aggregated across instances, e.g. by Prometheus.
+ * Every timer is tagged with the name of the exception which terminated the operation, or "none"
+ */
+public class ParisMetrics {
+
+    /**
+     * Timer of inbound infrastructure messages, tagged by message type
+     */
+    public static final String MESSAGES = "paris.messages";
+
+    /**
+     * Timer of requests to the triple store, tagged by operation
+     */
+    public static final String REPOSITORY = "paris.repository.requests";
+
+    /**
+     * Timer of index writes, tagged by operation
+     */
+    public static final String INDEX = "paris.index.operations";
+
+    /**
+     * Timer of participant requests and queries, tagged by operation and by whether the result was served from a cache
+     */
+    public static final String QUERIES = "paris.queries";
+
+    /**
+     * Timer of background maintenance runs, tagged by job
+     */
+    public static final String MAINTENANCE = "paris.maintenance.runs";
+
+    private static final String NO_EXCEPTION = "none";
+
+    private final MeterRegistry registry;
+
+    //Meters which are looked up on every operation, by name and tags. Building and registering them is not free
+    private final Map<List<Object>, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> resultSizes = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     * @param registry Registry to which all meters are published
+     */
+    public ParisMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * @return The registry to which all meters are published
+     */
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Function to time an operation
+     * @param name Name of the timer, e.g. {@link #REPOSITORY}
+     * @param operation Value of the "operation" tag
+     * @param task The operation
+     * @param <T> Type of the result
+     * @return Result of the operation
+     * @throws IOException thrown, if the operation throws it
+     * @throws RejectMessageException thrown, if the operation throws it
+     */
+    public <T> T time(String name, String operation, AdmissionController.Task<T> task) throws IOException, RejectMessageException {
+        return time(name, Tags.of("operation", operation), task);
+    }
+
+    /**
+     * Function to time an operation
+     * @param name Name of the timer
+     * @param tags Tags of the timer
+     * @param task The operation
+     * @param <T> Type of the result
+     * @return Result of the operation
+     * @throws IOException thrown, if the operation throws it
+     * @throws RejectMessageException thrown, if the operation throws it
+     */
+    public <T> T time(String name, Tags tags, AdmissionController.Task<T> task) throws IOException, RejectMessageException {
+        Timer.Sample sample = start();
+        Throwable failure = null;
+        try {
+            return task.call();
+        }
+        catch (IOException | RejectMessageException | RuntimeException e)
+        {
+            failure = e;
+            throw e;
+        }
+        finally {
+            stop(sample, name, tags, failure);
+        }
+    }
+
+    /**
+     * Function to start timing an operation which cannot be expressed as {@link AdmissionController.Task}
+     * @return The running sample, to be passed to {@link #stop(Timer.Sample, String, Tags, Throwable)}
+     */
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    /**
+     * Function to stop timing an operation
+     * @param sample The sample returned by {@link #start()}
+     * @param name Name of the timer
+     * @param tags Tags of the timer
+     * @param failure The exception which terminated the operation, or null
+     */
+    public void stop(Timer.Sample sample, String name, Tags tags, Throwable failure) {
+        String exception = failure == null ? NO_EXCEPTION : failure.getClass().getSimpleName();
+        sample.stop(timers.computeIfAbsent(Arrays.asList(name, tags, exception), key -> Timer.builder(name)
+                .tags(tags.and("exception", exception))
+                .publishPercentileHistogram()
+                .register(registry)));
+    }
+
+    /**
+     * Function to record the size of a query result
+     * @param operation Value of the "operation" tag
+     * @param bytes Size of the result
+     */
+    public void recordResultSize(String operation, long bytes) {
+        resultSizes.computeIfAbsent(operation, key -> DistributionSummary.builder("paris.queries.result.size")
+                .tag("operation", operation)
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(registry))
+                .record(bytes);
+    }
+
+    /**
+     * Function to record the outcome of an index refresh
+     * @param mode The refresh mode which was used
+     * @param participants Number of participants which are indexed after the refresh
+     */
+    public void recordIndexRefresh(IndexRefreshMode mode, int participants) {
+        registry.counter("paris.index.refreshes", "mode", mode.name()).increment();
+        DistributionSummary.builder("paris.index.refresh.participants")
+                .register(registry)
+                .record(participants);
+    }
+
+    /**
+     * Function to record the number of items, e.g. participants, which were processed by a maintenance run
+     * @param job Value of the "job" tag
+     * @param items Number of processed items
+     */
+    public void recordMaintenanceItems(String job, int items) {
+        DistributionSummary.builder("paris.maintenance.items")
+                .tag("job", job)
+                .register(registry)
+                .record(items);
+    }
+
+    /**
+     * Function to count a maintenance run which was skipped or postponed
+     * @param job Value of the "job" tag
+     * @param reason Value of the "reason" tag, e.g. "load" or "not_due"
+     */
+    public void recordMaintenanceSkipped(String job, String reason) {
+        registry.counter("paris.maintenance.skipped", "job", job, "reason", reason).increment();
+    }
+
+    /**
+     * Function to publish gauges of the caches and of the admission control of a persistence layer.
+     * The gauges read the caches through the persistence layer, so they remain valid if a cache is replaced later on
+     * @param persistence The persistence layer to be observed
+     */
+    public void bindPersistence(ParticipantPersistenceAndIndexing persistence) {
+        bindCache(persistence, "participant",
+                p -> p.getParticipantCache().getHits(), p -> p.getParticipantCache().getMisses(), p -> p.getParticipantCache().getTotalWeight());
+        bindCache(persistence, "query",
+                p -> p.getQueryResultCache().getHits(), p -> p.getQueryResultCache().getMisses(), p -> p.getQueryResultCache().getTotalBytes());
+        bindCache(persistence, "graphStatus",
+                p -> p.getGraphStatusCache().getHits(), p -> p.getGraphStatusCache().getMisses(), p -> p.getGraphStatusCache().size());
+        FunctionCounter.builder("paris.cache.evictions", persistence, p -> p.getParticipantCache().getEvictions())
+                .tag("cache", "participant").register(registry);
+        FunctionCounter.builder("paris.cache.evictions", persistence, p -> p.getQueryResultCache().getEvictions())
+                .tag("cache", "query").register(registry);
+
+        Gauge.builder("paris.admission.queries.active", persistence, p -> p.getAdmissionController().getActiveQueries())
+                .description("Queries which are currently evaluated or waiting")
+                .register(registry);
+        FunctionCounter.builder("paris.admission.rejected", persistence, p -> p.getAdmissionController().getRejectedQueries())
+                .tag("kind", "query").register(registry);
+        FunctionCounter.builder("paris.admission.rejected", persistence, p -> p.getAdmissionController().getRejectedRegistrations())
+                .tag("kind", "registration").register(registry);
+        FunctionCounter.builder("paris.admission.timeouts", persistence, p -> p.getAdmissionController().getTimedOutQueries())
+                .register(registry);
+        FunctionCounter.builder("paris.announcements.unchanged", persistence, ParticipantPersistenceAndIndexing::getUnchangedAnnouncements)
+                .description("Re-announcements which were skipped because the participant did not change")
+                .register(registry);
+    }
+
+    private void bindCache(ParticipantPersistenceAndIndexing persistence, String cache,
+                           ToDoubleFunction<ParticipantPersistenceAndIndexing> hits,
+                           ToDoubleFunction<ParticipantPersistenceAndIndexing> misses,
+                           ToDoubleFunction<ParticipantPersistenceAndIndexing> size) {
+        FunctionCounter.builder("paris.cache.hits", persistence, hits).tag("cache", cache).register(registry);
+        FunctionCounter.builder("paris.cache.misses", persistence, misses).tag("cache", cache).register(registry);
+        Gauge.builder("paris.cache.size", persistence, size).tag("cache", cache).register(registry);
+    }
+
+    /**
+     * Function to publish gauges of the connection pool to the triple store
+     * @param httpClient The HTTP client to be observed
+     */
+    public void bindConnectionPool(TripleStoreHttpClient httpClient) {
+        Gauge.builder("paris.repository.connections", httpClient, c -> c.getPoolStats().getLeased())
+                .tag("state", "leased").register(registry);
+        Gauge.builder("paris.repository.connections", httpClient, c -> c.getPoolStats().getAvailable())
+                .tag("state", "idle").register(registry);
+        Gauge.builder("paris.repository.connections.pending", httpClient, c -> c.getPoolStats().getPending())
+                .description("Requests waiting for a free connection")
+                .register(registry);
+        Gauge.builder("paris.repository.connections.max", httpClient, c -> c.getPoolStats().getMax())
+                .register(registry);
+    }
+
+    /**
+     * Function to publish gauges of the queue of the asynchronous registration mode
+     * @param handler The asynchronous registration handler to be observed
+     */
+    public void bindRegistrationQueue(AsyncParticipantStatusHandler handler) {
+        Gauge.builder("paris.registration.queue.size", handler, AsyncParticipantStatusHandler::getQueueSize)
+                .description("Participants with pending updates")
+                .register(registry);
+        Gauge.builder("paris.registration.queue.capacity", handler, AsyncParticipantStatusHandler::getCapacity)
+                .register(registry);
+    }
+}
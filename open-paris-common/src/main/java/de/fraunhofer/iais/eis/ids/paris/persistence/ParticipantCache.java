@@ -0,0 +1,203 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import de.fraunhofer.iais.eis.Participant;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of deserialized participants, keyed by participant URI.
+ * Each entry has a weight (the number of triples the participant consists of), and the least recently used entries are
+ * evicted once the total weight exceeds the configured maximum. Entries expire after a configurable time to live.
+ * Along with a participant, its JSON-LD serialization can be cached, which is dropped together with the participant.
+ * Note that cached participants are shared between callers and must not be modified
+ */
+public class ParticipantCache {
+
+    private static class Entry {
+        final Participant participant;
+        final long weight;
+        final long expiresAt;
+        volatile RenderedDocument rendered;
+
+        Entry(Participant participant, long weight, long expiresAt) {
+            this.participant = participant;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long ttlNanos;
+    private final long maxWeight;
+    private final LinkedHashMap<URI, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalWeight = 0;
+
+    //Incremented on every invalidation. Used to prevent that results of lookups which raced with an invalidation are cached
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Constructor
+     * @param ttl Time after which an entry expires
+     * @param maxWeight Maximum total weight (number of triples) of all cached participants. 0 disables the cache
+     */
+    public ParticipantCache(Duration ttl, long maxWeight) {
+        this.ttlNanos = ttl.toNanos();
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Function to look up a participant
+     * @param participantUri URI of the participant
+     * @return The cached participant, or null if it is not cached or has expired
+     */
+    public synchronized Participant get(URI participantUri) {
+        Entry entry = entries.get(participantUri);
+        if(entry == null)
+        {
+            misses.incrementAndGet();
+            return null;
+        }
+        if(System.nanoTime() - entry.expiresAt > 0)
+        {
+            remove(participantUri);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.participant;
+    }
+
+    /**
+     * Function to look up the serialization of a participant. Lookups are not counted as hits or misses, as they are followed by {@link #get(URI)} if nothing is found
+     * @param participantUri URI of the participant
+     * @return The cached serialization, or null if it is not cached or the participant has expired
+     */
+    public synchronized RenderedDocument getRendered(URI participantUri) {
+        Entry entry = entries.get(participantUri);
+        if(entry == null || System.nanoTime() - entry.expiresAt > 0)
+        {
+            return null;
+        }
+        return entry.rendered;
+    }
+
+    /**
+     * Function to add the serialization of a cached participant. It is only added if the participant is still cached,
+     * such that an outdated serialization cannot replace the one of a newer participant
+     * @param participantUri URI of the participant
+     * @param participant The participant from which the serialization was created, as returned by {@link #get(URI)}
+     * @param rendered The serialization
+     */
+    public synchronized void putRendered(URI participantUri, Participant participant, RenderedDocument rendered) {
+        Entry entry = entries.get(participantUri);
+        if(entry != null && entry.participant == participant)
+        {
+            entry.rendered = rendered;
+        }
+    }
+
+    /**
+     * Function to obtain a stamp which has to be passed to {@link #put(URI, Participant, long, long)}.
+     * It must be obtained before the participant is read from the triple store
+     * @return current stamp
+     */
+    public long stamp() {
+        return invalidations.get();
+    }
+
+    /**
+     * Function to add a participant to the cache. The participant is not cached if any invalidation happened after the stamp was obtained,
+     * as the participant might already be outdated in that case
+     * @param participantUri URI of the participant
+     * @param participant The participant
+     * @param weight Weight of the participant, i.e. the number of triples it consists of
+     * @param stamp Stamp obtained via {@link #stamp()} before the participant was read
+     */
+    public synchronized void put(URI participantUri, Participant participant, long weight, long stamp) {
+        if(weight > maxWeight || stamp != invalidations.get())
+        {
+            return;
+        }
+        remove(participantUri);
+        entries.put(participantUri, new Entry(participant, weight, System.nanoTime() + ttlNanos));
+        totalWeight += weight;
+
+        Iterator<Map.Entry<URI, Entry>> iterator = entries.entrySet().iterator();
+        while(totalWeight > maxWeight && iterator.hasNext())
+        {
+            totalWeight -= iterator.next().getValue().weight;
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Function to remove a participant from the cache, e.g. because it was updated or became unavailable
+     * @param participantUri URI of the participant
+     */
+    public synchronized void invalidate(URI participantUri) {
+        invalidations.incrementAndGet();
+        remove(participantUri);
+    }
+
+    /**
+     * Function to remove all participants from the cache
+     */
+    public synchronized void invalidateAll() {
+        invalidations.incrementAndGet();
+        entries.clear();
+        totalWeight = 0;
+    }
+
+    private void remove(URI participantUri) {
+        Entry removed = entries.remove(participantUri);
+        if(removed != null)
+        {
+            totalWeight -= removed.weight;
+        }
+    }
+
+    /**
+     * @return Number of lookups which were answered from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return Number of lookups which were not answered from the cache
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return Number of entries which were evicted because the maximum weight was exceeded
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return Share of lookups which were answered from the cache, between 0 and 1
+     */
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    /**
+     * @return Current total weight of all cached participants
+     */
+    public synchronized long getTotalWeight() {
+        return totalWeight;
+    }
+}
@@ -0,0 +1,57 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import de.fraunhofer.iais.eis.InfrastructureComponent;
+import de.fraunhofer.iais.eis.RejectionReason;
+import de.fraunhofer.iais.eis.ids.component.core.RejectMessageException;
+import de.fraunhofer.iais.eis.ids.index.common.persistence.DescriptionProvider;
+
+import java.net.URI;
+
+/**
+ * DescriptionProvider which answers DescriptionRequestMessages for participants through the persistence layer,
+ * such that they are served from the participant cache, including the cached serialization, rather than from the triple store.
+ * All other elements, such as the catalog or parts of a participant description, are looked up and serialized per request by the generic implementation.
+ * This includes the self-description, as the generic implementation embeds the current catalog up to the requested depth
+ */
+public class ParticipantDescriptionProvider extends DescriptionProvider {
+
+    private final ParticipantPersistenceAndIndexing persistence;
+    private final URI selfDescriptionUri;
+    private final URI catalogUri;
+
+    /**
+     * Constructor
+     * @param selfDescription The self-description of this ParIS
+     * @param persistence The persistence layer, which reads participants through its caches
+     * @param repositoryFacade Repository from which all other elements are obtained
+     * @param catalogUri URI of the participant catalog
+     */
+    public ParticipantDescriptionProvider(InfrastructureComponent selfDescription, ParticipantPersistenceAndIndexing persistence,
+                                          ParticipantRepositoryFacade repositoryFacade, URI catalogUri) {
+        super(selfDescription, repositoryFacade, catalogUri);
+        this.persistence = persistence;
+        this.selfDescriptionUri = selfDescription.getId();
+        this.catalogUri = catalogUri;
+    }
+
+    @Override
+    public String getElementAsJsonLd(URI requestedElement, int depth) throws RejectMessageException {
+        if(requestedElement == null || requestedElement.equals(selfDescriptionUri) || requestedElement.equals(catalogUri))
+        {
+            return super.getElementAsJsonLd(requestedElement, depth);
+        }
+        try {
+            //A participant is stored with its complete description, so the depth does not limit the result
+            return persistence.requestRenderedParticipant(requestedElement).getText();
+        }
+        catch (RejectMessageException e)
+        {
+            if(e.getRejectionReason() != RejectionReason.NOT_FOUND)
+            {
+                throw e;
+            }
+            //Not an active participant, but possibly an element of a participant description
+            return super.getElementAsJsonLd(requestedElement, depth);
+        }
+    }
+}
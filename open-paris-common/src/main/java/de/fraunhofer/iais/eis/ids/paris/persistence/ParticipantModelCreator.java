@@ -1,16 +1,59 @@
 package de.fraunhofer.iais.eis.ids.paris.persistence;
 
 
+import com.github.jsonldjava.core.JsonLdApi;
+import com.github.jsonldjava.core.JsonLdError;
+import com.github.jsonldjava.core.JsonLdProcessor;
+import com.github.jsonldjava.core.RDFDataset;
+import com.github.jsonldjava.utils.JsonUtils;
+import de.fraunhofer.iais.eis.RejectionReason;
+import de.fraunhofer.iais.eis.ids.component.core.RejectMessageException;
 import de.fraunhofer.iais.eis.ids.index.common.persistence.INFOMODEL;
 import de.fraunhofer.iais.eis.ids.index.common.persistence.ModelCreator;
-import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.datatypes.TypeMapper;
+import org.apache.jena.rdf.model.*;
 import org.apache.jena.vocabulary.RDF;
 
+import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+
 /**
- * This class is an extension to the ModelCreator class, providing functionality to determine whether an RDF triple defines a Participant
+ * This class is an extension to the ModelCreator class, providing functionality to determine whether an RDF triple defines a Participant.
+ * If a cached JSON-LD context is set, self-descriptions are parsed against the pre-compiled context instead of fetching and processing
+ * the context document for every message
  */
 public class ParticipantModelCreator extends ModelCreator {
 
+    /**
+     * Result of parsing a participant self-description
+     */
+    public static class ParticipantModel {
+        private final Model model;
+        private final URI namedGraph;
+
+        ParticipantModel(Model model, URI namedGraph) {
+            this.model = model;
+            this.namedGraph = namedGraph;
+        }
+
+        /**
+         * @return All statements of the self-description
+         */
+        public Model getModel() {
+            return model;
+        }
+
+        /**
+         * @return Name of the graph in which the participant is stored, i.e. the URI of the participant
+         */
+        public URI getNamedGraph() {
+            return namedGraph;
+        }
+    }
+
+    private volatile JsonLdContextCache contextCache;
+
     /**
      * This function determines whether a statement defines a Participant
      * @param statement The statement to be tested
@@ -22,4 +65,109 @@ public class ParticipantModelCreator extends ModelCreator {
                 (statement.getObject().equals(INFOMODEL.PARTICIPANT));
     }
 
+    /**
+     * Sets the cached context which is used to parse self-descriptions
+     * @param contextCache compiled context, or null to process the context document per message
+     */
+    public void setContextCache(JsonLdContextCache contextCache) {
+        this.contextCache = contextCache;
+    }
+
+    /**
+     * Function to parse a participant self-description into an RDF model
+     * @param selfDescriptionJsonLD The self-description in JSON-LD
+     * @return The parsed model and the name of the graph it belongs to
+     * @throws IOException thrown, if the self-description could not be parsed
+     * @throws RejectMessageException thrown, if the self-description does not describe a participant
+     */
+    public ParticipantModel toParticipantModel(String selfDescriptionJsonLD) throws IOException, RejectMessageException {
+        JsonLdContextCache cache = contextCache;
+        if(cache == null)
+        {
+            InnerModel result = toModel(selfDescriptionJsonLD);
+            return new ParticipantModel(result.getModel(), URI.create(result.getNamedGraph().toString()));
+        }
+
+        Model model = parse(selfDescriptionJsonLD, cache);
+        for (StmtIterator iterator = model.listStatements(); iterator.hasNext(); ) {
+            Statement statement = iterator.next();
+            if(statement.getSubject().isURIResource() && subjectIsInstanceInnerModel(statement))
+            {
+                return new ParticipantModel(model, URI.create(statement.getSubject().getURI()));
+            }
+        }
+        throw new RejectMessageException(RejectionReason.MALFORMED_MESSAGE, new NullPointerException("The self-description does not contain a participant."));
+    }
+
+    /**
+     * Internal function which expands a JSON-LD document against the compiled context and converts it to a Jena model
+     */
+    @SuppressWarnings("unchecked")
+    private Model parse(String selfDescriptionJsonLD, JsonLdContextCache cache) throws IOException {
+        try {
+            Object document = JsonUtils.fromString(selfDescriptionJsonLD);
+            if(document instanceof Map)
+            {
+                removeCachedContext((Map<String, Object>) document, cache.getUrl());
+            }
+            Object expanded = new JsonLdApi(cache.getOptions()).expand(cache.getCompiledContext(), document);
+            RDFDataset dataset = (RDFDataset) JsonLdProcessor.toRDF(expanded == null ? new ArrayList<>() : expanded, cache.getOptions());
+
+            Model model = ModelFactory.createDefaultModel();
+            Map<String, Resource> blankNodes = new HashMap<>();
+            List<RDFDataset.Quad> quads = dataset.getQuads("@default");
+            if(quads != null)
+            {
+                for (RDFDataset.Quad quad : quads) {
+                    model.add(toResource(model, quad.getSubject(), blankNodes),
+                            model.createProperty(quad.getPredicate().getValue()),
+                            toRDFNode(model, quad.getObject(), blankNodes));
+                }
+            }
+            return model;
+        }
+        catch (JsonLdError e)
+        {
+            throw new IOException("Could not parse self-description.", e);
+        }
+    }
+
+    /**
+     * The compiled context is already active, so a reference to its URL does not need to be processed again.
+     * Any other context of the document is processed on top of the compiled context
+     */
+    private void removeCachedContext(Map<String, Object> document, String contextUrl) {
+        Object context = document.get("@context");
+        if(contextUrl.equals(context))
+        {
+            document.remove("@context");
+        }
+        else if(context instanceof List)
+        {
+            List<Object> contexts = new ArrayList<>((List<?>) context);
+            contexts.remove(contextUrl);
+            document.put("@context", contexts);
+        }
+    }
+
+    private Resource toResource(Model model, RDFDataset.Node node, Map<String, Resource> blankNodes) {
+        if(node.isBlankNode())
+        {
+            return blankNodes.computeIfAbsent(node.getValue(), label -> model.createResource());
+        }
+        return model.createResource(node.getValue());
+    }
+
+    private RDFNode toRDFNode(Model model, RDFDataset.Node node, Map<String, Resource> blankNodes) {
+        if(!node.isLiteral())
+        {
+            return toResource(model, node, blankNodes);
+        }
+        String language = node.getLanguage();
+        if(language != null && !language.isEmpty())
+        {
+            return model.createLiteral(node.getValue(), language);
+        }
+        return model.createTypedLiteral(node.getValue(), TypeMapper.getInstance().getSafeTypeByName(node.getDatatype()));
+    }
 }
@@ -3,130 +3,1166 @@ package de.fraunhofer.iais.eis.ids.paris.persistence;
 import de.fraunhofer.iais.eis.Participant;
 import de.fraunhofer.iais.eis.RejectionReason;
 import de.fraunhofer.iais.eis.ids.component.core.RejectMessageException;
+import de.fraunhofer.iais.eis.ids.jsonld.Serializer;
 import de.fraunhofer.iais.eis.ids.index.common.persistence.*;
 import de.fraunhofer.iais.eis.ids.index.common.persistence.spi.Indexing;
-import org.apache.jena.query.ParameterizedSparqlString;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.apache.jena.query.*;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdfconnection.RDFConnection;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
 import org.apache.jena.sparql.ARQException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.OutputStream;
 import java.net.ConnectException;
 import java.net.URI;
-import java.net.URISyntaxException;
-import java.util.Date;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This class takes care of persisting and indexing any changes to participants that are announced to the ParIS
  */
 public class ParticipantPersistenceAndIndexing extends ParticipantPersistenceAdapter implements ParticipantQueryHandler {
-    private final RepositoryFacade repositoryFacade;
+    private final ParticipantRepositoryFacade repositoryFacade;
     private Indexing indexing = new NullIndexing();
     private final ParticipantModelCreator participantModelCreator = new ParticipantModelCreator();
+    private final GraphStatusCache graphStatusCache;
+
+    //Serializes all modifications of the same participant, while modifications of different participants can run in parallel
+    private final StripedLock participantLocks = new StripedLock(64);
+    private ParticipantCache participantCache = new ParticipantCache(Duration.ofMinutes(5), 100000);
+    private QueryResultCache queryResultCache = new QueryResultCache(64 * 1024 * 1024, 1024 * 1024);
     private final Logger logger = LoggerFactory.getLogger(ParticipantPersistenceAndIndexing.class);
 
+    private static final String INDEX_NAME = "registrations";
+    //Time a streamed query result may take to be completed after it was cut off by the time limit
+    private static final Duration STREAMING_GRACE_PERIOD = Duration.ofSeconds(5);
+    private IndexRefreshMode indexRefreshMode = IndexRefreshMode.FULL;
+    private int indexRefreshParallelism = 4;
+    private int bulkBatchSize = 500;
+    private QueryLimits queryLimits = new QueryLimits(10000, 10 * 1024 * 1024, Duration.ofSeconds(60));
+    private QueryCostEstimator queryCostEstimator = new QueryCostEstimator(1000000);
+    private AdmissionController admissionController = new AdmissionController(8, 32, 8, Duration.ofSeconds(10));
+    private ParisMetrics metrics = new ParisMetrics(Metrics.globalRegistry);
+
+    private final Serializer serializer = new Serializer();
+
+    //Serializes index refreshes, which may be triggered by the maintenance scheduler and by a resynchronization with other replicas
+    private final Lock refreshLock = new ReentrantLock();
+    private volatile boolean indexRefreshed = false;
+
+    //Set if modifications are logged for incremental synchronization
+    private ChangeLog changeLog;
+
+    //Set if several replicas share the triple store
+    private ReplicaCoordinator replicaCoordinator;
+    //true, if each replica has an index of its own, which therefore has to follow the changes made by other replicas
+    private boolean indexPerReplica = false;
+
+    //Digests of the graphs which were written to the index during the last refresh, keyed by graph name, see ParticipantRepositoryFacade.digest.
+    //Used by the incremental refresh mode to detect which participants changed
+    private final Map<String, String> indexedFingerprints = new ConcurrentHashMap<>();
+    //Fingerprint of an indexed participant whose current content is unknown. It matches no digest, so the participant is indexed again by the next refresh.
+    //Graphs with blank nodes have no digest, so they are indexed again by every refresh as well
+    private static final String STALE_FINGERPRINT = ParticipantRepositoryFacade.NO_DIGEST;
+
+    //Counts completed modifications of participants. A modification takes the next value while still holding the lock of the participant
+    private final AtomicLong modificationCounter = new AtomicLong();
+    //Counter value of the last modification of each graph which was modified since the running refresh started.
+    //A refresh must not write a participant to the index if it was modified after the refresh read it from the triple store
+    private final Map<String, Long> graphVersions = new ConcurrentHashMap<>();
+
+    //Re-announcements which were skipped because the participant did not change
+    private final AtomicLong unchangedAnnouncements = new AtomicLong();
+
     //TODO: Use this to rewrite URIs
     private final URI componentCatalogUri;
 
     /**
-     * Constructor
-     * @param repositoryFacade repository (triple store) to which the modifications should be stored
+     * Constructor
+     * @param repositoryFacade repository (triple store) to which the modifications should be stored
+     */
+    public ParticipantPersistenceAndIndexing(ParticipantRepositoryFacade repositoryFacade, URI componentCatalogUri) {
+        this.repositoryFacade = repositoryFacade;
+        this.componentCatalogUri = componentCatalogUri;
+        this.graphStatusCache = new GraphStatusCache(repositoryFacade);
+    }
+
+    /**
+     * Function to schedule the regular index refresh, which keeps index and triple store in sync
+     * @param scheduler scheduler which runs the refresh
+     * @param schedule timing of the refresh
+     */
+    public void scheduleIndexRefresh(MaintenanceScheduler scheduler, MaintenanceScheduler.Schedule schedule) {
+        scheduler.schedule("index-refresh", schedule, this::isIndexRefreshDue, this::refreshIndexOrFail);
+    }
+
+    /**
+     * Internal function to determine whether this instance is responsible for refreshing the index.
+     * A shared index is only refreshed by the leader. A replica with an index of its own builds it once, and afterwards follows the changes of the leader
+     * @return true, if this instance should refresh the index now
+     */
+    private boolean isIndexRefreshDue() {
+        return replicaCoordinator == null || replicaCoordinator.isLeader() || (indexPerReplica && !indexRefreshed);
+    }
+
+    /**
+     * Setter for the indexing method
+     * @param indexing indexing to be used
+     */
+    public void setIndexing(Indexing indexing) {
+        this.indexing = indexing;
+    }
+
+    /**
+     * @return The indexing which is currently used
+     */
+    public Indexing getIndexing() {
+        return indexing;
+    }
+
+    /**
+     * Getter for the cache of graph existence and passivation states, e.g. to inspect its hit rate
+     * @return the graph status cache used by this instance
+     */
+    public GraphStatusCache getGraphStatusCache() {
+        return graphStatusCache;
+    }
+
+    /**
+     * Setter for the cache of deserialized participants which is used by requestParticipant
+     * @param participantCache participant cache to be used
+     */
+    public void setParticipantCache(ParticipantCache participantCache) {
+        this.participantCache = participantCache;
+    }
+
+    /**
+     * Getter for the cache of deserialized participants, e.g. to inspect its hit rate
+     * @return the participant cache used by this instance
+     */
+    public ParticipantCache getParticipantCache() {
+        return participantCache;
+    }
+
+    /**
+     * Setter for the context document URL. Typically extracted from the application.properties
+     * @param contextDocumentUrl the context document URL to be used
+     */
+    public void setContextDocumentUrl(String contextDocumentUrl) {
+        participantModelCreator.setContextFetchStrategy(JsonLdContextFetchStrategy.FROM_URL, contextDocumentUrl);
+    }
+
+    /**
+     * Setter for the pre-compiled context document. If set, incoming self-descriptions are parsed against it, and the context document is not fetched per message
+     * @param contextCache the compiled context document, or null
+     */
+    public void setContextCache(JsonLdContextCache contextCache) {
+        participantModelCreator.setContextCache(contextCache);
+    }
+
+    /**
+     * Setter for the strategy which is used to refresh the index
+     * @param indexRefreshMode refresh mode to be used
+     */
+    public void setIndexRefreshMode(IndexRefreshMode indexRefreshMode) {
+        this.indexRefreshMode = indexRefreshMode;
+    }
+
+    /**
+     * Setter for the maximum number of participants which are fetched from the triple store concurrently during an index refresh
+     * @param indexRefreshParallelism maximum number of concurrent fetches
+     */
+    public void setIndexRefreshParallelism(int indexRefreshParallelism) {
+        this.indexRefreshParallelism = Math.max(1, indexRefreshParallelism);
+    }
+
+    /**
+     * Setter for the maximum number of participants which are written to the triple store in a single SPARQL Update request by updatedAll
+     * @param bulkBatchSize maximum number of participants per batch
+     */
+    public void setBulkBatchSize(int bulkBatchSize) {
+        this.bulkBatchSize = Math.max(1, bulkBatchSize);
+    }
+
+    /**
+     * Setter for the query result cache. Should be called before the first query is evaluated
+     * @param queryResultCache query result cache to be used
+     */
+    public void setQueryResultCache(QueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+    }
+
+    /**
+     * @return The query result cache, e.g. to read its statistics
+     */
+    public QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    /**
+     * Setter for the server-side limits which are enforced for participant queries.
+     * The timeout is set on each query execution, or, for queries which are evaluated by the RepositoryFacade, on its HTTP requests.
+     * Queries against the in-memory store of the RepositoryFacade are not cancelled, only abandoned after the timeout
+     * @param queryLimits limits to be enforced
+     */
+    public void setQueryLimits(QueryLimits queryLimits) {
+        this.queryLimits = queryLimits;
+    }
+
+    /**
+     * Setter for the estimator which rejects obviously unbounded queries before they are evaluated
+     * @param queryCostEstimator cost estimator to be used
+     */
+    public void setQueryCostEstimator(QueryCostEstimator queryCostEstimator) {
+        this.queryCostEstimator = queryCostEstimator;
+    }
+
+    /**
+     * Setter for the admission controller, which bounds the number of concurrent queries and registrations
+     * @param admissionController admission controller to be used
+     */
+    public void setAdmissionController(AdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
+    /**
+     * @return The admission controller, e.g. to read its statistics
+     */
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    /**
+     * Setter for the metrics to which triple store, index and query timings are reported. Also publishes the cache and admission gauges of this instance
+     * @param metrics metrics to be used
+     */
+    public void setMetrics(ParisMetrics metrics) {
+        this.metrics = metrics;
+        metrics.bindPersistence(this);
+    }
+
+    /**
+     * Setter for the coordinator which is used if several replicas share the triple store.
+     * Modifications are announced to the other replicas through the change log of the coordinator,
+     * and modifications of the other replicas invalidate the caches of this instance
+     * @param replicaCoordinator coordinator to be used
+     * @param indexPerReplica true, if the index is local to this replica (e.g. Lucene), false if it is shared by all replicas
+     */
+    public void setReplicaCoordinator(ReplicaCoordinator replicaCoordinator, boolean indexPerReplica) {
+        this.replicaCoordinator = replicaCoordinator;
+        this.indexPerReplica = indexPerReplica;
+        replicaCoordinator.start(new ReplicaCoordinator.ChangeListener() {
+            @Override
+            public void changed(String graph) {
+                applyRemoteChange(graph);
+                //Wakes up consumers of the change log which wait on this replica
+                replicaCoordinator.getChangeLog().signal();
+            }
+
+            @Override
+            public void resynchronize() {
+                participantCache.invalidateAll();
+                queryResultCache.invalidateAll();
+                if(!indexPerReplica && !replicaCoordinator.isLeader())
+                {
+                    //The shared index is refreshed by the leader, so only the state of this replica is reloaded
+                    try {
+                        graphStatusCache.reconcile();
+                    }
+                    catch (IOException | RejectMessageException e)
+                    {
+                        //Entries are corrected by subsequent writes and the next resynchronization
+                        logger.warn("Failed to reconcile graph status cache.", e);
+                    }
+                    return;
+                }
+                //The refresh also reconciles the graph status cache with the triple store
+                refreshIndex();
+            }
+        });
+    }
+
+    /**
+     * Setter for the change log, to which all modifications of participants are appended, and which is offered to consumers.
+     * If replicas are coordinated, this must be the change log of the coordinator, as there is only one log per triple store
+     * @param changeLog change log to be used
+     */
+    public void setChangeLog(ChangeLog changeLog) {
+        this.changeLog = changeLog;
+    }
+
+    /**
+     * Getter for the change log
+     * @return the change log, or null if it is not offered to consumers
+     */
+    public ChangeLog getChangeLog() {
+        return changeLog;
+    }
+
+    /**
+     * Internal function which appends modifications to the change log, through which they are also announced to the other replicas, if any.
+     * As the modification itself has succeeded, failures are not passed on. The change log instead marks a gap, upon which all consumers resynchronize
+     * @param graphs Names of the modified graphs
+     * @param type Kind of the modification
+     */
+    private void publishChanges(Collection<String> graphs, ChangeLog.ChangeType type) {
+        ChangeLog log = changeLog != null ? changeLog : replicaCoordinator != null ? replicaCoordinator.getChangeLog() : null;
+        if(log == null)
+        {
+            return;
+        }
+        try {
+            metrics.time(ParisMetrics.REPOSITORY, "recordChanges", () -> {
+                log.record(graphs, type);
+                return null;
+            });
+        }
+        catch (IOException | RejectMessageException | RuntimeException e)
+        {
+            logger.error("Failed to append modification of " + graphs.size() + " participants to the change log. Consumers and other replicas will be asked to resynchronize.", e);
+        }
+    }
+
+    /**
+     * Internal function which brings the caches, and a local index, up to date with a modification made by another replica
+     * @param graph Name of the modified graph
+     */
+    private void applyRemoteChange(String graph) {
+        Lock lock = participantLocks.get(graph);
+        lock.lock();
+        try {
+            URI participantUri = URI.create(graph);
+            graphStatusCache.invalidate(graph);
+            participantCache.invalidate(participantUri);
+            queryResultCache.invalidateAll();
+            if(!indexPerReplica)
+            {
+                return;
+            }
+            if(graphStatusCache.getStatus(graph) == GraphStatusCache.GraphStatus.ACTIVE)
+            {
+                Participant participant = metrics.time(ParisMetrics.REPOSITORY, "getParticipant", () -> readParticipant(participantUri));
+                updateIndex(participant);
+                //The digest of the graph is only known to the triple store
+                indexedFingerprints.put(graph, STALE_FINGERPRINT);
+            }
+            else
+            {
+                deleteFromIndex(participantUri);
+                indexedFingerprints.remove(graph);
+            }
+        }
+        catch (IOException | RejectMessageException e)
+        {
+            //The index is corrected by the next refresh
+            logger.warn("Failed to apply modification of " + graph + " by another replica to the index.", e);
+        }
+        finally {
+            modified(graph);
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Function to refresh the index. All active participants are fetched from the triple store first, so that the index
+     * is not touched until the new content is complete. In FULL mode, the index content is then replaced as a whole.
+     * In INCREMENTAL mode, the triple store computes a digest of every graph, and only participants whose digest changed
+     * since the last refresh are fetched and written.
+     * This keeps the index and triple store in sync, while respecting the triple store as single source of truth
+     */
+    public void refreshIndex() {
+        try {
+            refreshIndexOrFail();
+        }
+        catch (ConnectException e) //Prevent startup error
+        {
+            logger.warn("Failed to refresh index, as the triple store could not be reached.");
+        }
+        catch (IOException | RejectMessageException e)
+        {
+            logger.error("Failed to refresh index: ", e);
+        }
+    }
+
+    /**
+     * Function to refresh the index, see {@link #refreshIndex()}. Concurrent calls are serialized
+     * @return Number of participants which are indexed after the refresh
+     * @throws IOException thrown, if the triple store or the index could not be reached
+     * @throws RejectMessageException thrown, if an internal error occurred while updating the index
+     */
+    public int refreshIndexOrFail() throws IOException, RejectMessageException {
+        Timer.Sample sample = metrics.start();
+        Throwable failure = null;
+        refreshLock.lock();
+        try {
+            //Loads the graph status cache on startup and corrects any drift on subsequent runs
+            graphStatusCache.reconcile();
+            //The triple store might have been modified by other means than this ParIS
+            queryResultCache.invalidateAll();
+
+            //Modifications which complete after this point may be overwritten with the content read by this refresh
+            long version = modificationCounter.get();
+            logger.info("Refreshing index.");
+            int indexed;
+            if(indexRefreshMode == IndexRefreshMode.INCREMENTAL && !indexedFingerprints.isEmpty())
+            {
+                indexed = refreshIndexIncrementally(version);
+            }
+            else
+            {
+                indexed = replaceIndexContent(version);
+            }
+            //Later refreshes start with a higher counter value, so older modifications are of no interest to them
+            graphVersions.values().removeIf(modification -> modification <= version);
+            metrics.recordIndexRefresh(indexRefreshMode, indexed);
+            indexRefreshed = true;
+            logger.info("Index refreshed. " + indexed + " participants are indexed.");
+            return indexed;
+        }
+        catch (IOException | RejectMessageException | RuntimeException e)
+        {
+            failure = e;
+            throw e;
+        }
+        finally {
+            refreshLock.unlock();
+            metrics.stop(sample, ParisMetrics.INDEX, Tags.of("operation", "refresh"), failure);
+        }
+    }
+
+    /**
+     * Function to write a snapshot of all active participants, e.g. to bootstrap another ParIS node, see {@link ParticipantSnapshot}
+     * @param out Stream to which the snapshot is written. It is not closed
+     * @return The manifest of the snapshot
+     * @throws IOException thrown, if the snapshot could not be written or the triple store could not be reached
+     * @throws RejectMessageException thrown, if the active graphs could not be determined
+     */
+    public ParticipantSnapshot.Manifest writeSnapshot(OutputStream out) throws IOException, RejectMessageException {
+        if(!repositoryFacade.supportsDirectAccess())
+        {
+            throw new RejectMessageException(RejectionReason.INTERNAL_RECIPIENT_ERROR, new UnsupportedOperationException("Snapshots require a SPARQL endpoint or the embedded triple store."));
+        }
+        return metrics.time(ParisMetrics.REPOSITORY, "writeSnapshot",
+                () -> new ParticipantSnapshot(repositoryFacade).write(out, bulkBatchSize, indexRefreshParallelism));
+    }
+
+    /**
+     * Function to load a snapshot into the triple store and the index. Batches of bulkBatchSize participants are stored with one SPARQL Update each,
+     * up to indexRefreshParallelism batches concurrently. Participants which are already known are replaced.
+     * Intended for bootstrapping a new node, so concurrent registrations of the same participants are not coordinated
+     * @param file The snapshot
+     * @return The manifest of the snapshot
+     * @throws IOException thrown, if the snapshot could not be read or is corrupt, or if the triple store or index could not be reached
+     * @throws RejectMessageException thrown, if an internal error occurred
+     */
+    public ParticipantSnapshot.Manifest loadSnapshot(Path file) throws IOException, RejectMessageException {
+        if(!repositoryFacade.supportsDirectAccess())
+        {
+            throw new RejectMessageException(RejectionReason.INTERNAL_RECIPIENT_ERROR, new UnsupportedOperationException("Snapshots require a SPARQL endpoint or the embedded triple store."));
+        }
+        //A concurrent refresh could replace the index content with a partial view of the loaded participants
+        refreshLock.lock();
+        try {
+            ParticipantSnapshot.Manifest manifest = metrics.time(ParisMetrics.REPOSITORY, "loadSnapshot",
+                    () -> new ParticipantSnapshot(repositoryFacade).read(file, bulkBatchSize, indexRefreshParallelism, this::loadSnapshotBatch));
+            indexRefreshed = true;
+            return manifest;
+        }
+        finally {
+            queryResultCache.invalidateAll();
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Function to determine whether any participants are registered, e.g. to decide whether a new node has to be bootstrapped
+     * @return true, if the triple store contains at least one active participant
+     * @throws IOException thrown, if the triple store could not be reached
+     * @throws RejectMessageException thrown, if the active graphs could not be determined
+     */
+    public boolean hasParticipants() throws IOException, RejectMessageException {
+        return metrics.time(ParisMetrics.REPOSITORY, "getActiveGraphs", repositoryFacade::getActiveGraphs).iterator().hasNext();
+    }
+
+    /**
+     * Internal function which stores and indexes one batch of a snapshot
+     * @param graphs Map from graph name to the content of the graph
+     * @throws IOException thrown, if the triple store or the index could not be reached
+     * @throws RejectMessageException thrown, if an internal error occurred
+     */
+    private void loadSnapshotBatch(Map<String, Model> graphs) throws IOException, RejectMessageException {
+        metrics.time(ParisMetrics.REPOSITORY, "replaceGraphs", () -> {
+            repositoryFacade.replaceGraphs(graphs);
+            return null;
+        });
+        List<Participant> participants = new ArrayList<>(graphs.size());
+        for (Map.Entry<String, Model> graph : graphs.entrySet()) {
+            Participant participant = toParticipant(graph.getKey(), graph.getValue());
+            graphStatusCache.markActive(graph.getKey());
+            participantCache.invalidate(participant.getId());
+            indexedFingerprints.put(graph.getKey(), ParticipantRepositoryFacade.digest(graph.getValue()));
+            participants.add(participant);
+        }
+        addAllToIndex(participants);
+        publishChanges(graphs.keySet(), ChangeLog.ChangeType.UPDATED);
+    }
+
+    /**
+     * Internal function which converts the content of a participant graph into a participant, without a request to the triple store
+     * @param graph Name of the graph
+     * @param model Content of the graph
+     * @return The participant
+     * @throws IOException thrown, if the participant had to be fetched from the triple store, which could not be reached
+     * @throws RejectMessageException thrown, if the participant could not be fetched from the triple store
+     */
+    private Participant toParticipant(String graph, Model model) throws IOException, RejectMessageException {
+        try {
+            StringWriter jsonLd = new StringWriter();
+            RDFDataMgr.write(jsonLd, model, Lang.JSONLD);
+            return serializer.deserialize(jsonLd.toString(), Participant.class);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            //The graph was just stored, so the regular lookup works in any case
+            logger.debug("Failed to convert graph " + graph + " locally. Fetching it from the triple store.", e);
+            return metrics.time(ParisMetrics.REPOSITORY, "getParticipant", () -> readParticipant(URI.create(graph)));
+        }
+    }
+
+    /**
+     * Internal function which determines the names of all active, i.e. non-passivated and non-deleted, graphs
+     * @return Names of the active graphs
+     * @throws IOException thrown, if the triple store could not be reached
+     * @throws RejectMessageException thrown, if the active graphs could not be determined
+     */
+    private List<String> fetchActiveGraphs() throws IOException, RejectMessageException {
+        List<String> graphs = new ArrayList<>();
+        for (String graph : metrics.time(ParisMetrics.REPOSITORY, "getActiveGraphs", repositoryFacade::getActiveGraphs)) {
+            graphs.add(graph);
+        }
+        return graphs;
+    }
+
+    /**
+     * Internal function which computes the digest of every active graph in the triple store, see {@link ParticipantRepositoryFacade#graphDigests()}.
+     * The digests must be read before the participants, so that a modification in between makes the recorded digest outdated rather than the index content
+     * @return Map from graph name to digest, containing all active graphs
+     * @throws IOException thrown, if the triple store could not be reached
+     * @throws RejectMessageException thrown, if the active graphs could not be determined
+     */
+    private Map<String, String> fetchActiveGraphDigests() throws IOException, RejectMessageException {
+        Map<String, String> digests = metrics.time(ParisMetrics.REPOSITORY, "graphDigests", repositoryFacade::graphDigests);
+        Map<String, String> activeDigests = new LinkedHashMap<>();
+        for (String graph : fetchActiveGraphs()) {
+            //The graph was created after the digests were computed
+            activeDigests.put(graph, digests.getOrDefault(graph, STALE_FINGERPRINT));
+        }
+        return activeDigests;
+    }
+
+    /**
+     * Internal function which fetches participants from the triple store. Up to indexRefreshParallelism participants are fetched concurrently.
+     * Participants which cannot be fetched, e.g. because they were passivated in the meantime, are skipped
+     * @param graphs Names of the graphs of the participants
+     * @return Map from graph name to participant
+     * @throws IOException thrown, if the triple store could not be reached
+     */
+    private Map<String, Participant> fetchParticipants(Collection<String> graphs) throws IOException {
+        Map<String, Participant> participants = new LinkedHashMap<>();
+        if(graphs.isEmpty())
+        {
+            return participants;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(indexRefreshParallelism, graphs.size()));
+        try {
+            Map<String, Future<Participant>> pending = new LinkedHashMap<>();
+            for (String graph : graphs) {
+                pending.put(graph, executor.submit(() -> metrics.time(ParisMetrics.REPOSITORY, "getParticipant",
+                        () -> readParticipant(URI.create(graph)))));
+            }
+            for (Map.Entry<String, Future<Participant>> entry : pending.entrySet()) {
+                try {
+                    participants.put(entry.getKey(), entry.getValue().get());
+                }
+                catch (ExecutionException e)
+                {
+                    //Connection problems abort the refresh, so that the current index content is kept
+                    if(e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    //The participant might have been passivated in the meantime
+                    logger.warn("Failed to fetch participant " + entry.getKey() + " from triple store. Skipping it.", e.getCause());
+                }
+            }
+            return participants;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching participants from triple store.", e);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Internal function which writes only the differences between the last refresh and the current triple store content to the index.
+     * If the triple store is accessed directly, only participants whose digest changed are fetched. The in-memory store cannot compute digests,
+     * so all active participants are fetched and their digests are computed locally.
+     * Each participant is written while holding its lock, and skipped if it was modified after the refresh started, as the modification already indexed a newer state
+     * @param version Value of the modification counter when the refresh started
+     * @return Number of participants which are indexed after the refresh
+     * @throws IOException thrown, if the triple store or the index could not be reached
+     * @throws RejectMessageException thrown, if an internal error occurred while updating the index
+     */
+    private int refreshIndexIncrementally(long version) throws IOException, RejectMessageException {
+        Map<String, String> digests;
+        Map<String, Participant> participants;
+        if(repositoryFacade.supportsDirectAccess())
+        {
+            digests = fetchActiveGraphDigests();
+            List<String> changedGraphs = new ArrayList<>();
+            digests.forEach((graph, digest) -> {
+                if(!isIndexed(graph, digest))
+                {
+                    changedGraphs.add(graph);
+                }
+            });
+            participants = fetchParticipants(changedGraphs);
+        }
+        else
+        {
+            participants = fetchParticipants(fetchActiveGraphs());
+            digests = new LinkedHashMap<>();
+            for (Map.Entry<String, Participant> entry : participants.entrySet()) {
+                digests.put(entry.getKey(), fingerprint(entry.getValue()));
+            }
+        }
+
+        int added = 0, changed = 0, removed = 0, skipped = 0;
+        for (Map.Entry<String, Participant> entry : participants.entrySet()) {
+            String graph = entry.getKey();
+            String digest = digests.get(graph);
+            if(isIndexed(graph, digest))
+            {
+                continue;
+            }
+            String previousDigest = indexedFingerprints.get(graph);
+            Lock lock = participantLocks.get(graph);
+            lock.lock();
+            try {
+                if(modifiedSince(graph, version))
+                {
+                    skipped++;
+                    continue;
+                }
+                if(previousDigest == null)
+                {
+                    addToIndex(entry.getValue());
+                    added++;
+                }
+                else
+                {
+                    updateIndex(entry.getValue());
+                    changed++;
+                }
+                indexedFingerprints.put(graph, digest);
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        //Participants which are no longer active must be removed from the index
+        for (String graph : new ArrayList<>(indexedFingerprints.keySet())) {
+            if(digests.containsKey(graph))
+            {
+                continue;
+            }
+            Lock lock = participantLocks.get(graph);
+            lock.lock();
+            try {
+                if(modifiedSince(graph, version))
+                {
+                    skipped++;
+                    continue;
+                }
+                deleteFromIndex(URI.create(graph));
+                indexedFingerprints.remove(graph);
+                removed++;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        logger.info("Incremental index refresh: " + added + " added, " + changed + " changed, " + removed + " removed, "
+                + skipped + " skipped due to concurrent modifications.");
+        return digests.size();
+    }
+
+    /**
+     * Internal function which replaces the entire index content with all active participants. If the indexing supports it, this happens atomically.
+     * Participants which were modified while the refresh was running may have been overwritten with outdated content,
+     * so they are indexed again afterwards from the current triple store content, while holding their lock
+     * @param version Value of the modification counter when the refresh started
+     * @return Number of participants which are indexed after the refresh
+     * @throws IOException thrown, if the triple store or the index could not be reached
+     * @throws RejectMessageException thrown, if an internal error occurred while writing to the index
+     */
+    private int replaceIndexContent(long version) throws IOException, RejectMessageException {
+        //Digests are only needed to continue incrementally
+        Map<String, String> digests = indexRefreshMode == IndexRefreshMode.INCREMENTAL && repositoryFacade.supportsDirectAccess()
+                ? fetchActiveGraphDigests() : null;
+        Map<String, Participant> participants = fetchParticipants(digests != null ? digests.keySet() : fetchActiveGraphs());
+        if(indexing instanceof BulkIndexing)
+        {
+            metrics.time(ParisMetrics.INDEX, "replaceAll", () -> {
+                ((BulkIndexing) indexing).replaceAll(INDEX_NAME, participants.values());
+                return null;
+            });
+        }
+        else
+        {
+            metrics.time(ParisMetrics.INDEX, "recreate", () -> {
+                indexing.recreateIndex(INDEX_NAME);
+                return null;
+            });
+            addAllToIndex(participants.values());
+        }
+
+        indexedFingerprints.clear();
+        if(indexRefreshMode == IndexRefreshMode.INCREMENTAL)
+        {
+            for (Map.Entry<String, Participant> entry : participants.entrySet()) {
+                indexedFingerprints.put(entry.getKey(), digests != null ? digests.get(entry.getKey()) : fingerprint(entry.getValue()));
+            }
+        }
+
+        for (Map.Entry<String, Long> modification : new ArrayList<>(graphVersions.entrySet())) {
+            if(modification.getValue() > version)
+            {
+                reindex(modification.getKey());
+            }
+        }
+        return participants.size();
+    }
+
+    /**
+     * Internal function which writes the current triple store content of a participant to the index, or removes it from the index if it is not active
+     * @param graph Name of the graph of the participant
+     * @throws IOException thrown, if the triple store or the index could not be reached
+     * @throws RejectMessageException thrown, if an internal error occurred while writing to the index
+     */
+    private void reindex(String graph) throws IOException, RejectMessageException {
+        Lock lock = participantLocks.get(graph);
+        lock.lock();
+        try {
+            URI participantUri = URI.create(graph);
+            if(graphStatusCache.getStatus(graph) == GraphStatusCache.GraphStatus.ACTIVE)
+            {
+                updateIndex(metrics.time(ParisMetrics.REPOSITORY, "getParticipant", () -> readParticipant(participantUri)));
+                if(indexRefreshMode == IndexRefreshMode.INCREMENTAL)
+                {
+                    indexedFingerprints.put(graph, STALE_FINGERPRINT);
+                }
+            }
+            else
+            {
+                deleteFromIndex(participantUri);
+                indexedFingerprints.remove(graph);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Internal function to determine whether a participant is indexed with the content described by a digest
+     * @param graph Name of the graph of the participant
+     * @param digest Current digest of the graph
+     * @return true, if the index content of the participant is known to match the digest
+     */
+    private boolean isIndexed(String graph, String digest) {
+        return !digest.equals(STALE_FINGERPRINT) && digest.equals(indexedFingerprints.get(graph));
+    }
+
+    /**
+     * Internal function to be called at the end of every modification of a participant, while still holding its lock
+     * @param graph Name of the graph of the participant
+     */
+    private void modified(String graph) {
+        graphVersions.put(graph, modificationCounter.incrementAndGet());
+    }
+
+    /**
+     * Internal function to determine whether a participant was modified after a given point in time. Must be called while holding the lock of the participant
+     * @param graph Name of the graph of the participant
+     * @param version Value of the modification counter at the point in time
+     * @return true, if a modification of the participant completed after the point in time
+     */
+    private boolean modifiedSince(String graph, long version) {
+        Long modification = graphVersions.get(graph);
+        return modification != null && modification > version;
+    }
+
+    /**
+     * Internal function which adds several participants to the index, using a bulk request if the indexing supports it
+     * @param participants The participants to be added
+     * @throws IOException thrown, if the index could not be reached
+     * @throws RejectMessageException thrown, if an internal error occurred while writing to the index
+     */
+    private void addAllToIndex(Collection<Participant> participants) throws IOException, RejectMessageException {
+        if(participants.isEmpty())
+        {
+            return;
+        }
+        if(indexing instanceof BulkIndexing)
+        {
+            metrics.time(ParisMetrics.INDEX, "addAll", () -> {
+                ((BulkIndexing) indexing).addAll(participants);
+                return null;
+            });
+            return;
+        }
+        for (Participant participant : participants) {
+            addToIndex(participant);
+        }
+    }
+
+    /**
+     * Internal function which adds a participant to the index
+     * @param participant The participant to be added
+     * @throws IOException thrown, if the index could not be reached
+     * @throws RejectMessageException thrown, if an internal error occurred while writing to the index
+     */
+    private void addToIndex(Participant participant) throws IOException, RejectMessageException {
+        metrics.time(ParisMetrics.INDEX, "add", () -> {
+            indexing.add(participant);
+            return null;
+        });
+    }
+
+    /**
+     * Internal function which removes a participant from the index
+     * @param participant URI of the participant to be removed
+     * @throws IOException thrown, if the index could not be reached
+     * @throws RejectMessageException thrown, if an internal error occurred while writing to the index
+     */
+    private void deleteFromIndex(URI participant) throws IOException, RejectMessageException {
+        metrics.time(ParisMetrics.INDEX, "delete", () -> {
+            indexing.delete(participant);
+            return null;
+        });
+    }
+
+    /**
+     * Internal function to compute the digest of the content of a participant locally, see {@link ParticipantRepositoryFacade#digest(Model)}
+     * @param participant The participant
+     * @return The digest of the graph which stores the participant
+     * @throws IOException thrown, if the participant could not be converted into a graph
+     * @throws RejectMessageException thrown, if the participant could not be converted into a graph
+     */
+    private String fingerprint(Participant participant) throws IOException, RejectMessageException {
+        return ParticipantRepositoryFacade.digest(participantModelCreator.toParticipantModel(participant.toRdf()).getModel());
+    }
+
+    /**
+     * Function to persist new participants and to index modifications to an existing participant
+     * @param participant The updated participant which was announced to the ParIS
+     * @throws IOException thrown, if the connection to the repository could not be established
+     * @throws RejectMessageException thrown, if the update is not permitted, e.g. because the participant was previously deleted, or if an internal error occurs
+     */
+    @Override
+    public void updated(Participant participant) throws IOException, RejectMessageException {
+        admissionController.register(() -> {
+            //Status check, write and index update must not interleave with other modifications of this participant
+            Lock lock = participantLocks.get(participant.getId().toString());
+            lock.lock();
+            try {
+                applyUpdate(participant);
+            }
+            finally {
+                modified(participant.getId().toString());
+                lock.unlock();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Internal function which should only be called from the updated function, while holding the lock of the participant
+     * @param participant The updated participant which was announced to the ParIS
+     * @throws IOException thrown, if the connection to the repository could not be established
+     * @throws RejectMessageException thrown, if the update is not permitted, or if an internal error occurs
+     */
+    private void applyUpdate(Participant participant) throws IOException, RejectMessageException {
+        GraphStatusCache.GraphStatus status = graphStatusCache.getStatus(participant.getId().toString());
+        boolean wasActive = status == GraphStatusCache.GraphStatus.ACTIVE;
+        if(repositoryFacade.supportsDirectAccess())
+        {
+            if(wasActive)
+            {
+                applyDelta(participant);
+                return;
+            }
+            //Stored exactly like a participant announced as part of a batch, see updatedAll
+            ParticipantModelCreator.ParticipantModel result = participantModelCreator.toParticipantModel(participant.toRdf());
+            writeGraphs(Collections.singletonMap(result.getNamedGraph().toString(), result.getModel()),
+                    status == GraphStatusCache.GraphStatus.PASSIVE ? Collections.singletonList(participant.getId().toString()) : Collections.emptyList());
+        }
+        else if(status == GraphStatusCache.GraphStatus.ABSENT)
+        {
+            addToTriplestore(participant.toRdf());
+        }
+        else
+        {
+            updateTriplestore(participant.toRdf());
+        }
+        graphStatusCache.markActive(participant.getId().toString());
+        participantCache.invalidate(participant.getId());
+        queryResultCache.invalidateAll();
+        //We need to reflect the changes in the index.
+        //If the connector was passive before, the document was deleted from the index, so we need to recreate it
+        if(wasActive) { //Connector exists in index - update it
+            updateIndex(participant);
+        }
+        else
+        { //Connector does not exist in index - create it
+            addToIndex(participant);
+        }
+        publishChanges(Collections.singletonList(participant.getId().toString()), ChangeLog.ChangeType.UPDATED);
+    }
+
+    /**
+     * Internal function which updates an active participant by writing only the statements which changed.
+     * Re-announcements without any change neither touch the triple store nor the index
+     * @param participant The updated participant which was announced to the ParIS
+     * @throws IOException thrown, if the connection to the repository could not be established
+     * @throws RejectMessageException thrown, if the participant could not be parsed, or if an internal error occurs
+     */
+    private void applyDelta(Participant participant) throws IOException, RejectMessageException {
+        ParticipantModelCreator.ParticipantModel result = participantModelCreator.toParticipantModel(participant.toRdf());
+        String graph = result.getNamedGraph().toString();
+        GraphDelta delta = GraphDelta.compute(metrics.time(ParisMetrics.REPOSITORY, "fetchGraph", () -> repositoryFacade.fetchGraph(graph)), result.getModel());
+        if(delta.isEmpty())
+        {
+            unchangedAnnouncements.incrementAndGet();
+            logger.debug("Participant " + graph + " is unchanged. Skipping update.");
+            return;
+        }
+        if(delta.isReplacementRequired())
+        {
+            metrics.time(ParisMetrics.REPOSITORY, "replaceGraphs", () -> {
+                repositoryFacade.replaceGraphs(Collections.singletonMap(graph, result.getModel()));
+                return null;
+            });
+        }
+        else
+        {
+            metrics.time(ParisMetrics.REPOSITORY, "applyDelta", () -> {
+                repositoryFacade.applyDelta(graph, delta.getRemovals(), delta.getAdditions());
+                return null;
+            });
+        }
+        graphStatusCache.markActive(graph);
+        participantCache.invalidate(participant.getId());
+        queryResultCache.invalidateAll();
+        updateIndex(participant);
+        publishChanges(Collections.singletonList(graph), ChangeLog.ChangeType.UPDATED);
+    }
+
+    /**
+     * @return Number of announcements of active participants which did not change anything and were therefore skipped
      */
-    public ParticipantPersistenceAndIndexing(RepositoryFacade repositoryFacade, URI componentCatalogUri) {
-        this.repositoryFacade = repositoryFacade;
-        this.componentCatalogUri = componentCatalogUri;
-        Date date=new Date();
-        Timer timer = new Timer();
-
-        //Regularly recreate the index to keep index and triple store in sync
-        //The triple store is considered as single source of truth, so the index is dropped and recreated from the triple store
-        timer.schedule(new TimerTask(){
-            public void run(){
-                refreshIndex();
-            }
-        },date, 12*60*60*1000); //12*60*60*1000 add 12 hours delay between job executions.
+    public long getUnchangedAnnouncements() {
+        return unchangedAnnouncements.get();
     }
 
     /**
-     * Setter for the indexing method
-     * @param indexing indexing to be used
+     * Function to persist and index many participants at once. The participants are split into batches.
+     * The triple store writes of each batch are sent as a single SPARQL Update request, and the index writes as one bulk request.
+     * Each batch occupies one registration permit of the admission controller.
+     * The resulting graphs are the same as if each participant had been announced individually via {@link #updated(Participant)}
+     * @param participants The participants which were announced to the ParIS
+     * @throws IOException thrown, if the connection to the repository could not be established
+     * @throws RejectMessageException thrown, if an update is not permitted, or if an internal error occurs
      */
-    public void setIndexing(Indexing indexing) {
-        this.indexing = indexing;
+    @Override
+    public void updatedAll(Collection<Participant> participants) throws IOException, RejectMessageException {
+        if(!repositoryFacade.supportsDirectAccess())
+        {
+            super.updatedAll(participants);
+            return;
+        }
+        //If a participant is contained several times, the last occurrence wins
+        Map<URI, Participant> distinctParticipants = new LinkedHashMap<>();
+        participants.forEach(participant -> distinctParticipants.put(participant.getId(), participant));
+
+        List<Participant> batch = new ArrayList<>(bulkBatchSize);
+        for (Participant participant : distinctParticipants.values()) {
+            batch.add(participant);
+            if(batch.size() == bulkBatchSize)
+            {
+                registerBatch(batch);
+                batch = new ArrayList<>(bulkBatchSize);
+            }
+        }
+        registerBatch(batch);
     }
 
     /**
-     * Setter for the context document URL. Typically extracted from the application.properties
-     * @param contextDocumentUrl the context document URL to be used
+     * Internal function which persists and indexes one batch of participants, once the admission controller permits it
+     * @param batch The participants of this batch, each contained at most once
+     * @throws IOException thrown, if the connection to the repository could not be established
+     * @throws RejectMessageException thrown, if too many registrations are in progress, if a participant could not be parsed, or if an internal error occurs
      */
-    public void setContextDocumentUrl(String contextDocumentUrl) {
-        participantModelCreator.setContextFetchStrategy(JsonLdContextFetchStrategy.FROM_URL, contextDocumentUrl);
+    private void registerBatch(List<Participant> batch) throws IOException, RejectMessageException {
+        if(batch.isEmpty())
+        {
+            return;
+        }
+        admissionController.register(() -> {
+            updateBatchLocked(batch);
+            return null;
+        });
     }
 
     /**
-     * Function to refresh the index. The index is dropped entirely and recreated from the triple store
-     * This keeps the index and triple store in sync, while respecting the triple store as single source of truth
+     * Internal function which persists and indexes one batch of participants, while holding the locks of all participants in the batch
+     * @param batch The participants of this batch, each contained at most once
+     * @throws IOException thrown, if the connection to the repository could not be established
+     * @throws RejectMessageException thrown, if a participant could not be parsed, or if an internal error occurs
      */
-    public void refreshIndex() {
-        //Recreate the index to delete everything
+    private void updateBatchLocked(List<Participant> batch) throws IOException, RejectMessageException {
+        List<String> graphs = new ArrayList<>(batch.size());
+        batch.forEach(participant -> graphs.add(participant.getId().toString()));
+        List<Lock> locks = participantLocks.getAll(graphs);
+        locks.forEach(Lock::lock);
         try {
-            logger.info("Refreshing index.");
-            indexing.recreateIndex("registrations");
-
-            //Iterate over all active graphs, i.e. non-passivated and non-deleted graphs
-            for (String graph : repositoryFacade.getActiveGraphs()) {
-                //Add each connector to the index
-                logger.info("Adding participant " + graph + " to index.");
-                indexing.add(repositoryFacade.getParticipantFromTripleStore(new URI(graph)));
-            }
+            updateBatch(batch);
         }
-        catch (ConnectException ignored){} //Prevent startup error
-        catch (IOException | URISyntaxException | RejectMessageException e)
-        {
-            logger.error("Failed to refresh index: ", e);
+        finally {
+            graphs.forEach(this::modified);
+            locks.forEach(Lock::unlock);
         }
     }
 
     /**
-     * Function to persist new participants and to index modifications to an existing participant
-     * @param participant The updated participant which was announced to the ParIS
+     * Internal function which persists and indexes one batch of participants
+     * @param batch The participants of this batch, each contained at most once
      * @throws IOException thrown, if the connection to the repository could not be established
-     * @throws RejectMessageException thrown, if the update is not permitted, e.g. because the participant was previously deleted, or if an internal error occurs
+     * @throws RejectMessageException thrown, if a participant could not be parsed, or if an internal error occurs
      */
-    @Override
-    public void updated(Participant participant) throws IOException, RejectMessageException {
-        if(!repositoryFacade.graphExists(participant.getId().toString()))
+    private void updateBatch(List<Participant> batch) throws IOException, RejectMessageException {
+        if(batch.isEmpty())
         {
-            addToTriplestore(participant.toRdf());
-            indexing.add(participant);
             return;
         }
-        boolean wasActive = repositoryFacade.graphIsActive(participant.getId().toString());
-        updateTriplestore(participant.toRdf());
-        //We need to reflect the changes in the index.
-        //If the connector was passive before, the document was deleted from the index, so we need to recreate it
-        if(wasActive) { //Connector exists in index - update it
-            try {
-                indexing.update(participant);
+        Map<String, Model> graphs = new LinkedHashMap<>();
+        List<String> passiveGraphs = new ArrayList<>();
+        List<Participant> notIndexed = new ArrayList<>();
+        List<Participant> indexed = new ArrayList<>();
+        for (Participant participant : batch) {
+            GraphStatusCache.GraphStatus status = graphStatusCache.getStatus(participant.getId().toString());
+            ParticipantModelCreator.ParticipantModel result = participantModelCreator.toParticipantModel(participant.toRdf());
+            graphs.put(result.getNamedGraph().toString(), result.getModel());
+            if(status == GraphStatusCache.GraphStatus.PASSIVE)
+            {
+                passiveGraphs.add(participant.getId().toString());
             }
-            catch (Exception e)
+            if(status == GraphStatusCache.GraphStatus.ACTIVE)
             {
-                if(e.getMessage().contains("document_missing_exception")) { //Elasticsearch specific check
-                    indexing.add(participant);
-                }
-                else
-                {
-                    logger.error("Exception caught with message " + e.getMessage());
-                    throw new RejectMessageException(RejectionReason.INTERNAL_RECIPIENT_ERROR, e);
-                }
+                indexed.add(participant);
+            }
+            else
+            {
+                notIndexed.add(participant);
             }
         }
+
+        writeGraphs(graphs, passiveGraphs);
+        for (Participant participant : batch) {
+            graphStatusCache.markActive(participant.getId().toString());
+            participantCache.invalidate(participant.getId());
+        }
+        queryResultCache.invalidateAll();
+
+        if(indexing instanceof BulkIndexing)
+        {
+            addAllToIndex(batch);
+        }
         else
-        { //Connector does not exist in index - create it
-            indexing.add(participant);
+        {
+            addAllToIndex(notIndexed);
+            for (Participant participant : indexed) {
+                updateIndex(participant);
+            }
+        }
+        publishChanges(graphs.keySet(), ChangeLog.ChangeType.UPDATED);
+        logger.info("Persisted batch of " + batch.size() + " participants.");
+    }
+
+    /**
+     * Internal function which stores the graphs of participants which are not active, replacing any previous content, and activates them.
+     * Used for single and batch announcements alike, so that both store a participant identically
+     * @param graphs Map from graph name to the new content of the graph
+     * @param passiveGraphs Names of the graphs which exist, but are passivated
+     * @throws IOException thrown, if the triple store could not be reached
+     * @throws RejectMessageException thrown, if an internal error occurred
+     */
+    private void writeGraphs(Map<String, Model> graphs, Collection<String> passiveGraphs) throws IOException, RejectMessageException {
+        metrics.time(ParisMetrics.REPOSITORY, "replaceGraphs", () -> {
+            repositoryFacade.replaceGraphs(graphs);
+            return null;
+        });
+        //Previously passivated participants are announced again, so they become active
+        for (String graph : passiveGraphs) {
+            changePassivation(graph, true);
+        }
+    }
+
+    /**
+     * Internal function which updates an existing participant in the index. If the document is missing, it is added instead
+     * @param participant The participant to be updated in the index
+     * @throws IOException thrown, if the index could not be reached
+     * @throws RejectMessageException thrown, if an internal error occurred while updating the index
+     */
+    private void updateIndex(Participant participant) throws IOException, RejectMessageException {
+        try {
+            metrics.time(ParisMetrics.INDEX, "update", () -> {
+                indexing.update(participant);
+                return null;
+            });
+        }
+        catch (Exception e)
+        {
+            if(e.getMessage() != null && e.getMessage().contains("document_missing_exception")) { //Elasticsearch specific check
+                addToIndex(participant);
+            }
+            else
+            {
+                logger.error("Exception caught with message " + e.getMessage());
+                throw new RejectMessageException(RejectionReason.INTERNAL_RECIPIENT_ERROR, e);
+            }
         }
     }
 
@@ -137,8 +1173,11 @@ public class ParticipantPersistenceAndIndexing extends ParticipantPersistenceAda
      * @throws RejectMessageException thrown, if the changes are illegal, or if an internal error has occurred
      */
     private void addToTriplestore(String selfDescriptionJsonLD) throws IOException, RejectMessageException {
-        ParticipantModelCreator.InnerModel result = participantModelCreator.toModel(selfDescriptionJsonLD);
-        repositoryFacade.addStatements(result.getModel(), result.getNamedGraph().toString());
+        ParticipantModelCreator.ParticipantModel result = participantModelCreator.toParticipantModel(selfDescriptionJsonLD);
+        metrics.time(ParisMetrics.REPOSITORY, "addStatements", () -> {
+            repositoryFacade.addStatements(result.getModel(), result.getNamedGraph().toString());
+            return null;
+        });
     }
 
     /**
@@ -147,8 +1186,11 @@ public class ParticipantPersistenceAndIndexing extends ParticipantPersistenceAda
      * @throws IOException thrown, if the changes could not be applied to the triple store
      */
     private void updateTriplestore(String selfDescriptionJsonLD) throws IOException, RejectMessageException {
-        ParticipantModelCreator.InnerModel result = participantModelCreator.toModel(selfDescriptionJsonLD);
-        repositoryFacade.replaceStatements(result.getModel(), result.getNamedGraph().toString());
+        ParticipantModelCreator.ParticipantModel result = participantModelCreator.toParticipantModel(selfDescriptionJsonLD);
+        metrics.time(ParisMetrics.REPOSITORY, "replaceStatements", () -> {
+            repositoryFacade.replaceStatements(result.getModel(), result.getNamedGraph().toString());
+            return null;
+        });
     }
 
     /**
@@ -159,39 +1201,363 @@ public class ParticipantPersistenceAndIndexing extends ParticipantPersistenceAda
      */
     @Override
     public void unavailable(URI participant) throws IOException, RejectMessageException {
-        if(!repositoryFacade.graphExists(participant.toString()))
+        admissionController.register(() -> {
+            Lock lock = participantLocks.get(participant.toString());
+            lock.lock();
+            try {
+                applyUnavailable(participant);
+            }
+            finally {
+                modified(participant.toString());
+                lock.unlock();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Internal function which should only be called from the unavailable function, while holding the lock of the participant
+     * @param participant A URI reference to the participant which is now unavailable
+     * @throws IOException if the connection to the triple store could not be established
+     * @throws RejectMessageException if the operation is not permitted or due to an internal error
+     */
+    private void applyUnavailable(URI participant) throws IOException, RejectMessageException {
+        if(graphStatusCache.getStatus(participant.toString()) == GraphStatusCache.GraphStatus.ABSENT)
         {
             throw new RejectMessageException(RejectionReason.NOT_FOUND, new NullPointerException("The participant you are attempting to delete was not found."));
         }
         removeFromTriplestore(participant);
-        indexing.delete(participant);
+        deleteFromIndex(participant);
+        indexedFingerprints.remove(participant.toString());
+        publishChanges(Collections.singletonList(participant.toString()), ChangeLog.ChangeType.REMOVED);
     }
 
     /**
-     * Internal function which should only be called from the unavailable function. It applies the changes to the triple store
+     * Internal function which should only be called from the unavailable function, after the existence of the graph has been checked.
+     * It applies the changes to the triple store
      * @param participant URI of the participant to be removed from triple store
+     * @throws IOException thrown, if the triple store could not be reached
      * @throws RejectMessageException thrown, if the changes are illegal, or if an internal error has occurred
      */
-    private void removeFromTriplestore(URI participant) throws RejectMessageException {
-        if(repositoryFacade.graphExists(participant.toString()))
+    private void removeFromTriplestore(URI participant) throws IOException, RejectMessageException {
+        changePassivation(participant.toString(), false);
+        graphStatusCache.markPassive(participant.toString());
+        participantCache.invalidate(participant);
+        queryResultCache.invalidateAll();
+    }
+
+    /**
+     * Internal function which activates or passivates a graph in the triple store
+     * @param graph Name of the graph
+     * @param active true to activate the graph, false to passivate it
+     * @throws IOException thrown, if the triple store could not be reached
+     * @throws RejectMessageException thrown, if an internal error occurred
+     */
+    private void changePassivation(String graph, boolean active) throws IOException, RejectMessageException {
+        metrics.time(ParisMetrics.REPOSITORY, "changePassivation", () -> {
+            repositoryFacade.changePassivationOfGraph(graph, active);
+            return null;
+        });
+    }
+
+    /**
+     * Internal function to determine whether a graph exists and is not passivated. Answered from the graph status cache where possible
+     * @param graph Name of the graph
+     * @return true, if the graph exists and is active, otherwise false
+     * @throws IOException thrown, if the triple store could not be reached
+     * @throws RejectMessageException thrown, if an internal error occurred
+     */
+    private boolean isActiveGraph(String graph) throws IOException, RejectMessageException {
+        return graphStatusCache.getStatus(graph) == GraphStatusCache.GraphStatus.ACTIVE;
+    }
+
+    /**
+     * Utility function to evaluate a given query (in a re-formulated way, respecting passivation and hiding underlying structure of named graphs).
+     * Results are served from the query result cache, as long as the registry has not been modified since they were computed
+     * @param queryString Query to be evaluated
+     * @return Query result in String format
+     * @throws RejectMessageException, if the query is illegal or if the index is empty
+     */
+    @Override
+    public String getResults(String queryString) throws RejectMessageException {
+        Timer.Sample sample = metrics.start();
+        boolean cacheHit = false;
+        Throwable failure = null;
+        try {
+            Query query;
+            try {
+                query = QueryFactory.create(queryString);
+            }
+            catch (QueryException e)
+            {
+                //Leave the error handling to the query evaluator
+                return admissionController.query(() -> evaluate(queryString), queryLimits.getTimeout());
+            }
+            checkCost(query);
+            checkLimit(query);
+            String key = QueryResultCache.normalize(query);
+            String cached = queryResultCache.get(key);
+            if(cached != null)
+            {
+                cacheHit = true;
+                return cached;
+            }
+            long stamp = queryResultCache.stamp();
+            long start = System.nanoTime();
+            String result = admissionController.query(() -> evaluate(queryString), queryLimits.getTimeout());
+            queryResultCache.put(key, result, stamp, System.nanoTime() - start);
+            metrics.recordResultSize("getResults", utf8Length(result));
+            return result;
+        }
+        catch (RejectMessageException | RuntimeException e)
         {
-            repositoryFacade.changePassivationOfGraph(participant.toString(), false);
+            failure = e;
+            throw e;
         }
-        else
+        finally {
+            metrics.stop(sample, ParisMetrics.QUERIES, Tags.of("operation", "getResults", "cache", cacheHit ? "hit" : "miss"), failure);
+        }
+    }
+
+    /**
+     * Internal function which rejects queries whose estimated cost exceeds the configured maximum
+     * @param query The parsed query
+     * @throws RejectMessageException thrown with reason BAD_PARAMETERS, if the query is too expensive
+     */
+    private void checkCost(Query query) throws RejectMessageException {
+        if(!queryCostEstimator.isAdmissible(query))
         {
-            throw new RejectMessageException(RejectionReason.NOT_FOUND, new NullPointerException("The participant you are trying to delete was not found"));
+            logger.info("Rejected query with estimated cost " + QueryCostEstimator.estimate(query) + ".");
+            throw new RejectMessageException(RejectionReason.BAD_PARAMETERS, new Exception("The query is too expensive. Please restrict your query, e.g. by avoiding cross products and unbounded property paths."));
         }
     }
 
     /**
-     * Utility function to evaluate a given query (in a re-formulated way, respecting passivation and hiding underlying structure of named graphs)
+     * Internal function which evaluates a query against the triple store and enforces the result size limit
      * @param queryString Query to be evaluated
      * @return Query result in String format
-     * @throws RejectMessageException, if the query is illegal or if the index is empty
+     * @throws IOException thrown, if the triple store could not be reached
+     * @throws RejectMessageException thrown, if the query is illegal or the result is too large
      */
-    @Override
-    public String getResults(String queryString) throws RejectMessageException {
-        return new GenericQueryEvaluator(repositoryFacade).getResults(queryString);
+    private String evaluate(String queryString) throws IOException, RejectMessageException {
+        //The evaluator does not expose its query execution, so the timeout is applied to its requests to the triple store
+        String result = metrics.time(ParisMetrics.REPOSITORY, "query", () -> TripleStoreHttpClient.withRequestTimeout(queryLimits.getTimeout(),
+                () -> new GenericQueryEvaluator(repositoryFacade).getResults(queryString)));
+        if(utf8Length(result) > queryLimits.getMaxBytes())
+        {
+            throw new RejectMessageException(RejectionReason.TOO_MANY_RESULTS, new Exception("The query result exceeds the maximum size of " + queryLimits.getMaxBytes() + " bytes. Please restrict your query."));
+        }
+        return result;
+    }
+
+    /**
+     * Utility function to determine the size of a string in UTF-8, without encoding it
+     * @param text The string
+     * @return Number of bytes of the UTF-8 encoding
+     */
+    private static long utf8Length(String text) {
+        long bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if(c < 0x80)
+            {
+                bytes++;
+            }
+            else if(c < 0x800)
+            {
+                bytes += 2;
+            }
+            else if(Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1)))
+            {
+                bytes += 4;
+                i++;
+            }
+            else
+            {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Function to evaluate a SELECT query against all active participants and to write the result rows incrementally to an output stream,
+     * formatted as SPARQL JSON results. See {@link #openResultStream(String)}
+     * @param queryString Query to be evaluated
+     * @param outputStream Stream to which the result is written
+     * @return true, if the result was cut off because a limit was reached
+     * @throws RejectMessageException thrown, if the query is illegal, too expensive, could not be admitted or could not be evaluated in time
+     * @throws IOException thrown, if the result could not be written or the triple store could not be reached
+     */
+    public boolean streamResults(String queryString, OutputStream outputStream) throws RejectMessageException, IOException {
+        try (ResultStream resultStream = openResultStream(queryString)) {
+            return resultStream.writeTo(outputStream);
+        }
+    }
+
+    /**
+     * Function to prepare the evaluation of a query whose result rows are written incrementally to an output stream, formatted as SPARQL JSON results.
+     * The result is never held in memory as a whole.
+     * Like {@link #getResults(String)}, the query sees the active participant graphs as named graphs, is subject to the cost estimate,
+     * and is admitted by the admission controller. All of this is checked by this function, so that a rejection can be reported
+     * before anything is sent to the client. The iteration ends once the row, size or time limit is reached.
+     * Other query types are evaluated via {@link #getResults(String)} right away
+     * @param queryString Query to be evaluated
+     * @return The admitted query, which must be closed
+     * @throws RejectMessageException thrown, if the query is illegal, too expensive or could not be admitted
+     */
+    public ResultStream openResultStream(String queryString) throws RejectMessageException {
+        Query query = parseQuery(queryString);
+        checkCost(query);
+        if(!query.isSelectType() || !repositoryFacade.supportsDirectAccess())
+        {
+            byte[] result = getResults(queryString).getBytes(StandardCharsets.UTF_8);
+            return new ResultStream(outputStream -> {
+                outputStream.write(result);
+                return false;
+            }, () -> {});
+        }
+        //The stream is usually available right away. If not, the worker is released after the time the query itself would be given
+        AdmissionController.QueryReservation reservation = admissionController.reserveQuery(queryLimits.getTimeout());
+        //The time limit cuts the result off regularly. The grace periods let the result be completed before the evaluation is cancelled
+        return new ResultStream(outputStream -> reservation.run(() -> streamSelect(query, outputStream), queryLimits.getTimeout().plus(STREAMING_GRACE_PERIOD.multipliedBy(2))),
+                reservation::close);
+    }
+
+    /**
+     * A query which passed all checks and was admitted, see {@link #openResultStream(String)}
+     */
+    public static class ResultStream implements Closeable {
+
+        private interface Writer {
+            boolean write(OutputStream outputStream) throws IOException, RejectMessageException;
+        }
+
+        private final Writer writer;
+        private final Runnable release;
+
+        private ResultStream(Writer writer, Runnable release) {
+            this.writer = writer;
+            this.release = release;
+        }
+
+        /**
+         * Function to evaluate the query and write its result. Can only be called once
+         * @param outputStream Stream to which the result is written
+         * @return true, if the result was cut off because a limit was reached
+         * @throws RejectMessageException thrown, if the query could not be evaluated in time
+         * @throws IOException thrown, if the result could not be written or the triple store could not be reached
+         */
+        public boolean writeTo(OutputStream outputStream) throws IOException, RejectMessageException {
+            return writer.write(outputStream);
+        }
+
+        /**
+         * Releases the admission of the query, if it was not evaluated
+         */
+        @Override
+        public void close() {
+            release.run();
+        }
+    }
+
+    /**
+     * Internal function which evaluates a SELECT query and writes its result, see {@link #streamResults(String, OutputStream)}
+     * @param query The parsed query. Note that it is modified
+     * @param outputStream Stream to which the result is written
+     * @return true, if the result was cut off because a limit was reached
+     * @throws RejectMessageException thrown, if the query could not be evaluated in time
+     * @throws IOException thrown, if the result could not be written or the triple store could not be reached
+     */
+    private boolean streamSelect(Query query, OutputStream outputStream) throws RejectMessageException, IOException {
+        //Same dataset description as used for getResults: the active participant graphs are the named graphs, passivated participants are hidden
+        query.getGraphURIs().clear();
+        query.getNamedGraphURIs().clear();
+        for (String graph : metrics.time(ParisMetrics.REPOSITORY, "getActiveGraphs", repositoryFacade::getActiveGraphs)) {
+            query.addNamedGraphURI(graph);
+        }
+
+        CountingOutputStream countingOutputStream = new CountingOutputStream(outputStream);
+        try (RDFConnection connection = repositoryFacade.connect()) {
+            //The embedded triple store can only be read within a transaction, which has to span the entire iteration
+            connection.begin(ReadWrite.READ);
+            try (QueryExecution queryExecution = connection.query(query)) {
+                //Cancels in-process evaluation, and limits the wait for data from a remote triple store
+                queryExecution.setTimeout(queryLimits.getTimeout().plus(STREAMING_GRACE_PERIOD).toMillis());
+                LimitedResultSet resultSet = new LimitedResultSet(queryExecution.execSelect(), queryLimits, countingOutputStream::getCount);
+                ResultSetFormatter.outputAsJSON(countingOutputStream, resultSet);
+                countingOutputStream.flush();
+                metrics.recordResultSize("streamResults", countingOutputStream.getCount());
+                if(resultSet.isTruncated())
+                {
+                    logger.info("Streamed query result was cut off after " + resultSet.getRowNumber() + " rows.");
+                }
+                return resultSet.isTruncated();
+            }
+            finally {
+                connection.end();
+            }
+        }
+        catch (QueryCancelledException e)
+        {
+            throw new RejectMessageException(RejectionReason.TOO_MANY_RESULTS, new Exception("The query could not be evaluated within " + queryLimits.getTimeout().getSeconds() + " seconds."));
+        }
+    }
+
+    /**
+     * Internal function which rejects SELECT queries without a LIMIT of at most the maximum number of rows, if this is required.
+     * The result of an IDS query message is never cut off, as the client could not be told that rows are missing
+     * @param query The parsed query
+     * @throws RejectMessageException thrown with reason BAD_PARAMETERS, if a LIMIT is required but missing or too high
+     */
+    private void checkLimit(Query query) throws RejectMessageException {
+        if(queryLimits.isLimitRequired() && query.isSelectType() && (!query.hasLimit() || query.getLimit() > queryLimits.getMaxRows()))
+        {
+            throw new RejectMessageException(RejectionReason.BAD_PARAMETERS, new Exception("SELECT queries must have a LIMIT of at most " + queryLimits.getMaxRows() + " rows."));
+        }
+    }
+
+    /**
+     * Internal function to parse a query
+     * @param queryString Query to be parsed
+     * @return The parsed query
+     * @throws RejectMessageException thrown, if the query is not valid SPARQL
+     */
+    private Query parseQuery(String queryString) throws RejectMessageException {
+        try {
+            return QueryFactory.create(queryString);
+        }
+        catch (QueryException e)
+        {
+            throw new RejectMessageException(RejectionReason.MALFORMED_MESSAGE, e);
+        }
+    }
+
+    /**
+     * OutputStream wrapper which counts the bytes written
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        CountingOutputStream(OutputStream outputStream) {
+            super(outputStream);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
     }
 
     /**
@@ -202,39 +1568,137 @@ public class ParticipantPersistenceAndIndexing extends ParticipantPersistenceAda
      */
     @Override
     public Participant requestParticipant(URI participantUri) throws RejectMessageException {
-        StringBuilder queryString = new StringBuilder();
-        queryString.append("PREFIX ids: <https://w3id.org/idsa/core/> ")
-                .append("CONSTRUCT { ?s ?p ?o . ?o ?p2 ?o2 . ?o2 ?p3 ?o3 . ?o3 ?p4 ?o4 . ?o4 ?p5 ?o5 . } "); //TODO: use a loop instead
-        repositoryFacade.getActiveGraphs().forEach(graph -> queryString.append("FROM NAMED <").append(graph).append("> "));
-        queryString.append("WHERE { ")
-                //.append("BIND(<").append(participantUri.toString()).append("> AS ?s) . ") //Use passed URI as entry point
-                .append("GRAPH ?g {") //Select from non-default graph
-                .append(" ?s a ids:Participant ; ") //Make sure it's a participant
-                .append("?p ?o . ") //Grab all direct neighbours
-                .append("OPTIONAL { ?o ?p2 ?o2 .  ") //If exists, grab neighbours 1 hop away, such as security profile properties
-                .append("OPTIONAL { ?o2 ?p3 ?o3 .  ") //If exists, grab neighbours 2 hops away
-                .append("OPTIONAL { ?o3 ?p4 ?o4 .  ") //...
-                .append("OPTIONAL { ?o4 ?p5 ?o5 . } } } } } }");
-
-        ParameterizedSparqlString parameterizedSparqlString = new ParameterizedSparqlString(queryString.toString());
-        parameterizedSparqlString.setIri("s", participantUri.toString());
+        Timer.Sample sample = metrics.start();
+        boolean cacheHit = false;
+        Throwable failure = null;
+        try {
+            Participant cached = participantCache.get(participantUri);
+            if(cached != null)
+            {
+                cacheHit = true;
+                return cached;
+            }
+            //Must be obtained before reading, so that a concurrent update prevents caching an outdated result
+            long stamp = participantCache.stamp();
+            return admissionController.query(() -> loadParticipant(participantUri, stamp), queryLimits.getTimeout());
+        }
+        catch (RejectMessageException | RuntimeException e)
+        {
+            failure = e;
+            throw e;
+        }
+        finally {
+            metrics.stop(sample, ParisMetrics.QUERIES, Tags.of("operation", "requestParticipant", "cache", cacheHit ? "hit" : "miss"), failure);
+        }
+    }
+
+    /**
+     * Function to obtain the JSON-LD serialization of a participant. The serialization is cached along with the participant,
+     * so a participant is only serialized again after it was updated or its cache entry expired
+     * @param participantUri URI reference to a participant which is requested
+     * @return Serialization of the requested participant
+     * @throws RejectMessageException if the requested participant could not be found, or if an internal error has occurred
+     */
+    public RenderedDocument requestRenderedParticipant(URI participantUri) throws RejectMessageException {
+        RenderedDocument rendered = participantCache.getRendered(participantUri);
+        if(rendered != null)
+        {
+            return rendered;
+        }
+        Participant participant = requestParticipant(participantUri);
+        try {
+            rendered = RenderedDocument.render(participant, serializer);
+        }
+        catch (IOException e)
+        {
+            throw new RejectMessageException(RejectionReason.INTERNAL_RECIPIENT_ERROR, e);
+        }
+        participantCache.putRendered(participantUri, participant, rendered);
+        return rendered;
+    }
+
+    /**
+     * Internal function which reads a participant from the triple store and adds it to the participant cache
+     * @param participantUri URI reference to a participant which is requested
+     * @param stamp Stamp of the participant cache, obtained before the participant cache was consulted
+     * @return IDS Participant object for the requested participant URI
+     * @throws RejectMessageException if the requested participant could not be found, or if an internal error has occurred
+     */
+    private Participant loadParticipant(URI participantUri, long stamp) throws RejectMessageException {
+        //Passivated participants must be treated as if they didn't exist
+        try {
+            if (!isActiveGraph(participantUri.toString())) {
+                logger.debug("Participant could not be found - graph does not exist or is passivated.");
+                throw new RejectMessageException(RejectionReason.NOT_FOUND, new NullPointerException("The requested participant could not be found."));
+            }
+        }
+        catch (IOException e)
+        {
+            throw new RejectMessageException(RejectionReason.INTERNAL_RECIPIENT_ERROR, e);
+        }
 
         try {
-            Model result = repositoryFacade.constructQuery(parameterizedSparqlString.toString());
+            Model result = metrics.time(ParisMetrics.REPOSITORY, "constructQuery", () -> readParticipantGraph(participantUri));
             if (result.isEmpty()) {
-                logger.info("Participant could not be found - result is empty.");
+                logger.debug("Participant could not be found - result is empty.");
                 //Result is empty, throw exception. This will result in a RejectionMessage being sent
                 throw new RejectMessageException(RejectionReason.NOT_FOUND, new NullPointerException("The requested participant could not be found."));
             }
-            logger.info("Participant was retrieved successfully from triple store.");
+            logger.debug("Participant was retrieved successfully from triple store.");
 
-            return ConstructQueryResultHandler.GraphQueryResultToParticipant(result);
+            Participant participant = ConstructQueryResultHandler.GraphQueryResultToParticipant(result);
+            participantCache.put(participantUri, participant, result.size(), stamp);
+            return participant;
         }
         catch (ARQException e)
         {
             logger.warn("Potential SPARQL injection attack detected.", e);
             throw new RejectMessageException(RejectionReason.MALFORMED_MESSAGE);
         }
+        catch (IOException e)
+        {
+            throw new RejectMessageException(RejectionReason.INTERNAL_RECIPIENT_ERROR, e);
+        }
+    }
+
+    /**
+     * Internal function which reads a participant from the triple store, bypassing the participant cache and regardless of its passivation state,
+     * e.g. to index it. Replaces RepositoryFacade.getParticipantFromTripleStore, such that the embedded triple store is read directly rather than via HTTP
+     * @param participantUri URI of the participant
+     * @return The participant
+     * @throws IOException thrown, if the triple store could not be reached
+     * @throws RejectMessageException thrown with reason NOT_FOUND, if the graph does not contain the participant, or if it could not be parsed
+     */
+    private Participant readParticipant(URI participantUri) throws IOException, RejectMessageException {
+        Model model = readParticipantGraph(participantUri);
+        if(model.isEmpty())
+        {
+            throw new RejectMessageException(RejectionReason.NOT_FOUND, new NullPointerException("The requested participant could not be found."));
+        }
+        return ConstructQueryResultHandler.GraphQueryResultToParticipant(model);
+    }
+
+    /**
+     * Internal function which reads the description of a participant from the named graph of the participant
+     * @param participantUri URI of the participant
+     * @return The statements of the description, or an empty model if the graph does not contain the participant
+     * @throws IOException thrown, if the triple store could not be reached
+     * @throws RejectMessageException thrown, if an internal error occurred
+     */
+    private Model readParticipantGraph(URI participantUri) throws IOException, RejectMessageException {
+        //Each participant is stored in a named graph of its own, so we can read that graph directly instead of scanning all active graphs.
+        //The property path (<urn:x>|!<urn:x>)* matches any chain of predicates, so the description is retrieved to any depth
+        String queryString = "PREFIX ids: <https://w3id.org/idsa/core/> " +
+                "CONSTRUCT { ?node ?p ?o . } " +
+                "WHERE { GRAPH ?g { " +
+                "?s a ids:Participant . " + //Make sure it's a participant
+                "?s (<urn:x>|!<urn:x>)* ?node . " + //Everything reachable from the participant, including the participant itself
+                "?node ?p ?o . } }";
+
+        ParameterizedSparqlString parameterizedSparqlString = new ParameterizedSparqlString(queryString);
+        parameterizedSparqlString.setIri("s", participantUri.toString());
+        parameterizedSparqlString.setIri("g", participantUri.toString());
+        return repositoryFacade.constructQuery(parameterizedSparqlString.toString());
     }
 
 }
@@ -8,6 +8,9 @@ import de.fraunhofer.iais.eis.ids.component.core.map.DefaultSuccessMAP;
 import de.fraunhofer.iais.eis.ids.connector.commons.broker.SameOriginParticipantMapValidationStrategy;
 import de.fraunhofer.iais.eis.ids.connector.commons.messagevalidation.ValidatingMessageHandler;
 import de.fraunhofer.iais.eis.ids.connector.commons.participant.map.ParticipantNotificationMAP;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
 
 import java.net.URI;
 import java.util.Arrays;
@@ -22,6 +25,8 @@ public class ParticipantRegistrationHandler extends ValidatingMessageHandler<Par
     private final ParticipantStatusHandler participantStatusHandler;
     private final SecurityTokenProvider securityTokenProvider;
     private final URI responseSenderAgent;
+    private ParisMetrics metrics = new ParisMetrics(Metrics.globalRegistry);
+    private DatCache tokenCache;
 
     /**
      * Constructor
@@ -38,6 +43,22 @@ public class ParticipantRegistrationHandler extends ValidatingMessageHandler<Par
         this.responseSenderAgent = responseSenderAgent;
     }
 
+    /**
+     * Setter for the metrics to which the processing time of each message is reported
+     * @param metrics metrics to be used
+     */
+    public void setMetrics(ParisMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Setter for the cache of the DAT which is attached to responses. If not set, a token is obtained from the security token provider per response
+     * @param tokenCache token cache to be used, or null
+     */
+    public void setTokenCache(DatCache tokenCache) {
+        this.tokenCache = tokenCache;
+    }
+
     /**
      * This function takes care of an inbound message which can be handled by this class
      * @param messageAndPayload The message to be handled
@@ -46,6 +67,43 @@ public class ParticipantRegistrationHandler extends ValidatingMessageHandler<Par
      */
     @Override
     public DefaultSuccessMAP handleValidated(ParticipantNotificationMAP messageAndPayload) throws RejectMessageException {
+        Timer.Sample sample = metrics.start();
+        Throwable failure = null;
+        try {
+            return handle(messageAndPayload);
+        }
+        catch (RejectMessageException | RuntimeException e)
+        {
+            failure = e;
+            throw e;
+        }
+        finally {
+            metrics.stop(sample, ParisMetrics.MESSAGES, Tags.of("type", messageType(messageAndPayload.getMessage())), failure);
+        }
+    }
+
+    /**
+     * Internal function to determine the message type for the metrics. The class name of the message itself is an implementation class
+     * @param message The message
+     * @return Simple name of the supported message type which the message implements
+     */
+    private String messageType(Message message) {
+        for (Class<? extends Message> messageType : getSupportedMessageTypes()) {
+            if(messageType.isInstance(message))
+            {
+                return messageType.getSimpleName();
+            }
+        }
+        return message.getClass().getSimpleName();
+    }
+
+    /**
+     * Internal function which should only be called from handleValidated
+     * @param messageAndPayload The message to be handled
+     * @return MessageProcessedNotification wrapped in a DefaultSuccessMAP, if the message has been processed properly
+     * @throws RejectMessageException thrown, if the message could not be processed properly
+     */
+    private DefaultSuccessMAP handle(ParticipantNotificationMAP messageAndPayload) throws RejectMessageException {
         Message msg = messageAndPayload.getMessage();
         try {
             /*
@@ -89,7 +147,8 @@ public class ParticipantRegistrationHandler extends ValidatingMessageHandler<Par
             throw new RejectMessageException(RejectionReason.INTERNAL_RECIPIENT_ERROR, e);
         }
         try {
-            return new DefaultSuccessMAP(infrastructureComponent.getId(), infrastructureComponent.getOutboundModelVersion(), messageAndPayload.getMessage().getId(), securityTokenProvider.getSecurityTokenAsDAT(), responseSenderAgent);
+            return new DefaultSuccessMAP(infrastructureComponent.getId(), infrastructureComponent.getOutboundModelVersion(), messageAndPayload.getMessage().getId(),
+                    tokenCache != null ? tokenCache.get() : securityTokenProvider.getSecurityTokenAsDAT(), responseSenderAgent);
         }
         catch (TokenRetrievalException e)
         {
@@ -0,0 +1,215 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import de.fraunhofer.iais.eis.ids.index.common.persistence.RepositoryFacade;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.ParameterizedSparqlString;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdfconnection.RDFConnection;
+import org.apache.jena.rdfconnection.RDFConnectionFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.modify.request.QuadDataAcc;
+import org.apache.jena.sparql.modify.request.UpdateDataDelete;
+import org.apache.jena.sparql.modify.request.UpdateDataInsert;
+import org.apache.jena.sparql.modify.request.UpdateDrop;
+import org.apache.jena.update.UpdateRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extension of the RepositoryFacade with ParIS specific functionality which requires direct access to the SPARQL endpoint,
+ * such as writing many participant graphs in a single SPARQL Update request
+ */
+public class ParticipantRepositoryFacade extends RepositoryFacade {
+
+    private final String sparqlEndpointUrl;
+
+    /**
+     * Digest of a graph which contains blank nodes. Such graphs cannot be compared by digest, see {@link #digest(Model)}
+     */
+    public static final String NO_DIGEST = "";
+
+    //Computes the digest of every named graph inside the triple store, see digest(Model) for the canonical form of a statement.
+    //SPARQL does not define the order in which GROUP_CONCAT sees the solutions. The ordered subquery is respected by Jena,
+    //and another order would only make an unchanged graph appear changed. ?blankNodes is 1 for graphs which contain blank nodes
+    private static final String GRAPH_DIGESTS_QUERY = "SELECT ?g (SHA256(GROUP_CONCAT(?statement; SEPARATOR=\"\\n\")) AS ?digest) (MAX(?blank) AS ?blankNodes) WHERE { " +
+            "{ SELECT ?g ?statement ?blank WHERE { GRAPH ?g { ?s ?p ?o . } " +
+            "BIND(CONCAT(IF(isBlank(?s), \"_:\", STR(?s)), \" \", STR(?p), \" \", " +
+            "IF(isBlank(?o), \"_:\", IF(isLiteral(?o), CONCAT(\"\\\"\", STR(?o), \"\\\"^^\", STR(DATATYPE(?o)), \"@\", LANG(?o)), STR(?o)))) AS ?statement) " +
+            "BIND(IF(isBlank(?s) || isBlank(?o), 1, 0) AS ?blank) } " +
+            "ORDER BY ?g ?statement } " +
+            "} GROUP BY ?g";
+
+    /**
+     * Constructor
+     * @param sparqlEndpointUrl URL of the SPARQL endpoint (dataset) of the triple store. If empty, an in-memory store is used
+     */
+    public ParticipantRepositoryFacade(String sparqlEndpointUrl) {
+        super(sparqlEndpointUrl);
+        this.sparqlEndpointUrl = sparqlEndpointUrl;
+    }
+
+    /**
+     * Function to determine whether the functions of this class which need direct access to the SPARQL endpoint can be used.
+     * This is not the case for the in-memory store of the RepositoryFacade
+     * @return true, if a SPARQL endpoint is configured
+     */
+    public boolean supportsDirectAccess() {
+        return sparqlEndpointUrl != null && !sparqlEndpointUrl.isEmpty();
+    }
+
+    /**
+     * Function to open a new connection to the SPARQL endpoint. The connection must be closed by the caller
+     * @return new connection to the SPARQL endpoint
+     */
+    public RDFConnection connect() {
+        if(!supportsDirectAccess())
+        {
+            throw new UnsupportedOperationException("Direct access is not supported by the in-memory store.");
+        }
+        return RDFConnectionFactory.connect(sparqlEndpointUrl);
+    }
+
+    /**
+     * Function to execute a SPARQL Update request. The request is executed as a single transaction by the triple store
+     * @param updateRequest The update request to be executed
+     */
+    public void update(UpdateRequest updateRequest) {
+        try (RDFConnection connection = connect()) {
+            connection.update(updateRequest);
+        }
+    }
+
+    /**
+     * Function to replace the content of several named graphs with a single SPARQL Update request.
+     * Graphs which do not exist yet are created. Note that this does not change the passivation state of the graphs
+     * @param graphs Map from graph name to the new content of the graph
+     */
+    public void replaceGraphs(Map<String, Model> graphs) {
+        if(graphs.isEmpty())
+        {
+            return;
+        }
+        UpdateRequest updateRequest = new UpdateRequest();
+        graphs.forEach((graph, model) -> {
+            Node graphNode = NodeFactory.createURI(graph);
+            updateRequest.add(new UpdateDrop(graphNode, true));
+            updateRequest.add(new UpdateDataInsert(toQuads(graphNode, model)));
+        });
+        update(updateRequest);
+    }
+
+    /**
+     * Function to read the content of a named graph
+     * @param graphName Name of the graph
+     * @return A copy of the content of the graph, which is empty if the graph does not exist
+     */
+    public Model fetchGraph(String graphName) {
+        ParameterizedSparqlString query = new ParameterizedSparqlString("CONSTRUCT { ?s ?p ?o . } WHERE { GRAPH ?g { ?s ?p ?o . } }");
+        query.setIri("g", graphName);
+        try (RDFConnection connection = connect()) {
+            return ModelFactory.createDefaultModel().add(connection.queryConstruct(query.asQuery()));
+        }
+    }
+
+    /**
+     * Function to change a named graph by removing and adding individual statements with a single SPARQL Update request (DELETE DATA / INSERT DATA).
+     * The statements must not contain blank nodes
+     * @param graphName Name of the graph
+     * @param removals Statements to be removed
+     * @param additions Statements to be added
+     */
+    public void applyDelta(String graphName, Model removals, Model additions) {
+        Node graphNode = NodeFactory.createURI(graphName);
+        UpdateRequest updateRequest = new UpdateRequest();
+        if(!removals.isEmpty())
+        {
+            updateRequest.add(new UpdateDataDelete(toQuads(graphNode, removals)));
+        }
+        if(!additions.isEmpty())
+        {
+            updateRequest.add(new UpdateDataInsert(toQuads(graphNode, additions)));
+        }
+        if(!updateRequest.getOperations().isEmpty())
+        {
+            update(updateRequest);
+        }
+    }
+
+    /**
+     * Function to compute a digest of the content of every named graph, without transferring the content itself.
+     * The digests are computed by the triple store, in the same canonical form as {@link #digest(Model)}
+     * @return Map from graph name to the hex encoded SHA-256 digest of the graph content, or {@link #NO_DIGEST} for graphs with blank nodes
+     */
+    public Map<String, String> graphDigests() {
+        Map<String, String> digests = new HashMap<>();
+        try (RDFConnection connection = connect()) {
+            connection.querySelect(GRAPH_DIGESTS_QUERY, solution -> {
+                boolean blankNodes = solution.getLiteral("blankNodes").getInt() != 0;
+                digests.put(solution.getResource("g").getURI(), blankNodes ? NO_DIGEST : solution.getLiteral("digest").getLexicalForm());
+            });
+        }
+        return digests;
+    }
+
+    /**
+     * Function to compute a digest of the content of a graph. Each statement is written in a canonical form, similar to N-Triples,
+     * and the statements are sorted before they are hashed. Blank nodes have no stable label, so statements could be moved from one blank node
+     * to another without changing the digest. Graphs with blank nodes therefore have no digest, and must be compared by their content
+     * @param model The content of the graph
+     * @return The hex encoded SHA-256 digest of the graph content, or {@link #NO_DIGEST} if the graph contains blank nodes
+     */
+    public static String digest(Model model) {
+        List<String> statements = new ArrayList<>();
+        for (Triple triple : model.getGraph().find().toList()) {
+            if(triple.getSubject().isBlank() || triple.getObject().isBlank())
+            {
+                return NO_DIGEST;
+            }
+            statements.add(canonicalStatement(triple));
+        }
+        Collections.sort(statements);
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(String.join("\n", statements).getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            //Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String canonicalStatement(Triple triple) {
+        String subject = triple.getSubject().getURI();
+        String object;
+        if(triple.getObject().isLiteral())
+        {
+            object = "\"" + triple.getObject().getLiteralLexicalForm() + "\"^^" + triple.getObject().getLiteralDatatypeURI() + "@" + triple.getObject().getLiteralLanguage();
+        }
+        else
+        {
+            object = triple.getObject().getURI();
+        }
+        return subject + " " + triple.getPredicate().getURI() + " " + object;
+    }
+
+    private static QuadDataAcc toQuads(Node graphNode, Model model) {
+        QuadDataAcc quads = new QuadDataAcc();
+        model.getGraph().find().forEachRemaining(triple -> quads.addQuad(new Quad(graphNode, triple)));
+        return quads;
+    }
+}
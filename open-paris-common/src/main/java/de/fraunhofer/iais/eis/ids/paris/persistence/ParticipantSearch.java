@@ -0,0 +1,21 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Optional extension for Indexing implementations which can answer full-text and keyword searches over the indexed participants
+ */
+public interface ParticipantSearch {
+
+    /**
+     * Function to search for participants
+     * @param queryText Search terms. Supports field restrictions such as "legalForm:GmbH"
+     * @param maxResults Maximum number of results
+     * @return URIs of the matching participants, best matches first
+     * @throws IOException thrown, if the index could not be read
+     * @throws IllegalArgumentException thrown, if the query text cannot be parsed
+     */
+    List<URI> search(String queryText, int maxResults) throws IOException;
+}
@@ -0,0 +1,405 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import de.fraunhofer.iais.eis.ids.component.core.RejectMessageException;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdfconnection.RDFConnection;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.util.FmtUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Snapshot of all active participant graphs in a compact binary RDF format (RDF Thrift), e.g. to bootstrap a new ParIS node
+ * without pulling every participant through SPARQL one by one.
+ * A snapshot is a ZIP archive with two entries: the quads of all graphs ("participants.rt"), written graph by graph,
+ * and a manifest ("manifest.json") with the number of participants and quads and the SHA-256 checksum of the quads.
+ * Snapshots are written as a stream. They are read from a file, such that the checksum can be verified before anything is loaded
+ */
+public class ParticipantSnapshot {
+
+    /**
+     * Receiver of the graphs of a snapshot. Called concurrently for different batches
+     */
+    @FunctionalInterface
+    public interface BatchHandler {
+        /**
+         * @param graphs Map from graph name to the content of the graph
+         * @throws IOException thrown, if the graphs could not be stored
+         * @throws RejectMessageException thrown, if an internal error occurred
+         */
+        void load(Map<String, Model> graphs) throws IOException, RejectMessageException;
+    }
+
+    /**
+     * Content of the manifest of a snapshot
+     */
+    public static class Manifest {
+        private final long participants;
+        private final long quads;
+        private final String sha256;
+        private final String created;
+
+        Manifest(long participants, long quads, String sha256, String created) {
+            this.participants = participants;
+            this.quads = quads;
+            this.sha256 = sha256;
+            this.created = created;
+        }
+
+        public long getParticipants() {
+            return participants;
+        }
+
+        public long getQuads() {
+            return quads;
+        }
+
+        /**
+         * @return Hex-encoded SHA-256 checksum of the uncompressed quads entry
+         */
+        public String getSha256() {
+            return sha256;
+        }
+
+        public String getCreated() {
+            return created;
+        }
+    }
+
+    private static final String QUADS_ENTRY = "participants.rt";
+    private static final String MANIFEST_ENTRY = "manifest.json";
+    private static final String FORMAT = "application/rdf+thrift";
+    private static final int FORMAT_VERSION = 1;
+
+    private final ParticipantRepositoryFacade repositoryFacade;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Logger logger = LoggerFactory.getLogger(ParticipantSnapshot.class);
+
+    /**
+     * Constructor
+     * @param repositoryFacade The triple store from which snapshots are written and into which they are read. Requires direct access to the SPARQL endpoint
+     */
+    public ParticipantSnapshot(ParticipantRepositoryFacade repositoryFacade) {
+        this.repositoryFacade = repositoryFacade;
+    }
+
+    /**
+     * Function to write a snapshot of all active participants. The graphs are fetched in chunks with one SPARQL query each, several chunks concurrently
+     * @param out Stream to which the ZIP archive is written. It is not closed
+     * @param chunkSize Number of graphs per query
+     * @param parallelism Number of concurrent queries
+     * @return The manifest of the written snapshot
+     * @throws IOException thrown, if the snapshot could not be written or the triple store could not be reached
+     * @throws RejectMessageException thrown, if the active graphs could not be determined
+     */
+    public Manifest write(OutputStream out, int chunkSize, int parallelism) throws IOException, RejectMessageException {
+        List<String> graphs = new ArrayList<>();
+        for (String graph : repositoryFacade.getActiveGraphs()) {
+            graphs.add(graph);
+        }
+        MessageDigest digest = sha256();
+        ZipOutputStream zip = new ZipOutputStream(out);
+        zip.putNextEntry(new ZipEntry(QUADS_ENTRY));
+        OutputStream quadsOut = new DigestOutputStream(new FilterOutputStream(zip) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                zip.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                //The ZIP archive remains open for the manifest
+                flush();
+            }
+        }, digest);
+        StreamRDF writer = StreamRDFWriter.getWriterStream(quadsOut, RDFFormat.RDF_THRIFT);
+        long quads = 0;
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+        try {
+            //Chunks are fetched concurrently, but written in order. At most 2 * parallelism chunks are held in memory
+            Deque<Future<Map<Node, List<Triple>>>> pending = new ArrayDeque<>();
+            writer.start();
+            for (int start = 0; start < graphs.size() || !pending.isEmpty(); ) {
+                while (start < graphs.size() && pending.size() < 2 * Math.max(1, parallelism)) {
+                    List<String> chunk = graphs.subList(start, Math.min(start + Math.max(1, chunkSize), graphs.size()));
+                    pending.add(executor.submit(() -> fetchChunk(chunk)));
+                    start += chunk.size();
+                }
+                for (Map.Entry<Node, List<Triple>> graph : pending.poll().get().entrySet()) {
+                    for (Triple triple : graph.getValue()) {
+                        writer.quad(new Quad(graph.getKey(), triple));
+                    }
+                    quads += graph.getValue().size();
+                }
+            }
+            writer.finish();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing snapshot.", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new IOException("Failed to fetch participants from triple store.", e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        quadsOut.close();
+        zip.closeEntry();
+
+        Manifest manifest = new Manifest(graphs.size(), quads, toHex(digest.digest()), Instant.now().toString());
+        ObjectNode manifestJson = objectMapper.valueToTree(manifest);
+        manifestJson.put("format", FORMAT);
+        manifestJson.put("version", FORMAT_VERSION);
+        zip.putNextEntry(new ZipEntry(MANIFEST_ENTRY));
+        zip.write(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(manifestJson));
+        zip.closeEntry();
+        zip.finish();
+        logger.info("Wrote snapshot of " + manifest.getParticipants() + " participants (" + quads + " quads).");
+        return manifest;
+    }
+
+    /**
+     * Internal function which fetches the content of several graphs with a single query
+     * @param graphs Names of the graphs
+     * @return Map from graph name to the triples of the graph
+     */
+    private Map<Node, List<Triple>> fetchChunk(List<String> graphs) {
+        StringBuilder values = new StringBuilder();
+        for (String graph : graphs) {
+            values.append(FmtUtils.stringForNode(NodeFactory.createURI(graph))).append(' ');
+        }
+        Map<Node, List<Triple>> result = new LinkedHashMap<>();
+        try (RDFConnection connection = repositoryFacade.connect()) {
+            connection.querySelect("SELECT ?g ?s ?p ?o WHERE { VALUES ?g { " + values + "} GRAPH ?g { ?s ?p ?o . } }",
+                    solution -> result.computeIfAbsent(solution.getResource("g").asNode(), g -> new ArrayList<>())
+                            .add(Triple.create(solution.get("s").asNode(), solution.get("p").asNode(), solution.get("o").asNode())));
+        }
+        return result;
+    }
+
+    /**
+     * Function to read a snapshot. The checksum is verified first, then the graphs are passed to the handler in batches, several batches concurrently
+     * @param file The snapshot
+     * @param batchSize Number of graphs per batch
+     * @param parallelism Number of batches which are loaded concurrently
+     * @param handler Receiver of the batches
+     * @return The manifest of the snapshot
+     * @throws IOException thrown, if the snapshot could not be read or is corrupt, or if the handler failed
+     * @throws RejectMessageException thrown, if the handler failed
+     */
+    public Manifest read(Path file, int batchSize, int parallelism, BatchHandler handler) throws IOException, RejectMessageException {
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            ZipEntry manifestEntry = zip.getEntry(MANIFEST_ENTRY);
+            ZipEntry quadsEntry = zip.getEntry(QUADS_ENTRY);
+            if(manifestEntry == null || quadsEntry == null)
+            {
+                throw new IOException(file + " is not a ParIS snapshot.");
+            }
+            JsonNode manifestJson;
+            try (InputStream in = zip.getInputStream(manifestEntry)) {
+                manifestJson = objectMapper.readTree(in);
+            }
+            if(!FORMAT.equals(manifestJson.path("format").asText()) || manifestJson.path("version").asInt() != FORMAT_VERSION)
+            {
+                throw new IOException("Unsupported snapshot format " + manifestJson.path("format").asText() + " version " + manifestJson.path("version").asInt() + ".");
+            }
+            Manifest manifest = new Manifest(manifestJson.path("participants").asLong(), manifestJson.path("quads").asLong(),
+                    manifestJson.path("sha256").asText(), manifestJson.path("created").asText());
+
+            MessageDigest digest = sha256();
+            try (InputStream in = new DigestInputStream(zip.getInputStream(quadsEntry), digest)) {
+                byte[] buffer = new byte[65536];
+                while (in.read(buffer) >= 0) {
+                    //Only the checksum is computed
+                }
+            }
+            if(!toHex(digest.digest()).equalsIgnoreCase(manifest.getSha256()))
+            {
+                throw new IOException("Checksum of snapshot " + file + " does not match its manifest.");
+            }
+
+            BatchingStream batches = new BatchingStream(batchSize, parallelism, handler);
+            try (InputStream in = zip.getInputStream(quadsEntry)) {
+                RDFParser.source(in).lang(Lang.RDFTHRIFT).parse(batches);
+            }
+            catch (RuntimeException e)
+            {
+                batches.abort();
+                throw new IOException("Failed to parse snapshot " + file + ".", e);
+            }
+            batches.awaitCompletion();
+            logger.info("Read snapshot of " + batches.graphCount.get() + " participants, created " + manifest.getCreated() + ".");
+            return manifest;
+        }
+    }
+
+    /**
+     * Internal receiver of the parsed quads, which groups them by graph and hands batches of graphs to the handler.
+     * The snapshot contains the quads of each graph consecutively
+     */
+    private static class BatchingStream extends StreamRDFBase {
+        private final int batchSize;
+        private final ExecutorService executor;
+        private final Semaphore inFlight;
+        private final BatchHandler handler;
+        private final List<Future<?>> futures = new ArrayList<>();
+        private final AtomicReference<Exception> failure = new AtomicReference<>();
+        private final AtomicLong graphCount = new AtomicLong();
+
+        private Map<String, Model> batch = new LinkedHashMap<>();
+        private Node currentGraph;
+        private Model currentModel;
+
+        BatchingStream(int batchSize, int parallelism, BatchHandler handler) {
+            this.batchSize = Math.max(1, batchSize);
+            this.executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+            this.inFlight = new Semaphore(Math.max(1, parallelism));
+            this.handler = handler;
+        }
+
+        @Override
+        public void quad(Quad quad) {
+            if(!quad.getGraph().equals(currentGraph))
+            {
+                completeGraph();
+                currentGraph = quad.getGraph();
+                currentModel = ModelFactory.createDefaultModel();
+            }
+            currentModel.getGraph().add(quad.asTriple());
+        }
+
+        @Override
+        public void finish() {
+            completeGraph();
+            submitBatch();
+        }
+
+        private void completeGraph() {
+            if(currentGraph == null)
+            {
+                return;
+            }
+            batch.put(currentGraph.getURI(), currentModel);
+            graphCount.incrementAndGet();
+            currentGraph = null;
+            if(batch.size() >= batchSize)
+            {
+                submitBatch();
+            }
+        }
+
+        private void submitBatch() {
+            if(batch.isEmpty() || failure.get() != null)
+            {
+                return;
+            }
+            Map<String, Model> graphs = batch;
+            batch = new LinkedHashMap<>();
+            //Parsing pauses while all loaders are busy, so that the snapshot is never held in memory as a whole
+            inFlight.acquireUninterruptibly();
+            futures.add(executor.submit(() -> {
+                try {
+                    handler.load(graphs);
+                }
+                catch (Exception e)
+                {
+                    failure.compareAndSet(null, e);
+                }
+                finally {
+                    inFlight.release();
+                }
+            }));
+        }
+
+        void abort() {
+            executor.shutdownNow();
+        }
+
+        void awaitCompletion() throws IOException, RejectMessageException {
+            try {
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading snapshot.", e);
+            }
+            catch (ExecutionException e)
+            {
+                throw new IOException("Failed to load snapshot.", e.getCause());
+            }
+            finally {
+                executor.shutdownNow();
+            }
+            Exception e = failure.get();
+            if(e instanceof IOException)
+            {
+                throw (IOException) e;
+            }
+            if(e instanceof RejectMessageException)
+            {
+                throw (RejectMessageException) e;
+            }
+            if(e != null)
+            {
+                throw new IOException("Failed to load snapshot.", e);
+            }
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            //Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -5,6 +5,7 @@ import de.fraunhofer.iais.eis.ids.component.core.RejectMessageException;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.Collection;
 
 /**
  * Interface which describes the functionality required to provide an indexing service for participants
@@ -26,4 +27,17 @@ public interface ParticipantStatusHandler {
          * @throws RejectMessageException may be thrown, if the update is not permitted or if an internal error occurs
          */
         void updated(Participant participant) throws IOException, RejectMessageException;
+
+        /**
+         * Function to persist and index many participants at once, e.g. when onboarding a data space.
+         * The default implementation handles the participants one by one. Implementations should group the writes into batches
+         * @param participants The participants which were announced to the ParIS
+         * @throws IOException may be thrown, if the connection to the repository could not be established
+         * @throws RejectMessageException may be thrown, if an update is not permitted or if an internal error occurs
+         */
+        default void updatedAll(Collection<Participant> participants) throws IOException, RejectMessageException {
+                for (Participant participant : participants) {
+                        updated(participant);
+                }
+        }
 }
@@ -0,0 +1,175 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Query;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.OpVisitorBase;
+import org.apache.jena.sparql.algebra.OpWalker;
+import org.apache.jena.sparql.algebra.op.OpBGP;
+import org.apache.jena.sparql.algebra.op.OpPath;
+import org.apache.jena.sparql.algebra.op.OpTriple;
+import org.apache.jena.sparql.core.TriplePath;
+import org.apache.jena.sparql.path.P_OneOrMore1;
+import org.apache.jena.sparql.path.P_OneOrMoreN;
+import org.apache.jena.sparql.path.P_ZeroOrMore1;
+import org.apache.jena.sparql.path.P_ZeroOrMoreN;
+import org.apache.jena.sparql.path.Path;
+import org.apache.jena.sparql.path.PathVisitorBase;
+import org.apache.jena.sparql.path.PathWalker;
+
+import java.util.*;
+
+/**
+ * Cheap static estimate of the cost of a query, which is computed from the query algebra without touching the triple store.
+ * Each triple pattern is assigned a cost depending on how many of its positions are variables, and unbounded property paths
+ * (* and +) between two variables are considered very expensive. Patterns which share variables are joined, so the most selective
+ * pattern of such a group bounds its cost. Groups which share no variables form a cross product, so their costs are multiplied.
+ * The estimate is only meant to reject obviously unbounded queries, such as cross products of unrestricted patterns
+ */
+public class QueryCostEstimator {
+
+    private static final double[] PATTERN_COST_BY_VARIABLES = { 1, 10, 1000, 100000 };
+    private static final double UNBOUNDED_PATH_COST = 10000000;
+
+    private final double maxCost;
+
+    /**
+     * Constructor
+     * @param maxCost Maximum estimated cost of an admissible query. 0 disables the check
+     */
+    public QueryCostEstimator(double maxCost) {
+        this.maxCost = maxCost;
+    }
+
+    /**
+     * Function to determine whether a query may be evaluated
+     * @param query The parsed query
+     * @return true, if the estimated cost of the query does not exceed the maximum cost
+     */
+    public boolean isAdmissible(Query query) {
+        return maxCost <= 0 || estimate(query) <= maxCost;
+    }
+
+    /**
+     * @return Maximum estimated cost of an admissible query
+     */
+    public double getMaxCost() {
+        return maxCost;
+    }
+
+    /**
+     * Function to estimate the cost of a query
+     * @param query The parsed query
+     * @return estimated cost, at least 1
+     */
+    public static double estimate(Query query) {
+        List<Set<Node>> patternVariables = new ArrayList<>();
+        List<Double> patternCosts = new ArrayList<>();
+        OpWalker.walk(Algebra.compile(query), new OpVisitorBase() {
+            @Override
+            public void visit(OpBGP opBGP) {
+                opBGP.getPattern().forEach(this::addTriple);
+            }
+
+            @Override
+            public void visit(OpTriple opTriple) {
+                addTriple(opTriple.getTriple());
+            }
+
+            @Override
+            public void visit(OpPath opPath) {
+                TriplePath triplePath = opPath.getTriplePath();
+                Set<Node> variables = variablesOf(triplePath.getSubject(), triplePath.getObject());
+                //A path may match any number of triples, so it is treated like a pattern with one more variable
+                double cost = PATTERN_COST_BY_VARIABLES[variables.size() + 1];
+                if(variables.size() == 2 && isUnbounded(triplePath.getPath()))
+                {
+                    cost = UNBOUNDED_PATH_COST;
+                }
+                patternVariables.add(variables);
+                patternCosts.add(cost);
+            }
+
+            private void addTriple(Triple triple) {
+                Set<Node> variables = variablesOf(triple.getSubject(), triple.getPredicate(), triple.getObject());
+                patternVariables.add(variables);
+                patternCosts.add(PATTERN_COST_BY_VARIABLES[variables.size()]);
+            }
+        });
+
+        //Group patterns which are connected by shared variables
+        int[] group = new int[patternVariables.size()];
+        for (int i = 0; i < group.length; i++) {
+            group[i] = i;
+        }
+        for (int i = 0; i < group.length; i++) {
+            for (int j = i + 1; j < group.length; j++) {
+                if(!Collections.disjoint(patternVariables.get(i), patternVariables.get(j)))
+                {
+                    union(group, i, j);
+                }
+            }
+        }
+        Map<Integer, Double> groupCosts = new HashMap<>();
+        for (int i = 0; i < group.length; i++) {
+            groupCosts.merge(find(group, i), patternCosts.get(i), Math::min);
+        }
+
+        double cost = 1;
+        for (double groupCost : groupCosts.values()) {
+            cost *= groupCost;
+        }
+        return cost;
+    }
+
+    private static Set<Node> variablesOf(Node... nodes) {
+        Set<Node> variables = new HashSet<>();
+        for (Node node : nodes) {
+            if(node.isVariable() || node.isBlank())
+            {
+                variables.add(node);
+            }
+        }
+        return variables;
+    }
+
+    private static boolean isUnbounded(Path path) {
+        boolean[] unbounded = { false };
+        PathWalker.walk(path, new PathVisitorBase() {
+            @Override
+            public void visit(P_ZeroOrMore1 path) {
+                unbounded[0] = true;
+            }
+
+            @Override
+            public void visit(P_ZeroOrMoreN path) {
+                unbounded[0] = true;
+            }
+
+            @Override
+            public void visit(P_OneOrMore1 path) {
+                unbounded[0] = true;
+            }
+
+            @Override
+            public void visit(P_OneOrMoreN path) {
+                unbounded[0] = true;
+            }
+        });
+        return unbounded[0];
+    }
+
+    private static int find(int[] group, int i) {
+        while(group[i] != i)
+        {
+            group[i] = group[group[i]];
+            i = group[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] group, int i, int j) {
+        group[find(group, i)] = find(group, j);
+    }
+}
@@ -0,0 +1,55 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import java.time.Duration;
+
+/**
+ * Server-side limits which are enforced for participant queries
+ */
+public class QueryLimits {
+
+    private final long maxRows;
+    private final long maxBytes;
+    private final Duration timeout;
+    private final boolean limitRequired;
+
+    /**
+     * Constructor. SELECT queries received via IDS messages are not required to have a LIMIT
+     * @param maxRows Maximum number of result rows of a streamed query result, which is cut off after this many rows
+     * @param maxBytes Maximum size of a serialized query result in bytes
+     * @param timeout Maximum execution time of a query
+     */
+    public QueryLimits(long maxRows, long maxBytes, Duration timeout) {
+        this(maxRows, maxBytes, timeout, false);
+    }
+
+    /**
+     * Constructor
+     * @param maxRows Maximum number of result rows of a streamed query result, which is cut off after this many rows
+     * @param maxBytes Maximum size of a serialized query result in bytes
+     * @param timeout Maximum execution time of a query
+     * @param limitRequired true, if SELECT queries received via IDS messages are rejected unless they have a LIMIT of at most maxRows.
+     * Their results are never cut off, as the client could not be told
+     */
+    public QueryLimits(long maxRows, long maxBytes, Duration timeout, boolean limitRequired) {
+        this.maxRows = maxRows;
+        this.maxBytes = maxBytes;
+        this.timeout = timeout;
+        this.limitRequired = limitRequired;
+    }
+
+    public long getMaxRows() {
+        return maxRows;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public boolean isLimitRequired() {
+        return limitRequired;
+    }
+}
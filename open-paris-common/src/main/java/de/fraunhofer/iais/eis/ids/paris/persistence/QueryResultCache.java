@@ -0,0 +1,318 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import org.apache.jena.query.Query;
+import org.apache.jena.sparql.algebra.Algebra;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of query results. Results are bounded by their size in UTF-8, i.e. by the size in which they are sent to clients.
+ * Queries are keyed by their normalized form, i.e. by the compiled SPARQL algebra plus query form and prefixes, such that queries which
+ * only differ in whitespace, comments, line breaks or the order of prefix declarations share an entry.
+ * All entries are tied to a global registry version. Every modification of the registry increments the version, which invalidates all
+ * cached results at once, as it cannot be determined cheaply which results a modification affects.
+ * Hit, miss and latency statistics are kept per normalized query
+ */
+public class QueryResultCache {
+
+    private static class Entry {
+        final String result;
+        final long version;
+        final long bytes;
+
+        Entry(String result, long version, long bytes) {
+            this.result = result;
+            this.version = version;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Statistics of a single normalized query
+     */
+    public static class QueryStatistics {
+        private final String query;
+        private long hits;
+        private long misses;
+        private long totalEvaluationNanos;
+        private long maxEvaluationNanos;
+
+        QueryStatistics(String query) {
+            this.query = query;
+        }
+
+        private QueryStatistics(QueryStatistics other) {
+            this.query = other.query;
+            this.hits = other.hits;
+            this.misses = other.misses;
+            this.totalEvaluationNanos = other.totalEvaluationNanos;
+            this.maxEvaluationNanos = other.maxEvaluationNanos;
+        }
+
+        /**
+         * @return The normalized query
+         */
+        public String getQuery() {
+            return query;
+        }
+
+        /**
+         * @return Number of evaluations of this query which were answered from the cache
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * @return Number of evaluations of this query which had to be sent to the triple store
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return Average time in milliseconds the triple store needed to evaluate this query
+         */
+        public double getAverageEvaluationMillis() {
+            return misses == 0 ? 0 : totalEvaluationNanos / (misses * 1e6);
+        }
+
+        /**
+         * @return Maximum time in milliseconds the triple store needed to evaluate this query
+         */
+        public double getMaxEvaluationMillis() {
+            return maxEvaluationNanos / 1e6;
+        }
+    }
+
+    private static final int MAX_TRACKED_QUERIES = 1000;
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+
+    //Incremented on every modification of the registry. Entries of older versions are outdated
+    private final AtomicLong version = new AtomicLong();
+
+    private final LinkedHashMap<String, QueryStatistics> statistics = new LinkedHashMap<String, QueryStatistics>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, QueryStatistics> eldest) {
+            return size() > MAX_TRACKED_QUERIES;
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Constructor
+     * @param maxBytes Maximum total size (in bytes, UTF-8 encoded) of all cached results. 0 disables the cache
+     * @param maxEntryBytes Maximum size (in bytes, UTF-8 encoded) of a single result. Larger results are not cached
+     */
+    public QueryResultCache(long maxBytes, long maxEntryBytes) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxBytes, maxEntryBytes);
+    }
+
+    /**
+     * Function to compute the cache key of a query
+     * @param query The parsed query
+     * @return normalized form of the query
+     */
+    public static String normalize(Query query) {
+        StringBuilder key = new StringBuilder();
+        key.append(query.queryType()).append('\n');
+        //The prefixes may be used when serializing the result, so they are part of the key, but their order is not
+        key.append(new TreeMap<>(query.getPrefixMapping().getNsPrefixMap())).append('\n');
+        if(query.isConstructType())
+        {
+            key.append(query.getConstructTemplate()).append('\n');
+        }
+        if(query.isDescribeType())
+        {
+            key.append(query.getResultURIs()).append(query.getResultVars()).append('\n');
+        }
+        key.append(Algebra.compile(query));
+        return key.toString();
+    }
+
+    /**
+     * Function to obtain a stamp which has to be passed to {@link #put(String, String, long, long)}.
+     * It must be obtained before the query is evaluated
+     * @return current registry version
+     */
+    public long stamp() {
+        return version.get();
+    }
+
+    /**
+     * Function to look up the result of a query
+     * @param key Normalized query, see {@link #normalize(Query)}
+     * @return The cached result, or null if no result of the current registry version is cached
+     */
+    public synchronized String get(String key) {
+        Entry entry = entries.get(key);
+        if(entry != null && entry.version == version.get())
+        {
+            hits.incrementAndGet();
+            statisticsOf(key).hits++;
+            return entry.result;
+        }
+        if(entry != null)
+        {
+            remove(key);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Function to add a query result to the cache and to record the evaluation time of the query.
+     * The result is not cached if the registry was modified after the stamp was obtained, as it might already be outdated in that case
+     * @param key Normalized query, see {@link #normalize(Query)}
+     * @param result The query result
+     * @param stamp Stamp obtained via {@link #stamp()} before the query was evaluated
+     * @param evaluationNanos Time the evaluation of the query took
+     */
+    public synchronized void put(String key, String result, long stamp, long evaluationNanos) {
+        QueryStatistics queryStatistics = statisticsOf(key);
+        queryStatistics.misses++;
+        queryStatistics.totalEvaluationNanos += evaluationNanos;
+        queryStatistics.maxEvaluationNanos = Math.max(queryStatistics.maxEvaluationNanos, evaluationNanos);
+
+        //A string is at least as long in UTF-8 as it has characters, so larger results are not measured
+        if(maxBytes == 0 || result.length() > maxEntryBytes || stamp != version.get())
+        {
+            return;
+        }
+        long bytes = utf8Length(result);
+        if(bytes > maxEntryBytes)
+        {
+            return;
+        }
+        remove(key);
+        entries.put(key, new Entry(result, stamp, bytes));
+        totalBytes += bytes;
+
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while(totalBytes > maxBytes && iterator.hasNext())
+        {
+            totalBytes -= iterator.next().getValue().bytes;
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Function to invalidate all cached results, because the registry was modified
+     */
+    public synchronized void invalidateAll() {
+        version.incrementAndGet();
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if(removed != null)
+        {
+            totalBytes -= removed.bytes;
+        }
+    }
+
+    /**
+     * Computes the size of a string in UTF-8 without encoding it
+     * @param value The string
+     * @return Number of bytes of the UTF-8 encoded string
+     */
+    static long utf8Length(String value) {
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c < 0x80)
+            {
+                length++;
+            }
+            else if(c < 0x800)
+            {
+                length += 2;
+            }
+            else if(Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1)))
+            {
+                //Characters outside the basic multilingual plane
+                length += 4;
+                i++;
+            }
+            else if(Character.isSurrogate(c))
+            {
+                //Unpaired surrogates are replaced by '?' when encoding
+                length++;
+            }
+            else
+            {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private QueryStatistics statisticsOf(String key) {
+        return statistics.computeIfAbsent(key, QueryStatistics::new);
+    }
+
+    /**
+     * @return Snapshot of the statistics of the most recently evaluated queries, ordered by number of evaluations (descending)
+     */
+    public synchronized List<QueryStatistics> getStatistics() {
+        List<QueryStatistics> snapshot = new ArrayList<>(statistics.size());
+        statistics.values().forEach(queryStatistics -> snapshot.add(new QueryStatistics(queryStatistics)));
+        snapshot.sort(Comparator.comparingLong((QueryStatistics queryStatistics) -> queryStatistics.hits + queryStatistics.misses).reversed());
+        return snapshot;
+    }
+
+    /**
+     * @return Current registry version
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * @return Number of lookups which were answered from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return Number of lookups which were not answered from the cache
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return Number of entries which were evicted because the maximum size was exceeded
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return Share of lookups which were answered from the cache, between 0 and 1
+     */
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    /**
+     * @return Current total size (in bytes, UTF-8 encoded) of all cached results
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+}
@@ -0,0 +1,107 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import de.fraunhofer.iais.eis.ids.jsonld.Serializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An infomodel object which was serialized to JSON-LD once, such that it can be served repeatedly without serializing it again.
+ * The serialization is kept as string for IDS messages, whose payload is a string, and UTF-8 encoded for HTTP responses.
+ * The gzip-compressed form is created on first demand and kept as well. Each form has an entity tag derived from its content,
+ * so that clients can revalidate cached copies cheaply.
+ * The byte arrays are shared between callers and must not be modified
+ */
+public class RenderedDocument {
+
+    private final String text;
+    private final byte[] content;
+    private final String etag;
+    private volatile byte[] gzipped;
+
+    private RenderedDocument(String text) {
+        this.text = text;
+        this.content = text.getBytes(StandardCharsets.UTF_8);
+        this.etag = computeEtag(content);
+    }
+
+    /**
+     * Function to serialize an infomodel object
+     * @param infomodelObject The object, e.g. a participant or the self-description of this ParIS
+     * @param serializer Serializer to be used
+     * @return The serialized object
+     * @throws IOException thrown, if the object could not be serialized
+     */
+    public static RenderedDocument render(Object infomodelObject, Serializer serializer) throws IOException {
+        return new RenderedDocument(serializer.serialize(infomodelObject));
+    }
+
+    /**
+     * @return The JSON-LD serialization, e.g. as payload of an IDS message
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return The JSON-LD serialization, UTF-8 encoded
+     */
+    public byte[] getContent() {
+        return content;
+    }
+
+    /**
+     * @return The gzip-compressed JSON-LD serialization. Compressed on the first call
+     */
+    public byte[] getGzippedContent() {
+        byte[] result = gzipped;
+        if(result == null)
+        {
+            //Concurrent first calls may compress twice, which yields identical results
+            result = gzip(content);
+            gzipped = result;
+        }
+        return result;
+    }
+
+    /**
+     * @param gzip true for the entity tag of the gzip-compressed form
+     * @return Quoted entity tag of the requested form, which changes whenever the content changes
+     */
+    public String getEtag(boolean gzip) {
+        return gzip ? "\"" + etag + "-gz\"" : "\"" + etag + "\"";
+    }
+
+    private static byte[] gzip(byte[] content) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(content);
+        }
+        catch (IOException e)
+        {
+            //Not thrown by in-memory streams
+            throw new IllegalStateException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static String computeEtag(byte[] content) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            //Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
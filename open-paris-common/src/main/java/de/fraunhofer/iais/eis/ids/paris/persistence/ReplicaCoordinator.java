@@ -0,0 +1,237 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.query.ParameterizedSparqlString;
+import org.apache.jena.rdfconnection.RDFConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinates several ParIS replicas which share one triple store. The coordination data is kept in the default graph of the triple store,
+ * such that it never shows up among the participant graphs, and no further infrastructure is required.
+ * <ul>
+ *     <li>Leader election: the replicas compete for a lease with a fixed duration. Only the holder of the lease runs the periodic background jobs</li>
+ *     <li>Invalidation: every write is appended to the {@link ChangeLog}, together with the replica which made it. Each replica follows
+ *     the entries of the other replicas and invalidates the affected cache entries</li>
+ * </ul>
+ * All decisions are based on the clock of the triple store, so the clocks of the replicas need not be synchronized.
+ * The lease is renewed on a thread of its own, such that a listener which takes long, e.g. for a resynchronization, cannot delay the renewal
+ */
+public class ReplicaCoordinator implements Closeable {
+
+    /**
+     * Receiver of changes which were made by other replicas
+     */
+    public interface ChangeListener {
+
+        /**
+         * Called for each participant graph which was modified by another replica
+         * @param graph Name of the graph
+         */
+        void changed(String graph);
+
+        /**
+         * Called if changes were missed, e.g. because this replica could not reach the triple store for longer than the retention of the change log,
+         * or because a modification could not be recorded. All caches have to be considered outdated
+         */
+        void resynchronize();
+    }
+
+    private static final String PREFIXES = "PREFIX paris: <urn:paris:coordination:> " +
+            "PREFIX xsd: <http://www.w3.org/2001/XMLSchema#> ";
+    private static final String LEASE = "urn:paris:coordination:lease:background-jobs";
+    //Maximum number of change log entries which are read at once
+    private static final int POLL_LIMIT = 1000;
+
+    private final ParticipantRepositoryFacade repositoryFacade;
+    private final ChangeLog changeLog;
+    private final String replicaId;
+    private final Duration leaseDuration;
+    private final Duration pollInterval;
+    private final ScheduledExecutorService leaseScheduler;
+    //Polls the change log and runs the listener
+    private final ScheduledExecutorService eventScheduler;
+    private final Logger logger = LoggerFactory.getLogger(ReplicaCoordinator.class);
+
+    private ChangeListener listener;
+    private volatile long leaderUntil = 0;
+    private long lastSequence = -1;
+
+    /**
+     * Constructor
+     * @param repositoryFacade The triple store which is shared by all replicas
+     * @param changeLog The change log in this triple store. Its origin identifies this replica and must be unique among all replicas
+     * @param leaseDuration Duration of the lease. If the leader fails, another replica takes over after at most this duration
+     * @param pollInterval Interval in which the changes of other replicas are polled
+     */
+    public ReplicaCoordinator(ParticipantRepositoryFacade repositoryFacade, ChangeLog changeLog, Duration leaseDuration, Duration pollInterval) {
+        this.repositoryFacade = repositoryFacade;
+        this.changeLog = changeLog;
+        this.replicaId = changeLog.getOrigin();
+        this.leaseDuration = leaseDuration;
+        this.pollInterval = pollInterval;
+        this.leaseScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "paris-replica-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.eventScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "paris-replica-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Function to join the group of replicas. Changes which were made before are not delivered
+     * @param listener Receiver of the changes made by other replicas
+     */
+    public void start(ChangeListener listener) {
+        this.listener = listener;
+        long renewalInterval = leaseDuration.toMillis() / 3;
+        leaseScheduler.scheduleWithFixedDelay(this::renewLease, 0, renewalInterval, TimeUnit.MILLISECONDS);
+        eventScheduler.scheduleWithFixedDelay(this::poll, 0, pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+        logger.info("Joined replica group as " + replicaId);
+    }
+
+    /**
+     * @return Identifier of this replica
+     */
+    public String getReplicaId() {
+        return replicaId;
+    }
+
+    /**
+     * @return true, if this replica currently holds the lease and should run the background jobs
+     */
+    public boolean isLeader() {
+        return System.currentTimeMillis() < leaderUntil;
+    }
+
+    /**
+     * @return The change log through which modifications are exchanged with the other replicas
+     */
+    public ChangeLog getChangeLog() {
+        return changeLog;
+    }
+
+    /**
+     * Internal function which acquires or renews the lease. The lease is taken over, if it has expired
+     */
+    private void renewLease() {
+        long start = System.currentTimeMillis();
+        try {
+            ParameterizedSparqlString update = new ParameterizedSparqlString(PREFIXES +
+                    "DELETE { ?lease ?p ?o . } " +
+                    "INSERT { ?lease paris:holder ?replica ; paris:expires ?newExpires . } " +
+                    "WHERE { " +
+                    "OPTIONAL { ?lease paris:holder ?holder ; paris:expires ?expires . } " +
+                    "FILTER(!BOUND(?holder) || ?holder = ?replica || ?expires < NOW()) " +
+                    "OPTIONAL { ?lease ?p ?o . } " +
+                    "BIND(NOW() + ?duration AS ?newExpires) }");
+            update.setIri("lease", LEASE);
+            update.setLiteral("replica", replicaId);
+            update.setLiteral("duration", "PT" + leaseDuration.getSeconds() + "S", XSDDatatype.XSDdayTimeDuration);
+            repositoryFacade.update(update.asUpdate());
+
+            ParameterizedSparqlString query = new ParameterizedSparqlString(PREFIXES + "SELECT ?holder WHERE { ?lease paris:holder ?holder . }");
+            query.setIri("lease", LEASE);
+            List<String> holders = new ArrayList<>();
+            try (RDFConnection connection = repositoryFacade.connect()) {
+                connection.querySelect(query.asQuery(), solution -> holders.add(solution.getLiteral("holder").getString()));
+            }
+            boolean wasLeader = isLeader();
+            //Leadership ends one renewal interval before the lease expires, so that a delayed renewal cannot lead to two leaders
+            leaderUntil = holders.contains(replicaId) ? start + leaseDuration.toMillis() * 2 / 3 : 0;
+            if(wasLeader != isLeader())
+            {
+                logger.info(isLeader() ? "This replica is now the leader." : "This replica is no longer the leader.");
+            }
+        }
+        catch (RuntimeException e)
+        {
+            logger.warn("Failed to renew lease.", e);
+        }
+    }
+
+    /**
+     * Internal function which delivers the changes of other replicas to the listener
+     */
+    private void poll() {
+        try {
+            if(lastSequence < 0)
+            {
+                lastSequence = changeLog.getLastSequence();
+                return;
+            }
+            ChangeLog.ChangeSet changeSet;
+            do {
+                changeSet = changeLog.getChanges(lastSequence, POLL_LIMIT);
+                if(changeSet.isResyncRequired())
+                {
+                    //The missing entries were removed before they could be delivered, or were never recorded
+                    logger.warn("Missed changes of other replicas. Resynchronizing.");
+                    lastSequence = changeSet.getLastSequence();
+                    listener.resynchronize();
+                    return;
+                }
+                Set<String> graphs = new LinkedHashSet<>();
+                for (ChangeLog.Change change : changeSet.getChanges()) {
+                    if(!replicaId.equals(change.getOrigin()))
+                    {
+                        graphs.add(change.getParticipant());
+                    }
+                    lastSequence = change.getSequence();
+                }
+                graphs.forEach(listener::changed);
+            } while (changeSet.isIncomplete());
+        }
+        catch (RuntimeException e)
+        {
+            logger.warn("Failed to poll changes of other replicas.", e);
+        }
+    }
+
+    /**
+     * Leaves the group of replicas. If this replica is the leader, the lease is released, such that another replica takes over immediately
+     */
+    @Override
+    public void close() {
+        leaseScheduler.shutdownNow();
+        eventScheduler.shutdownNow();
+        try {
+            //A renewal which is still running must not take the lease again after it was released
+            leaseScheduler.awaitTermination(leaseDuration.toMillis() / 3, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        if(!isLeader())
+        {
+            return;
+        }
+        leaderUntil = 0;
+        try {
+            ParameterizedSparqlString update = new ParameterizedSparqlString(PREFIXES +
+                    "DELETE WHERE { ?lease paris:holder ?replica ; paris:expires ?expires . }");
+            update.setIri("lease", LEASE);
+            update.setLiteral("replica", replicaId);
+            repositoryFacade.update(update.asUpdate());
+        }
+        catch (RuntimeException e)
+        {
+            logger.warn("Failed to release lease.", e);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks, each of which guards all keys that hash to it.
+ * Operations on the same key are serialized, while operations on keys that map to different stripes can run in parallel
+ */
+public class StripedLock {
+
+    private final ReentrantLock[] stripes;
+
+    /**
+     * Constructor
+     * @param minimumStripes Minimum number of stripes. The actual number is rounded up to the next power of two
+     */
+    public StripedLock(int minimumStripes) {
+        int size = 1;
+        while(size < minimumStripes)
+        {
+            size <<= 1;
+        }
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Function to obtain the lock which guards a key
+     * @param key The key
+     * @return Lock guarding the key
+     */
+    public Lock get(Object key) {
+        return stripes[indexOf(key)];
+    }
+
+    /**
+     * Function to obtain the locks which guard several keys, e.g. to lock a whole batch.
+     * Each lock is contained only once, and the locks are always returned in the same global order,
+     * so acquiring them in the returned order cannot deadlock with another caller doing the same
+     * @param keys The keys
+     * @return Locks guarding the keys, in acquisition order
+     */
+    public List<Lock> getAll(Collection<?> keys) {
+        TreeSet<Integer> indices = new TreeSet<>();
+        for (Object key : keys) {
+            indices.add(indexOf(key));
+        }
+        List<Lock> locks = new ArrayList<>(indices.size());
+        for (int index : indices) {
+            locks.add(stripes[index]);
+        }
+        return locks;
+    }
+
+    private int indexOf(Object key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16); //Spread higher bits, as only the lower bits select the stripe
+        return hash & (stripes.length - 1);
+    }
+}
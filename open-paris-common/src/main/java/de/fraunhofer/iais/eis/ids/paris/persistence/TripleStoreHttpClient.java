@@ -0,0 +1,164 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import de.fraunhofer.iais.eis.ids.component.core.RejectMessageException;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.client.LaxRedirectStrategy;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.jena.riot.web.HttpOp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP client for all traffic to the triple store. Connections are pooled and kept alive between requests,
+ * such that a registration, which consists of several sequential requests, does not pay for a TCP (and TLS) handshake per request.
+ * Once installed, the client is used by every Jena component which talks to a SPARQL endpoint,
+ * including the RepositoryFacade and the connections opened by {@link ParticipantRepositoryFacade#connect()}.
+ * In addition, the client provides a bounded executor for issuing independent lookups concurrently,
+ * and limits the time for which the requests of a thread wait for the triple store, see {@link #withRequestTimeout(Duration, AdmissionController.Task)}
+ */
+public class TripleStoreHttpClient implements Closeable {
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final ThreadPoolExecutor lookupExecutor;
+    private final Logger logger = LoggerFactory.getLogger(TripleStoreHttpClient.class);
+
+    //Socket timeout in milliseconds for the requests of the current thread, which overrides the default of the client
+    private static final ThreadLocal<Integer> REQUEST_TIMEOUT = new ThreadLocal<>();
+
+    private HttpClient previousClient;
+
+    /**
+     * Constructor
+     * @param maxConnections Maximum number of connections to the triple store
+     * @param keepAlive Time after which idle connections are closed
+     * @param connectTimeout Maximum time to establish a connection, or to wait for a free connection of the pool
+     */
+    public TripleStoreHttpClient(int maxConnections, Duration keepAlive, Duration connectTimeout) {
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        //All requests go to the same triple store, so a single route may use the entire pool
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        //Connections which were closed by the server while idle are detected before they are reused
+        connectionManager.setValidateAfterInactivity(2000);
+
+        long keepAliveMillis = keepAlive.toMillis();
+        this.httpClient = HttpClients.custom()
+                .useSystemProperties() //Proxy settings
+                .setConnectionManager(connectionManager)
+                .setRedirectStrategy(LaxRedirectStrategy.INSTANCE) //Same as the Jena default client
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout((int) connectTimeout.toMillis())
+                        .setConnectionRequestTimeout((int) connectTimeout.toMillis())
+                        .build())
+                .setKeepAliveStrategy((response, context) -> {
+                    //Respect a shorter keep-alive announced by the server
+                    long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAliveMillis) : keepAliveMillis;
+                })
+                .addInterceptorLast((HttpRequestInterceptor) (request, context) -> {
+                    Integer timeout = REQUEST_TIMEOUT.get();
+                    if(timeout != null)
+                    {
+                        //Interceptors run before the request is sent, so the socket timeout of the connection is taken from here
+                        HttpClientContext clientContext = HttpClientContext.adapt(context);
+                        clientContext.setRequestConfig(RequestConfig.copy(clientContext.getRequestConfig()).setSocketTimeout(timeout).build());
+                    }
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAliveMillis, TimeUnit.MILLISECONDS)
+                .build();
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.lookupExecutor = new ThreadPoolExecutor(maxConnections, maxConnections, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "paris-triple-store-lookup-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.lookupExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Function to make this client the default HTTP client of Jena, such that all SPARQL requests use its connection pool
+     */
+    public void install() {
+        previousClient = HttpOp.getDefaultHttpClient();
+        HttpOp.setDefaultHttpClient(httpClient);
+    }
+
+    /**
+     * Function to run a task whose requests to the triple store must not wait longer than the timeout for data, e.g. the evaluation of a query
+     * by the RepositoryFacade, which does not expose its QueryExecution. Applies to all requests of the current thread which are sent through an installed client.
+     * Once the timeout elapses, the request fails and the connection is closed, which also makes the triple store stop sending the result
+     * @param timeout Maximum time to wait for data
+     * @param task The task
+     * @param <T> Type of the result
+     * @return Result of the task
+     * @throws IOException thrown, if the task throws it
+     * @throws RejectMessageException thrown, if the task throws it
+     */
+    public static <T> T withRequestTimeout(Duration timeout, AdmissionController.Task<T> task) throws IOException, RejectMessageException {
+        Integer previous = REQUEST_TIMEOUT.get();
+        REQUEST_TIMEOUT.set((int) Math.min(Integer.MAX_VALUE, Math.max(1, timeout.toMillis())));
+        try {
+            return task.call();
+        }
+        finally {
+            if(previous == null)
+            {
+                REQUEST_TIMEOUT.remove();
+            }
+            else
+            {
+                REQUEST_TIMEOUT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * @return Executor for requests to the triple store which can be issued concurrently. Bounded by the size of the connection pool
+     */
+    public Executor getLookupExecutor() {
+        return lookupExecutor;
+    }
+
+    /**
+     * @return Number of connections, leased connections, pending connection requests and the maximum size of the connection pool
+     */
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    /**
+     * Restores the previous default HTTP client of Jena and closes all pooled connections
+     */
+    @Override
+    public void close() {
+        if(HttpOp.getDefaultHttpClient() == httpClient)
+        {
+            HttpOp.setDefaultHttpClient(previousClient);
+        }
+        lookupExecutor.shutdownNow();
+        try {
+            httpClient.close();
+        }
+        catch (IOException e)
+        {
+            logger.warn("Failed to close triple store connections.", e);
+        }
+    }
+}
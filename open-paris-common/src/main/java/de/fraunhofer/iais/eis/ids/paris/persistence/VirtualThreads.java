@@ -0,0 +1,78 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads, which are provided by Java 21 and newer.
+ * The ParIS is compiled for Java 11, so virtual threads are looked up at runtime. On older runtimes, they are reported as unavailable.
+ * A virtual thread which blocks on I/O, e.g. on a request to the triple store or the DAPS, releases its carrier thread,
+ * so that the number of concurrently processed messages is no longer bounded by the size of a thread pool
+ */
+public class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true, if the Java runtime supports virtual threads
+     */
+    public static boolean isAvailable() {
+        return findFactory() != null;
+    }
+
+    /**
+     * Function to create an executor which starts a new virtual thread per task
+     * @return The executor, or null if the Java runtime does not support virtual threads
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        Method factory = findFactory();
+        if(factory == null)
+        {
+            return null;
+        }
+        try {
+            return (ExecutorService) factory.invoke(null);
+        }
+        catch (IllegalAccessException | InvocationTargetException e)
+        {
+            throw new IllegalStateException("Failed to create virtual thread executor.", e);
+        }
+    }
+
+    /**
+     * Function to create a factory of virtual threads, e.g. for the workers of a bounded pool
+     * @param namePrefix Prefix of the thread names, which is followed by a counter starting at 1
+     * @return The thread factory, or null if the Java runtime does not support virtual threads
+     */
+    public static ThreadFactory newVirtualThreadFactory(String namePrefix) {
+        if(!isAvailable())
+        {
+            return null;
+        }
+        try {
+            //The builder implementations are not public, so their methods are invoked through the public interfaces
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 1L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        }
+        catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | InvocationTargetException e)
+        {
+            throw new IllegalStateException("Failed to create virtual thread factory.", e);
+        }
+    }
+
+    private static Method findFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        }
+        catch (NoSuchMethodException e)
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import de.fraunhofer.iais.eis.Participant;
+import de.fraunhofer.iais.eis.ParticipantBuilder;
+import de.fraunhofer.iais.eis.RejectionReason;
+import de.fraunhofer.iais.eis.ids.component.core.RejectMessageException;
+import de.fraunhofer.iais.eis.util.TypedLiteral;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.sparql.util.IsoMatcher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.*;
+
+import static de.fraunhofer.iais.eis.util.Util.asList;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Announces the same participants individually to one dataset and in batches to another one,
+ * and checks that both datasets end up with the same content, including the passivation state
+ */
+public class BulkRegistrationTest {
+
+    private static final URI FIRST = URI.create("https://participants.example.org/bulk/0");
+    private static final URI SECOND = URI.create("https://participants.example.org/bulk/1");
+
+    private TestTripleStore tripleStore;
+    private Dataset singleDataset;
+    private Dataset batchDataset;
+    private ParticipantPersistenceAndIndexing single;
+    private ParticipantPersistenceAndIndexing batch;
+
+    @BeforeEach
+    public void setUp() {
+        tripleStore = TestTripleStore.start("single", "batch");
+        singleDataset = tripleStore.dataset("single");
+        batchDataset = tripleStore.dataset("batch");
+        single = new ParticipantPersistenceAndIndexing(new ParticipantRepositoryFacade(tripleStore.endpoint("single")), URI.create("http://localhost:8080/catalog/"));
+        batch = new ParticipantPersistenceAndIndexing(new ParticipantRepositoryFacade(tripleStore.endpoint("batch")), URI.create("http://localhost:8080/catalog/"));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        single.getAdmissionController().close();
+        batch.getAdmissionController().close();
+        tripleStore.close();
+    }
+
+    @Test
+    public void batchesStoreParticipantsLikeSingleAnnouncements() throws Exception {
+        //New participants
+        single.updated(participant(FIRST, "first revision"));
+        single.updated(participant(SECOND, "first revision"));
+        batch.updatedAll(Arrays.asList(participant(FIRST, "first revision"), participant(SECOND, "first revision")));
+        assertSameContent();
+
+        //An active participant changes, and a passivated one is announced again
+        single.unavailable(SECOND);
+        batch.unavailable(SECOND);
+        single.updated(participant(FIRST, "second revision"));
+        single.updated(participant(SECOND, "second revision"));
+        batch.updatedAll(Arrays.asList(participant(FIRST, "second revision"), participant(SECOND, "second revision")));
+        assertSameContent();
+        assertTrue(batch.requestParticipant(SECOND).toRdf().contains("second revision"));
+    }
+
+    @Test
+    public void batchesRequireARegistrationPermit() throws Exception {
+        AdmissionController admissionController = new AdmissionController(1, 1, 1, Duration.ofMillis(200));
+        batch.getAdmissionController().close();
+        batch.setAdmissionController(admissionController);
+
+        //Occupies the only registration permit
+        CountDownLatch registered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> blocking = executor.submit(() -> admissionController.register(() -> {
+            registered.countDown();
+            try {
+                release.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        try {
+            assertTrue(registered.await(10, TimeUnit.SECONDS));
+            RejectMessageException e = assertThrows(RejectMessageException.class,
+                    () -> batch.updatedAll(Collections.singletonList(participant(FIRST, "first revision"))));
+            assertEquals(RejectionReason.TEMPORARILY_NOT_AVAILABLE, e.getRejectionReason());
+        }
+        finally {
+            release.countDown();
+            blocking.get(10, TimeUnit.SECONDS);
+            executor.shutdown();
+        }
+
+        //Once the permit is available again, the batch is stored
+        batch.updatedAll(Collections.singletonList(participant(FIRST, "first revision")));
+        assertTrue(batch.requestParticipant(FIRST).toRdf().contains("first revision"));
+    }
+
+    private void assertSameContent() {
+        singleDataset.begin(ReadWrite.READ);
+        batchDataset.begin(ReadWrite.READ);
+        try {
+            assertTrue(IsoMatcher.isomorphic(singleDataset.asDatasetGraph(), batchDataset.asDatasetGraph()),
+                    "Batch announcements stored different graphs than single announcements");
+        }
+        finally {
+            batchDataset.end();
+            singleDataset.end();
+        }
+    }
+
+    private static Participant participant(URI id, String description) {
+        return new ParticipantBuilder(id)
+                ._title_(asList(new TypedLiteral("Bulk participant", "en")))
+                ._description_(asList(new TypedLiteral(description, "en")))
+                ._legalForm_("GmbH")
+                .build();
+    }
+}
@@ -0,0 +1,154 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import de.fraunhofer.iais.eis.Participant;
+import de.fraunhofer.iais.eis.ParticipantBuilder;
+import de.fraunhofer.iais.eis.RejectionReason;
+import de.fraunhofer.iais.eis.ids.component.core.RejectMessageException;
+import de.fraunhofer.iais.eis.util.TypedLiteral;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static de.fraunhofer.iais.eis.util.Util.asList;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hammers a few participants with concurrent updates and sign-offs, and checks that triple store and index agree afterwards.
+ * Each announcement carries a unique revision token in its description, so that stale index entries can be told apart
+ */
+public class ConcurrentRegistrationTest {
+
+    private static final int PARTICIPANTS = 3;
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 40;
+
+    @TempDir
+    Path indexDirectory;
+
+    private LuceneIndexing indexing;
+    private ParticipantPersistenceAndIndexing persistence;
+    private final AtomicInteger revisions = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        indexing = new LuceneIndexing(indexDirectory, Duration.ofSeconds(1));
+        //The in-memory store of the RepositoryFacade
+        persistence = new ParticipantPersistenceAndIndexing(new ParticipantRepositoryFacade(""), URI.create("http://localhost:8080/catalog/"));
+        persistence.setIndexing(indexing);
+        //Every read must reach the triple store
+        persistence.setParticipantCache(new ParticipantCache(Duration.ZERO, 0));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        persistence.getAdmissionController().close();
+        indexing.close();
+    }
+
+    @Test
+    public void storeAndIndexAgreeAfterConcurrentModifications() throws Exception {
+        List<URI> uris = new ArrayList<>();
+        for (int i = 0; i < PARTICIPANTS; i++) {
+            uris.add(URI.create("https://participants.example.org/concurrency/" + i));
+            persistence.updated(participant(i));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                    int participant = ThreadLocalRandom.current().nextInt(PARTICIPANTS);
+                    if(ThreadLocalRandom.current().nextInt(3) == 0)
+                    {
+                        try {
+                            persistence.unavailable(uris.get(participant));
+                        }
+                        catch (RejectMessageException e)
+                        {
+                            //The participant may have been signed off already
+                        }
+                    }
+                    else
+                    {
+                        persistence.updated(participant(participant));
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        for (int i = 0; i < PARTICIPANTS; i++) {
+            assertIndexMatchesStore(i, uris.get(i));
+        }
+    }
+
+    private void assertIndexMatchesStore(int index, URI uri) throws Exception {
+        String storedRevision = null;
+        try {
+            String stored = persistence.requestParticipant(uri).toRdf();
+            int start = stored.indexOf(tokenPrefix(index));
+            storedRevision = stored.substring(start, start + tokenPrefix(index).length() + 4);
+        }
+        catch (RejectMessageException e)
+        {
+            assertEquals(RejectionReason.NOT_FOUND, e.getRejectionReason());
+        }
+
+        //Index writes become visible to searches within a second
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        List<URI> indexed = indexing.search(tokenPrefix(index) + "*", 10);
+        List<URI> current = storedRevision == null ? new ArrayList<>() : indexing.search(storedRevision, 10);
+        while (!agree(uri, storedRevision, indexed, current) && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+            indexed = indexing.search(tokenPrefix(index) + "*", 10);
+            current = storedRevision == null ? new ArrayList<>() : indexing.search(storedRevision, 10);
+        }
+        if(storedRevision == null)
+        {
+            assertTrue(indexed.isEmpty(), "Signed off participant " + uri + " is still indexed");
+        }
+        else
+        {
+            assertEquals(1, indexed.size(), "Participant " + uri + " must be indexed exactly once");
+            assertEquals(asList(uri), current, "Index holds an outdated revision of " + uri);
+        }
+    }
+
+    private static boolean agree(URI uri, String storedRevision, List<URI> indexed, List<URI> current) {
+        if(storedRevision == null)
+        {
+            return indexed.isEmpty();
+        }
+        return indexed.size() == 1 && current.equals(asList(uri));
+    }
+
+    private Participant participant(int index) {
+        String revision = tokenPrefix(index) + String.format("%04d", revisions.incrementAndGet());
+        return new ParticipantBuilder(URI.create("https://participants.example.org/concurrency/" + index))
+                ._title_(asList(new TypedLiteral("Participant " + index, "en")))
+                ._description_(asList(new TypedLiteral("Revision " + revision, "en")))
+                ._legalForm_("GmbH")
+                .build();
+    }
+
+    private static String tokenPrefix(int index) {
+        return "p" + index + "r";
+    }
+}
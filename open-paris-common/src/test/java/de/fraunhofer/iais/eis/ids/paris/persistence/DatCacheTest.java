@@ -0,0 +1,110 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import de.fraunhofer.iais.eis.DynamicAttributeToken;
+import de.fraunhofer.iais.eis.ids.component.core.SecurityTokenProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the coalescing of concurrent fetches and the background refresh of the DAT cache, using a stub token provider
+ */
+public class DatCacheTest {
+
+    private final AtomicInteger fetches = new AtomicInteger();
+    private DatCache datCache;
+
+    @AfterEach
+    public void tearDown() {
+        if(datCache != null)
+        {
+            datCache.close();
+        }
+    }
+
+    @Test
+    public void concurrentCallersShareOneFetch() throws Exception {
+        SecurityTokenProvider provider = mock(SecurityTokenProvider.class);
+        when(provider.getSecurityTokenAsDAT()).thenAnswer(invocation -> {
+            fetches.incrementAndGet();
+            //Keeps the fetch running while the other callers arrive
+            Thread.sleep(300);
+            return token(Duration.ofHours(1));
+        });
+        datCache = new DatCache(provider, Duration.ofMinutes(1), Duration.ofMinutes(5));
+
+        int callers = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<DynamicAttributeToken>> results = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return datCache.get();
+            }));
+        }
+        start.countDown();
+        DynamicAttributeToken first = results.get(0).get(10, TimeUnit.SECONDS);
+        for (Future<DynamicAttributeToken> result : results) {
+            assertSame(first, result.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        assertEquals(1, fetches.get());
+        //Cached tokens are served without another fetch
+        assertSame(first, datCache.get());
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void tokenIsRefreshedBeforeExpiry() throws Exception {
+        SecurityTokenProvider provider = mock(SecurityTokenProvider.class);
+        when(provider.getSecurityTokenAsDAT()).thenAnswer(invocation -> {
+            fetches.incrementAndGet();
+            return token(Duration.ofSeconds(6));
+        });
+        //The margin exceeds the lifetime, so the token is refreshed at half of its lifetime
+        datCache = new DatCache(provider, Duration.ofMinutes(1), Duration.ofMinutes(5));
+
+        DynamicAttributeToken first = datCache.get();
+        //Ahead of the point in time at which the first token is no longer served
+        Instant deadline = Instant.now().plusSeconds(4);
+        assertEquals(1, fetches.get());
+
+        //No caller triggers the refresh, it is scheduled by the cache itself
+        while (fetches.get() < 2 && Instant.now().isBefore(deadline)) {
+            Thread.sleep(50);
+        }
+        assertTrue(fetches.get() >= 2, "Token was not refreshed before its expiry");
+
+        //The refreshed token is served as soon as the fetch completed
+        DynamicAttributeToken served = datCache.get();
+        while (served == first && Instant.now().isBefore(deadline)) {
+            Thread.sleep(10);
+            served = datCache.get();
+        }
+        assertNotSame(first, served);
+    }
+
+    private static DynamicAttributeToken token(Duration lifetime) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String claims = "{\"exp\":" + Instant.now().plus(lifetime).getEpochSecond() + "}";
+        String jwt = encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(claims.getBytes(StandardCharsets.UTF_8)) + ".";
+        DynamicAttributeToken token = mock(DynamicAttributeToken.class);
+        when(token.getTokenValue()).thenReturn(jwt);
+        return token;
+    }
+}
@@ -0,0 +1,67 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.Resource;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the difference between the stored and the announced content of a participant graph, with and without blank nodes
+ */
+public class GraphDeltaTest {
+
+    private static final String PARTICIPANT = "https://participants.example.org/delta/0";
+    private static final String IDS = "https://w3id.org/idsa/core/";
+
+    @Test
+    public void changedStatementsAreDetermined() {
+        GraphDelta delta = GraphDelta.compute(participant("Old title"), participant("New title"));
+        assertFalse(delta.isEmpty());
+        assertFalse(delta.isReplacementRequired());
+        assertEquals(1, delta.getRemovals().size());
+        assertTrue(delta.getRemovals().contains(null, null, "Old title", "en"));
+        assertEquals(1, delta.getAdditions().size());
+        assertTrue(delta.getAdditions().contains(null, null, "New title", "en"));
+    }
+
+    @Test
+    public void unchangedGraphsHaveNoDelta() {
+        assertTrue(GraphDelta.compute(participant("Title"), participant("Title")).isEmpty());
+        //Blank nodes are labelled differently in each document
+        assertTrue(GraphDelta.compute(withSites(participant("Title"), "Main street 1", "Side street 2"),
+                withSites(participant("Title"), "Side street 2", "Main street 1")).isEmpty());
+    }
+
+    @Test
+    public void modifiedBlankNodeStructuresRequireReplacement() {
+        Model stored = withSites(participant("Title"), "Main street 1", "Side street 2");
+        Model incoming = withSites(participant("Title"), "Main street 1", "Side street 3");
+        GraphDelta delta = GraphDelta.compute(stored, incoming);
+        assertFalse(delta.isEmpty());
+        assertTrue(delta.isReplacementRequired());
+        //Statements with blank nodes cannot be addressed individually
+        assertTrue(delta.getRemovals().isEmpty());
+        assertTrue(delta.getAdditions().isEmpty());
+    }
+
+    private static Model participant(String title) {
+        Model model = ModelFactory.createDefaultModel();
+        model.createResource(PARTICIPANT)
+                .addProperty(model.createProperty(IDS, "title"), title, "en")
+                .addProperty(model.createProperty(IDS, "legalForm"), "GmbH");
+        return model;
+    }
+
+    private static Model withSites(Model model, String... addresses) {
+        Property site = model.createProperty(IDS, "site");
+        Property siteAddress = model.createProperty(IDS, "siteAddress");
+        for (String address : addresses) {
+            Resource blankNode = model.createResource().addProperty(siteAddress, address);
+            model.getResource(PARTICIPANT).addProperty(site, blankNode);
+        }
+        return model;
+    }
+}
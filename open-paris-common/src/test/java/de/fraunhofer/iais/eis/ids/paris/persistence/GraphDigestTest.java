@@ -0,0 +1,87 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the triple store computes the same graph digests as the ParIS, and that graphs with blank nodes have no digest,
+ * such that the incremental index refresh does not miss modifications of blank node structures
+ */
+public class GraphDigestTest {
+
+    private static final String GRAPH = "https://participants.example.org/digest/0";
+    private static final String IDS = "https://w3id.org/idsa/core/";
+
+    private TestTripleStore tripleStore;
+    private ParticipantRepositoryFacade repositoryFacade;
+
+    @BeforeEach
+    public void setUp() {
+        tripleStore = TestTripleStore.start("digests");
+        repositoryFacade = new ParticipantRepositoryFacade(tripleStore.endpoint("digests"));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        tripleStore.close();
+    }
+
+    @Test
+    public void storeComputesTheSameDigestAsTheParIS() {
+        Model model = participant("A participant");
+        store(model);
+        String digest = ParticipantRepositoryFacade.digest(model);
+        assertNotEquals(ParticipantRepositoryFacade.NO_DIGEST, digest);
+        assertEquals(digest, repositoryFacade.graphDigests().get(GRAPH));
+
+        //A modified participant has a different digest
+        Model modified = participant("A modified participant");
+        store(modified);
+        assertNotEquals(digest, ParticipantRepositoryFacade.digest(modified));
+        assertEquals(ParticipantRepositoryFacade.digest(modified), repositoryFacade.graphDigests().get(GRAPH));
+    }
+
+    @Test
+    public void graphsWithBlankNodesHaveNoDigest() {
+        Model model = participant("A participant");
+        Resource site = model.createResource()
+                .addProperty(model.createProperty(IDS, "siteAddress"), "Main street 1");
+        model.getResource(GRAPH).addProperty(model.createProperty(IDS, "site"), site);
+        store(model);
+        assertEquals(ParticipantRepositoryFacade.NO_DIGEST, ParticipantRepositoryFacade.digest(model));
+        assertEquals(ParticipantRepositoryFacade.NO_DIGEST, repositoryFacade.graphDigests().get(GRAPH));
+    }
+
+    private static Model participant(String title) {
+        Model model = ModelFactory.createDefaultModel();
+        Property type = model.createProperty("http://www.w3.org/1999/02/22-rdf-syntax-ns#type");
+        model.createResource(GRAPH)
+                .addProperty(type, model.createResource(IDS + "Participant"))
+                .addProperty(model.createProperty(IDS, "title"), title, "en")
+                .addProperty(model.createProperty(IDS, "legalForm"), "GmbH")
+                .addProperty(model.createProperty(IDS, "version"), "3", XSDDatatype.XSDinteger);
+        return model;
+    }
+
+    private void store(Model model) {
+        Dataset dataset = tripleStore.dataset("digests");
+        dataset.begin(ReadWrite.WRITE);
+        try {
+            dataset.replaceNamedModel(GRAPH, model);
+            dataset.commit();
+        }
+        finally {
+            dataset.end();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import org.apache.jena.query.QueryFactory;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the size bound, the invalidation and the query normalization of the query result cache
+ */
+public class QueryResultCacheTest {
+
+    @Test
+    public void leastRecentlyUsedResultsAreEvicted() {
+        QueryResultCache cache = new QueryResultCache(10, 10);
+        cache.put("a", "aaaa", cache.stamp(), 0);
+        cache.put("b", "bbbb", cache.stamp(), 0);
+        assertEquals("aaaa", cache.get("a"));
+
+        //Exceeds the total size, so the least recently used result is evicted
+        cache.put("c", "cccc", cache.stamp(), 0);
+        assertNull(cache.get("b"));
+        assertEquals("aaaa", cache.get("a"));
+        assertEquals("cccc", cache.get("c"));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(8, cache.getTotalBytes());
+    }
+
+    @Test
+    public void sizeIsMeasuredInUtf8Bytes() {
+        //A character of two, three and four bytes
+        String result = "\u00e4\u20ac\ud83d\ude00";
+        assertEquals(result.getBytes(StandardCharsets.UTF_8).length, QueryResultCache.utf8Length(result));
+
+        //Four characters, but nine bytes
+        QueryResultCache cache = new QueryResultCache(100, 8);
+        cache.put("emoji", result, cache.stamp(), 0);
+        assertNull(cache.get("emoji"));
+        cache = new QueryResultCache(100, 9);
+        cache.put("emoji", result, cache.stamp(), 0);
+        assertEquals(result, cache.get("emoji"));
+        assertEquals(9, cache.getTotalBytes());
+    }
+
+    @Test
+    public void modificationsInvalidateResults() {
+        QueryResultCache cache = new QueryResultCache(100, 100);
+        cache.put("a", "result", cache.stamp(), 0);
+        cache.invalidateAll();
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getTotalBytes());
+
+        //A result which was evaluated while the registry was modified is not cached
+        long stamp = cache.stamp();
+        cache.invalidateAll();
+        cache.put("a", "outdated result", stamp, 0);
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void equivalentQueriesShareAKey() {
+        String query = QueryResultCache.normalize(QueryFactory.create(
+                "PREFIX ids: <https://w3id.org/idsa/core/>\nPREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#>\n" +
+                "SELECT ?s WHERE { ?s rdf:type ids:Participant } LIMIT 10"));
+        String reformatted = QueryResultCache.normalize(QueryFactory.create(
+                "# Participants\nPREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> PREFIX ids: <https://w3id.org/idsa/core/>\n" +
+                "SELECT ?s\nWHERE {\n  ?s   rdf:type   ids:Participant .\n}\nLIMIT 10"));
+        assertEquals(query, reformatted);
+
+        String otherLimit = QueryResultCache.normalize(QueryFactory.create(
+                "PREFIX ids: <https://w3id.org/idsa/core/>\nPREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#>\n" +
+                "SELECT ?s WHERE { ?s rdf:type ids:Participant } LIMIT 20"));
+        assertNotEquals(query, otherLimit);
+    }
+}
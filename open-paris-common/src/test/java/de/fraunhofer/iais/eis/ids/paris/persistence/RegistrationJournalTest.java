@@ -0,0 +1,121 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import de.fraunhofer.iais.eis.Participant;
+import de.fraunhofer.iais.eis.ParticipantBuilder;
+import de.fraunhofer.iais.eis.util.TypedLiteral;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static de.fraunhofer.iais.eis.util.Util.asList;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Replays registration journals whose last record was torn by a crash, and checks that only complete records are replayed
+ */
+public class RegistrationJournalTest {
+
+    private static final URI FIRST = URI.create("https://participants.example.org/journal/0");
+    private static final URI SECOND = URI.create("https://participants.example.org/journal/1");
+
+    @TempDir
+    Path journalDirectory;
+
+    @Test
+    public void tornCompletionDoesNotCompleteAnotherWrite() throws Exception {
+        Path journal = journalDirectory.resolve("registrations.journal");
+        //"C 12" was torn to "C 1", which must not complete write 1
+        Files.write(journal, ("1 D " + FIRST + "\n12 D " + SECOND + "\nC 1").getBytes(StandardCharsets.UTF_8));
+
+        RecordingHandler delegate = new RecordingHandler(true);
+        try (AsyncParticipantStatusHandler handler = new AsyncParticipantStatusHandler(delegate, 10, 1, journal)) {
+            assertEquals(setOf(FIRST, SECOND), delegate.awaitApplied(2));
+        }
+    }
+
+    @Test
+    public void tornUpdateIsIgnoredAndJournalRemainsUsable() throws Exception {
+        Path journal = journalDirectory.resolve("registrations.journal");
+        String update = Base64.getEncoder().encodeToString(participant(SECOND).toRdf().getBytes(StandardCharsets.UTF_8));
+        Files.write(journal, ("1 D " + FIRST + "\n2 U " + update.substring(0, update.length() / 2 + 1)).getBytes(StandardCharsets.UTF_8));
+
+        //The triple store is unreachable, so the writes remain in the journal
+        try (AsyncParticipantStatusHandler handler = new AsyncParticipantStatusHandler(new RecordingHandler(false), 10, 1, journal)) {
+            handler.unavailable(SECOND);
+        }
+        assertTrue(new String(Files.readAllBytes(journal), StandardCharsets.UTF_8).endsWith("\n"));
+
+        //The record appended after the torn one is replayed as well
+        Files.write(journal, "C".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        RecordingHandler delegate = new RecordingHandler(true);
+        try (AsyncParticipantStatusHandler handler = new AsyncParticipantStatusHandler(delegate, 10, 1, journal)) {
+            assertEquals(setOf(FIRST, SECOND), delegate.awaitApplied(2));
+        }
+    }
+
+    private static Set<URI> setOf(URI... uris) {
+        return new HashSet<>(Arrays.asList(uris));
+    }
+
+    private static Participant participant(URI id) {
+        return new ParticipantBuilder(id)
+                ._title_(asList(new TypedLiteral("Journaled participant", "en")))
+                ._legalForm_("GmbH")
+                .build();
+    }
+
+    /**
+     * Records the participants to which writes were applied, or fails as if the triple store could not be reached
+     */
+    private static class RecordingHandler implements ParticipantStatusHandler {
+
+        private final boolean reachable;
+        private final BlockingQueue<URI> applied = new LinkedBlockingQueue<>();
+
+        RecordingHandler(boolean reachable) {
+            this.reachable = reachable;
+        }
+
+        @Override
+        public void unavailable(URI participantUri) throws IOException {
+            apply(participantUri);
+        }
+
+        @Override
+        public void updated(Participant participant) throws IOException {
+            apply(participant.getId());
+        }
+
+        private void apply(URI participantUri) throws IOException {
+            if(!reachable)
+            {
+                throw new IOException(new ConnectException("Connection refused"));
+            }
+            applied.add(participantUri);
+        }
+
+        Set<URI> awaitApplied(int count) throws InterruptedException {
+            Set<URI> participants = new HashSet<>();
+            for (int i = 0; i < count; i++) {
+                URI participantUri = applied.poll(10, TimeUnit.SECONDS);
+                assertNotNull(participantUri, "Pending write was not replayed");
+                participants.add(participantUri);
+            }
+            return participants;
+        }
+    }
+}
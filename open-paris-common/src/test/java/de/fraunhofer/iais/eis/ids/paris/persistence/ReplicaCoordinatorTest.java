@@ -0,0 +1,175 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import de.fraunhofer.iais.eis.Participant;
+import de.fraunhofer.iais.eis.ParticipantBuilder;
+import de.fraunhofer.iais.eis.util.TypedLiteral;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static de.fraunhofer.iais.eis.util.Util.asList;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs several replicas against one in-memory dataset, which is served by Fuseki like a shared triple store,
+ * and checks leader election and the invalidation of caches across replicas
+ */
+public class ReplicaCoordinatorTest {
+
+    private static final Duration LEASE = Duration.ofSeconds(3);
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(200);
+    private static final URI PARTICIPANT = URI.create("https://participants.example.org/replication/0");
+
+    private TestTripleStore tripleStore;
+    private String endpoint;
+    private final List<ChangeLog> changeLogs = new ArrayList<>();
+    private final List<ReplicaCoordinator> coordinators = new ArrayList<>();
+    private final List<ParticipantPersistenceAndIndexing> persistences = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        tripleStore = TestTripleStore.start("replicas");
+        endpoint = tripleStore.endpoint("replicas");
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        coordinators.forEach(ReplicaCoordinator::close);
+        changeLogs.forEach(ChangeLog::close);
+        for (ParticipantPersistenceAndIndexing persistence : persistences) {
+            persistence.getAdmissionController().close();
+        }
+        tripleStore.close();
+    }
+
+    @Test
+    public void leaderKeepsLeaseWhileListenerIsBusy() throws Exception {
+        AtomicInteger busyListeners = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            //Takes twice the lease duration for every change, like a long resynchronization
+            coordinator("replica-" + i).start(listener(() -> {
+                busyListeners.incrementAndGet();
+                Thread.sleep(LEASE.toMillis() * 2);
+            }));
+        }
+        ReplicaCoordinator leader = awaitSingleLeader();
+
+        //A change made by another replica occupies the listener of the leader
+        changeLogs.get((coordinators.indexOf(leader) + 1) % coordinators.size())
+                .record(Collections.singletonList(PARTICIPANT.toString()), ChangeLog.ChangeType.UPDATED);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (busyListeners.get() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(2, busyListeners.get(), "The change was not delivered to the other replicas");
+
+        long end = System.nanoTime() + LEASE.toNanos() * 2;
+        while (System.nanoTime() < end) {
+            assertTrue(leader.isLeader(), "The leader lost its lease while its listener was busy");
+            assertEquals(1, leaders(), "More than one replica considers itself leader");
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    public void anotherReplicaTakesOverWhenTheLeaderLeaves() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            coordinator("replica-" + i).start(listener(() -> {}));
+        }
+        ReplicaCoordinator leader = awaitSingleLeader();
+
+        leader.close();
+        coordinators.remove(leader);
+        ReplicaCoordinator successor = awaitSingleLeader();
+        assertNotSame(leader, successor);
+    }
+
+    @Test
+    public void modificationsInvalidateCachesOfOtherReplicas() throws Exception {
+        ParticipantPersistenceAndIndexing first = persistence("replica-0");
+        ParticipantPersistenceAndIndexing second = persistence("replica-1");
+
+        first.updated(participant("first revision"));
+        //Fills the cache of the second replica
+        assertTrue(second.requestParticipant(PARTICIPANT).toRdf().contains("first revision"));
+
+        first.updated(participant("second revision"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        String served = second.requestParticipant(PARTICIPANT).toRdf();
+        while (!served.contains("second revision") && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+            served = second.requestParticipant(PARTICIPANT).toRdf();
+        }
+        assertTrue(served.contains("second revision"), "The second replica still serves its cached copy");
+    }
+
+    private ReplicaCoordinator coordinator(String replicaId) {
+        ChangeLog changeLog = new ChangeLog(new ParticipantRepositoryFacade(endpoint), replicaId);
+        changeLogs.add(changeLog);
+        ReplicaCoordinator coordinator = new ReplicaCoordinator(new ParticipantRepositoryFacade(endpoint), changeLog, LEASE, POLL_INTERVAL);
+        coordinators.add(coordinator);
+        return coordinator;
+    }
+
+    private ParticipantPersistenceAndIndexing persistence(String replicaId) {
+        ParticipantPersistenceAndIndexing persistence = new ParticipantPersistenceAndIndexing(new ParticipantRepositoryFacade(endpoint),
+                URI.create("http://localhost:8080/catalog/"));
+        //Without invalidation, cached participants would be served for the entire test
+        persistence.setParticipantCache(new ParticipantCache(Duration.ofHours(1), 100 * 1024 * 1024));
+        persistence.setReplicaCoordinator(coordinator(replicaId), false);
+        persistences.add(persistence);
+        return persistence;
+    }
+
+    private ReplicaCoordinator awaitSingleLeader() throws InterruptedException {
+        long deadline = System.nanoTime() + LEASE.toNanos() * 3;
+        while (leaders() != 1 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, leaders(), "No single leader was elected");
+        return coordinators.stream().filter(ReplicaCoordinator::isLeader).findFirst().get();
+    }
+
+    private int leaders() {
+        return (int) coordinators.stream().filter(ReplicaCoordinator::isLeader).count();
+    }
+
+    private static Participant participant(String description) {
+        return new ParticipantBuilder(PARTICIPANT)
+                ._title_(asList(new TypedLiteral("Replicated participant", "en")))
+                ._description_(asList(new TypedLiteral(description, "en")))
+                ._legalForm_("GmbH")
+                .build();
+    }
+
+    private interface Action {
+        void run() throws InterruptedException;
+    }
+
+    private static ReplicaCoordinator.ChangeListener listener(Action onChange) {
+        return new ReplicaCoordinator.ChangeListener() {
+            @Override
+            public void changed(String graph) {
+                try {
+                    onChange.run();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void resynchronize() {
+            }
+        };
+    }
+}
@@ -0,0 +1,62 @@
+package de.fraunhofer.iais.eis.ids.paris.persistence;
+
+import org.apache.jena.fuseki.main.FusekiServer;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.eclipse.jetty.server.ServerConnector;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory datasets, which are served by Fuseki on a free port of the loopback interface like a remote triple store
+ */
+class TestTripleStore implements AutoCloseable {
+
+    private final FusekiServer server;
+    private final Map<String, Dataset> datasets;
+
+    private TestTripleStore(FusekiServer server, Map<String, Dataset> datasets) {
+        this.server = server;
+        this.datasets = datasets;
+    }
+
+    /**
+     * Starts the server
+     * @param names Names of the datasets to be served
+     * @return the started triple store
+     */
+    static TestTripleStore start(String... names) {
+        Map<String, Dataset> datasets = new HashMap<>();
+        FusekiServer.Builder builder = FusekiServer.create().loopback(true).port(0);
+        for (String name : names) {
+            Dataset dataset = DatasetFactory.createTxnMem();
+            datasets.put(name, dataset);
+            builder.add("/" + name, dataset);
+        }
+        return new TestTripleStore(builder.build().start(), datasets);
+    }
+
+    /**
+     * @param name Name of the dataset
+     * @return URL of the SPARQL endpoint of the dataset
+     */
+    String endpoint(String name) {
+        //The port is chosen when binding, so it is read from the connector
+        int port = ((ServerConnector) server.getJettyServer().getConnectors()[0]).getLocalPort();
+        return "http://localhost:" + port + "/" + name;
+    }
+
+    /**
+     * @param name Name of the dataset
+     * @return The dataset, e.g. to inspect its content
+     */
+    Dataset dataset(String name) {
+        return datasets.get(name);
+    }
+
+    @Override
+    public void close() {
+        server.stop();
+    }
+}
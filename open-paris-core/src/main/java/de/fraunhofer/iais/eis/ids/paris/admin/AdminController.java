@@ -0,0 +1,390 @@
+package de.fraunhofer.iais.eis.ids.paris.admin;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.fraunhofer.iais.eis.Participant;
+import de.fraunhofer.iais.eis.RejectionReason;
+import de.fraunhofer.iais.eis.ids.component.core.RejectMessageException;
+import de.fraunhofer.iais.eis.ids.jsonld.Serializer;
+import de.fraunhofer.iais.eis.ids.paris.persistence.ChangeLog;
+import de.fraunhofer.iais.eis.ids.paris.persistence.ParticipantPersistenceAndIndexing;
+import de.fraunhofer.iais.eis.ids.paris.persistence.ParticipantSearch;
+import de.fraunhofer.iais.eis.ids.paris.persistence.QueryResultCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Administrative HTTP endpoints of the ParIS, which are not part of the IDS message interface.
+ * All endpoints require the configured admin API key as bearer token and are disabled if no key is configured
+ */
+@RestController
+@RequestMapping("/admin")
+public class AdminController {
+
+    private final Logger logger = LoggerFactory.getLogger(AdminController.class);
+    private final Serializer serializer = new Serializer();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    //Suggested wait before retrying a request which was rejected because the ParIS is saturated
+    private static final String RETRY_AFTER_SECONDS = "5";
+
+    @Autowired
+    private ParticipantPersistenceProvider participantPersistenceProvider;
+
+    @Value("${admin.apiKey}")
+    private String apiKey;
+
+    /**
+     * Bulk registration of participants, e.g. when onboarding a data space. The body must be a JSON array of participant self-descriptions (JSON-LD).
+     * Participants which are already known are updated
+     * @param authorization Authorization header, containing the admin API key as bearer token
+     * @param body JSON array of participant self-descriptions
+     * @return HTTP 200 with the number of persisted participants, HTTP 400 for invalid participants, HTTP 503 if the ParIS is saturated, or an error status
+     */
+    @PostMapping(value = "/participants", consumes = {"application/ld+json", "application/json"})
+    public ResponseEntity<String> registerParticipants(@RequestHeader(value = "Authorization", required = false) String authorization, @RequestBody String body) {
+        if(!isAuthorized(authorization))
+        {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        List<Participant> participants = new ArrayList<>();
+        try {
+            JsonNode selfDescriptions = objectMapper.readTree(body);
+            if(!selfDescriptions.isArray())
+            {
+                return new ResponseEntity<>("Expected a JSON array of participants.", HttpStatus.BAD_REQUEST);
+            }
+            for (JsonNode selfDescription : selfDescriptions) {
+                participants.add(serializer.deserialize(objectMapper.writeValueAsString(selfDescription), Participant.class));
+            }
+        }
+        catch (IOException e)
+        {
+            return new ResponseEntity<>("Could not parse participants: " + e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+
+        try {
+            long start = System.currentTimeMillis();
+            participantPersistenceProvider.getParticipantPersistence().updatedAll(participants);
+            long duration = System.currentTimeMillis() - start;
+            logger.info("Bulk registration of " + participants.size() + " participants took " + duration + " ms.");
+            return new ResponseEntity<>("Persisted " + participants.size() + " participants in " + duration + " ms.", HttpStatus.OK);
+        }
+        catch (RejectMessageException e)
+        {
+            return rejection(e, "Bulk registration failed.").body("Bulk registration failed: " + messageOf(e));
+        }
+        catch (IOException e)
+        {
+            logger.error("Bulk registration failed.", e);
+            return new ResponseEntity<>("Bulk registration failed: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Description of a single participant, served from its cached serialization. Supports If-None-Match and gzip like the self-description endpoint
+     * @param authorization Authorization header, containing the admin API key as bearer token
+     * @param ifNoneMatch Entity tags of the copies the client already has
+     * @param acceptEncoding Content codings the client accepts
+     * @param participantId URI of the participant
+     * @return HTTP 200 with the participant as JSON-LD, HTTP 304 if the client's copy is current, or an error status
+     */
+    @GetMapping("/participant")
+    public ResponseEntity<byte[]> participant(@RequestHeader(value = "Authorization", required = false) String authorization,
+                                              @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch,
+                                              @RequestHeader(value = "Accept-Encoding", required = false) String acceptEncoding,
+                                              @RequestParam("id") String participantId) {
+        if(!isAuthorized(authorization))
+        {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        URI participantUri;
+        try {
+            participantUri = new URI(participantId);
+        }
+        catch (URISyntaxException e)
+        {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        try {
+            return DescriptionController.respond(participantPersistenceProvider.getParticipantPersistence().requestRenderedParticipant(participantUri), ifNoneMatch, acceptEncoding);
+        }
+        catch (RejectMessageException e)
+        {
+            if(e.getRejectionReason() == RejectionReason.NOT_FOUND)
+            {
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            logger.error("Failed to retrieve participant.", e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Evaluates a SPARQL SELECT query against all active participants and streams the result rows to the client as they are produced,
+     * formatted as SPARQL JSON results. The server-side row, size and time limits apply.
+     * The query is checked and admitted before the response starts, so rejections are reported with an error status.
+     * Whether the result was cut off by a limit is only known at its end, so it is sent in the trailer field X-Result-Truncated
+     * @param authorization Authorization header, containing the admin API key as bearer token
+     * @param query SPARQL query
+     * @param response The response, to which the trailer field is added
+     * @return Streamed query result, or an error status
+     */
+    @PostMapping(value = "/query", consumes = "application/sparql-query", produces = "application/sparql-results+json")
+    public ResponseEntity<StreamingResponseBody> query(@RequestHeader(value = "Authorization", required = false) String authorization, @RequestBody String query,
+                                                       HttpServletResponse response) {
+        if(!isAuthorized(authorization))
+        {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        ParticipantPersistenceAndIndexing.ResultStream resultStream;
+        try {
+            resultStream = participantPersistenceProvider.getParticipantPersistence().openResultStream(query);
+        }
+        catch (RejectMessageException e)
+        {
+            String message = messageOf(e);
+            return rejection(e, "Query evaluation failed.").body(outputStream -> outputStream.write(message.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        AtomicBoolean truncated = new AtomicBoolean();
+        response.setHeader("Trailer", "X-Result-Truncated");
+        response.setTrailerFields(() -> Collections.singletonMap("X-Result-Truncated", String.valueOf(truncated.get())));
+        return new ResponseEntity<>(outputStream -> {
+            try (ParticipantPersistenceAndIndexing.ResultStream admitted = resultStream) {
+                truncated.set(admitted.writeTo(outputStream));
+            }
+            catch (RejectMessageException e)
+            {
+                //The status was already sent, so the response is aborted
+                throw new IOException("Query evaluation failed.", e);
+            }
+        }, HttpStatus.OK);
+    }
+
+    /**
+     * Starts the response to a rejected request. Internal errors are logged, and clients of a saturated ParIS are told when to retry
+     * @param e The rejection
+     * @param failure Log message, in case of an internal error
+     * @return Response builder with the status which matches the reason of the rejection
+     */
+    private ResponseEntity.BodyBuilder rejection(RejectMessageException e, String failure) {
+        HttpStatus status = statusOf(e.getRejectionReason());
+        if(status == HttpStatus.INTERNAL_SERVER_ERROR)
+        {
+            logger.error(failure, e);
+        }
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(status);
+        if(status == HttpStatus.SERVICE_UNAVAILABLE)
+        {
+            builder.header("Retry-After", RETRY_AFTER_SECONDS);
+        }
+        return builder;
+    }
+
+    /**
+     * @param e The rejection
+     * @return Message which tells the client why the request was rejected
+     */
+    private static String messageOf(RejectMessageException e) {
+        return e.getCause() != null && e.getCause().getMessage() != null ? e.getCause().getMessage() : e.getRejectionReason().toString();
+    }
+
+    /**
+     * Maps the reason of a rejection to the HTTP status which tells the client how to proceed
+     * @param reason The reason of the rejection
+     * @return The HTTP status
+     */
+    private static HttpStatus statusOf(RejectionReason reason) {
+        if(reason == RejectionReason.TEMPORARILY_NOT_AVAILABLE)
+        {
+            return HttpStatus.SERVICE_UNAVAILABLE;
+        }
+        if(reason == RejectionReason.TOO_MANY_RESULTS)
+        {
+            return HttpStatus.PAYLOAD_TOO_LARGE;
+        }
+        if(reason == RejectionReason.BAD_PARAMETERS || reason == RejectionReason.MALFORMED_MESSAGE)
+        {
+            return HttpStatus.BAD_REQUEST;
+        }
+        if(reason == RejectionReason.NOT_FOUND)
+        {
+            return HttpStatus.NOT_FOUND;
+        }
+        return HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+
+    /**
+     * Statistics of the query result cache, including hits, misses and evaluation times per query
+     * @param authorization Authorization header, containing the admin API key as bearer token
+     * @return HTTP 200 with the statistics as JSON, or an error status
+     */
+    @GetMapping(value = "/queryCache", produces = "application/json")
+    public ResponseEntity<String> queryCacheStatistics(@RequestHeader(value = "Authorization", required = false) String authorization) {
+        if(!isAuthorized(authorization))
+        {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        QueryResultCache queryResultCache = participantPersistenceProvider.getParticipantPersistence().getQueryResultCache();
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("version", queryResultCache.getVersion());
+        statistics.put("hits", queryResultCache.getHits());
+        statistics.put("misses", queryResultCache.getMisses());
+        statistics.put("hitRate", queryResultCache.getHitRate());
+        statistics.put("evictions", queryResultCache.getEvictions());
+        statistics.put("totalBytes", queryResultCache.getTotalBytes());
+        statistics.put("queries", queryResultCache.getStatistics());
+        try {
+            return new ResponseEntity<>(objectMapper.writeValueAsString(statistics), HttpStatus.OK);
+        }
+        catch (IOException e)
+        {
+            logger.error("Failed to serialize query cache statistics.", e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Full-text and keyword search over the indexed participants. Requires an index backend which supports searching, e.g. lucene
+     * @param authorization Authorization header, containing the admin API key as bearer token
+     * @param query Search terms, optionally restricted to fields, e.g. "legalForm:GmbH"
+     * @param limit Maximum number of results
+     * @return HTTP 200 with a JSON array of participant URIs, or an error status
+     */
+    @GetMapping(value = "/search", produces = "application/json")
+    public ResponseEntity<String> search(@RequestHeader(value = "Authorization", required = false) String authorization,
+                                         @RequestParam("q") String query, @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        if(!isAuthorized(authorization))
+        {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        Object indexing = participantPersistenceProvider.getParticipantPersistence().getIndexing();
+        if(!(indexing instanceof ParticipantSearch))
+        {
+            return new ResponseEntity<>("The configured index backend does not support searching.", HttpStatus.NOT_IMPLEMENTED);
+        }
+        try {
+            return new ResponseEntity<>(objectMapper.writeValueAsString(((ParticipantSearch) indexing).search(query, Math.max(1, limit))), HttpStatus.OK);
+        }
+        catch (IllegalArgumentException e)
+        {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+        catch (IOException e)
+        {
+            logger.error("Search failed.", e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Streams a snapshot of all active participants in RDF Thrift format, packed into a ZIP archive with a manifest and checksum.
+     * A new node is bootstrapped from the snapshot by setting snapshot.bootstrapFile
+     * @param authorization Authorization header, containing the admin API key as bearer token
+     * @return Streamed snapshot, or an error status
+     */
+    @GetMapping(value = "/snapshot", produces = "application/zip")
+    public ResponseEntity<StreamingResponseBody> snapshot(@RequestHeader(value = "Authorization", required = false) String authorization) {
+        if(!isAuthorized(authorization))
+        {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        return ResponseEntity.ok()
+                .header("Content-Disposition", "attachment; filename=\"paris-snapshot.zip\"")
+                .body(outputStream -> {
+                    try {
+                        participantPersistenceProvider.getParticipantPersistence().writeSnapshot(outputStream);
+                    }
+                    catch (RejectMessageException e)
+                    {
+                        throw new IOException("Failed to write snapshot.", e);
+                    }
+                });
+    }
+
+    /**
+     * Change feed for incremental synchronization. Returns the modifications of participants after the given sequence number, in order.
+     * Consumers store the sequence number of the last change they processed (or lastSequence, if no changes were returned) and pass it on their next request.
+     * If resyncRequired is true, the requested changes were already removed from the log, and the consumer has to re-read the entire registry.
+     * With waitSeconds, the request is held open until a change occurs or the time has passed (long polling), without blocking a request thread
+     * @param authorization Authorization header, containing the admin API key as bearer token
+     * @param since Sequence number of the last processed change, 0 to start from the beginning
+     * @param limit Maximum number of changes to be returned
+     * @param waitSeconds Maximum time to wait for changes, if there are none yet. At most 60 seconds
+     * @return HTTP 200 with the changes as JSON, or an error status
+     */
+    @GetMapping(value = "/changes", produces = "application/json")
+    public DeferredResult<ResponseEntity<String>> changes(@RequestHeader(value = "Authorization", required = false) String authorization,
+                                                          @RequestParam(value = "since", defaultValue = "0") long since,
+                                                          @RequestParam(value = "limit", defaultValue = "100") int limit,
+                                                          @RequestParam(value = "waitSeconds", defaultValue = "0") int waitSeconds) {
+        Duration wait = Duration.ofSeconds(Math.max(0, Math.min(waitSeconds, 60)));
+        //The servlet container must not time out the request before the change log does
+        DeferredResult<ResponseEntity<String>> result = new DeferredResult<>(wait.plusSeconds(10).toMillis(), new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE));
+        if(!isAuthorized(authorization))
+        {
+            result.setResult(new ResponseEntity<>(HttpStatus.UNAUTHORIZED));
+            return result;
+        }
+        ChangeLog changeLog = participantPersistenceProvider.getParticipantPersistence().getChangeLog();
+        if(changeLog == null)
+        {
+            result.setResult(new ResponseEntity<>("The change log is disabled.", HttpStatus.NOT_IMPLEMENTED));
+            return result;
+        }
+        try {
+            changeLog.awaitChanges(since, Math.max(1, Math.min(limit, 1000)), wait).whenComplete((changeSet, e) -> {
+                if(e != null)
+                {
+                    logger.error("Failed to read change log.", e);
+                    result.setResult(new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE));
+                    return;
+                }
+                try {
+                    result.setResult(new ResponseEntity<>(objectMapper.writeValueAsString(changeSet), HttpStatus.OK));
+                }
+                catch (IOException e1)
+                {
+                    logger.error("Failed to serialize changes.", e1);
+                    result.setResult(new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR));
+                }
+            });
+        }
+        catch (RuntimeException e)
+        {
+            logger.error("Failed to read change log.", e);
+            result.setResult(new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE));
+        }
+        return result;
+    }
+
+    private boolean isAuthorized(String authorization) {
+        if(apiKey == null || apiKey.isEmpty() || authorization == null || !authorization.startsWith("Bearer "))
+        {
+            return false;
+        }
+        return MessageDigest.isEqual(authorization.substring("Bearer ".length()).getBytes(StandardCharsets.UTF_8), apiKey.getBytes(StandardCharsets.UTF_8));
+    }
+}
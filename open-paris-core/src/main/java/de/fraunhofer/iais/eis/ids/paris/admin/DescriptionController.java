@@ -0,0 +1,115 @@
+package de.fraunhofer.iais.eis.ids.paris.admin;
+
+import de.fraunhofer.iais.eis.ids.paris.persistence.RenderedDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+/**
+ * Serves the self-description of this ParIS from its pre-serialized form. Like the readiness endpoint, it does not require authentication.
+ * Clients can revalidate their copy via If-None-Match, and clients which accept gzip receive the pre-compressed form
+ */
+@RestController
+public class DescriptionController {
+
+    private static final MediaType JSON_LD = MediaType.parseMediaType("application/ld+json");
+
+    private final Logger logger = LoggerFactory.getLogger(DescriptionController.class);
+
+    @Autowired
+    private SelfDescriptionDocumentProvider selfDescriptionDocumentProvider;
+
+    /**
+     * @param ifNoneMatch Entity tags of the copies the client already has
+     * @param acceptEncoding Content codings the client accepts
+     * @return HTTP 200 with the self-description as JSON-LD, HTTP 304 if the client's copy is current, or an error status
+     */
+    @GetMapping("/description")
+    public ResponseEntity<byte[]> selfDescription(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                  @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        try {
+            return respond(selfDescriptionDocumentProvider.getRenderedSelfDescription(), ifNoneMatch, acceptEncoding);
+        }
+        catch (IOException e)
+        {
+            logger.error("Failed to serialize self-description.", e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Utility function to build the response for a pre-serialized document. The cached bytes are passed on as they are, without copying them
+     * @param document The document
+     * @param ifNoneMatch Entity tags of the copies the client already has
+     * @param acceptEncoding Content codings the client accepts
+     * @return HTTP 200 with the document, or HTTP 304 if the client's copy is current
+     */
+    static ResponseEntity<byte[]> respond(RenderedDocument document, String ifNoneMatch, String acceptEncoding) {
+        boolean gzip = acceptsGzip(acceptEncoding);
+        String etag = document.getEtag(gzip);
+        if(matches(ifNoneMatch, etag))
+        {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(etag)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .cacheControl(CacheControl.noCache())
+                .contentType(JSON_LD);
+        if(gzip)
+        {
+            //The servlet container does not compress responses which already have a content encoding
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(document.getGzippedContent());
+        }
+        return response.body(document.getContent());
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if(acceptEncoding == null)
+        {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            if(parameters[0].trim().equalsIgnoreCase("gzip"))
+            {
+                //"gzip;q=0" explicitly refuses gzip
+                return parameters.length < 2 || !parameters[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if(ifNoneMatch == null)
+        {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            //If-None-Match uses weak comparison
+            if(candidate.startsWith("W/"))
+            {
+                candidate = candidate.substring(2);
+            }
+            if(candidate.equals("*") || candidate.equals(etag))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,13 @@
+package de.fraunhofer.iais.eis.ids.paris.admin;
+
+import de.fraunhofer.iais.eis.ids.paris.persistence.ParticipantPersistenceAndIndexing;
+
+/**
+ * Interface for classes which provide access to the persistence layer of a running ParIS, e.g. for the admin endpoints
+ */
+public interface ParticipantPersistenceProvider {
+    /**
+     * @return The persistence layer which persists, indexes and queries participants
+     */
+    ParticipantPersistenceAndIndexing getParticipantPersistence();
+}
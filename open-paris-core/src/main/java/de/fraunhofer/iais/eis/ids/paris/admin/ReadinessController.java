@@ -0,0 +1,30 @@
+package de.fraunhofer.iais.eis.ids.paris.admin;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Readiness endpoint, e.g. for a Kubernetes readiness probe or a load balancer health check.
+ * Unlike the admin endpoints, it does not require authentication
+ */
+@RestController
+public class ReadinessController {
+
+    @Autowired
+    private ReadinessProvider readinessProvider;
+
+    /**
+     * @return HTTP 200, if the ParIS is ready to handle messages, otherwise HTTP 503
+     */
+    @GetMapping("/ready")
+    public ResponseEntity<String> ready() {
+        if(readinessProvider.isReady())
+        {
+            return new ResponseEntity<>("READY", HttpStatus.OK);
+        }
+        return new ResponseEntity<>("STARTING", HttpStatus.SERVICE_UNAVAILABLE);
+    }
+}
@@ -0,0 +1,11 @@
+package de.fraunhofer.iais.eis.ids.paris.admin;
+
+/**
+ * Interface for classes which can tell whether the ParIS has finished its startup tasks and is ready to handle messages
+ */
+public interface ReadinessProvider {
+    /**
+     * @return true, if all startup tasks (such as loading the SHACL shapes) have completed
+     */
+    boolean isReady();
+}
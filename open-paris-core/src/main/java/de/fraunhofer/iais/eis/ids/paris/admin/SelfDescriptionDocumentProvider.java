@@ -0,0 +1,16 @@
+package de.fraunhofer.iais.eis.ids.paris.admin;
+
+import de.fraunhofer.iais.eis.ids.paris.persistence.RenderedDocument;
+
+import java.io.IOException;
+
+/**
+ * Interface for classes which provide the serialized self-description of a running ParIS
+ */
+public interface SelfDescriptionDocumentProvider {
+    /**
+     * @return The self-description of this ParIS, serialized to JSON-LD
+     * @throws IOException thrown, if the self-description could not be serialized
+     */
+    RenderedDocument getRenderedSelfDescription() throws IOException;
+}
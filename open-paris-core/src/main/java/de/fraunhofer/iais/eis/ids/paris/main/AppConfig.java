@@ -1,6 +1,7 @@
 package de.fraunhofer.iais.eis.ids.paris.main;
 
 import de.fraunhofer.iais.eis.ids.component.core.DefaultComponent;
+import de.fraunhofer.iais.eis.ids.component.core.RejectMessageException;
 import de.fraunhofer.iais.eis.ids.component.core.RequestType;
 import de.fraunhofer.iais.eis.ids.component.core.SelfDescriptionProvider;
 import de.fraunhofer.iais.eis.ids.component.ecosystemintegration.daps.DapsSecurityTokenVerifier;
@@ -10,12 +11,47 @@ import de.fraunhofer.iais.eis.ids.component.interaction.validation.ShaclValidato
 import de.fraunhofer.iais.eis.ids.connector.commons.broker.QueryHandler;
 import de.fraunhofer.iais.eis.ids.index.common.main.AppConfigTemplate;
 import de.fraunhofer.iais.eis.ids.index.common.persistence.*;
+import de.fraunhofer.iais.eis.ids.paris.persistence.AdmissionController;
+import de.fraunhofer.iais.eis.ids.paris.persistence.AsyncParticipantStatusHandler;
+import de.fraunhofer.iais.eis.ids.paris.persistence.ChangeLog;
+import de.fraunhofer.iais.eis.ids.paris.persistence.DatCache;
+import de.fraunhofer.iais.eis.ids.paris.persistence.EmbeddedRepositoryFacade;
+import de.fraunhofer.iais.eis.ids.paris.persistence.IndexRefreshMode;
+import de.fraunhofer.iais.eis.ids.paris.persistence.JsonLdContextCache;
+import de.fraunhofer.iais.eis.ids.paris.persistence.LuceneIndexing;
+import de.fraunhofer.iais.eis.ids.paris.persistence.MaintenanceScheduler;
+import de.fraunhofer.iais.eis.ids.paris.persistence.ParisMetrics;
+import de.fraunhofer.iais.eis.ids.paris.persistence.ParticipantCache;
+import de.fraunhofer.iais.eis.ids.paris.persistence.ParticipantDescriptionProvider;
 import de.fraunhofer.iais.eis.ids.paris.persistence.ParticipantPersistenceAndIndexing;
 import de.fraunhofer.iais.eis.ids.paris.persistence.ParticipantRegistrationHandler;
+import de.fraunhofer.iais.eis.ids.paris.persistence.ParticipantRepositoryFacade;
+import de.fraunhofer.iais.eis.ids.paris.persistence.ParticipantSnapshot;
+import de.fraunhofer.iais.eis.ids.paris.persistence.ParticipantStatusHandler;
+import de.fraunhofer.iais.eis.ids.paris.persistence.QueryCostEstimator;
+import de.fraunhofer.iais.eis.ids.paris.persistence.QueryLimits;
+import de.fraunhofer.iais.eis.ids.paris.persistence.QueryResultCache;
+import de.fraunhofer.iais.eis.ids.paris.persistence.ReplicaCoordinator;
+import de.fraunhofer.iais.eis.ids.paris.persistence.TripleStoreHttpClient;
+import de.fraunhofer.iais.eis.ids.paris.persistence.VirtualThreads;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 
 /**
@@ -25,36 +61,726 @@ public class AppConfig extends AppConfigTemplate {
 
     Logger logger = LoggerFactory.getLogger(AppConfig.class);
 
+    private IndexRefreshMode indexRefreshMode = IndexRefreshMode.FULL;
+    private int indexRefreshParallelism = 4;
+    private MaintenanceScheduler.Schedule indexRefreshSchedule = new MaintenanceScheduler.Schedule(Duration.ofSeconds(60), Duration.ofHours(12), Duration.ofMinutes(10));
+    private int maintenancePauseAboveActiveRequests = 16;
+    private Duration maintenanceMaxPostpone = Duration.ofMinutes(30);
+    private Duration maintenanceShutdownTimeout = Duration.ofSeconds(20);
+    private Duration participantCacheTtl = Duration.ofMinutes(5);
+    private long participantCacheMaxWeight = 100000;
+    private long queryCacheMaxBytes = 64 * 1024 * 1024;
+    private long queryCacheMaxEntryBytes = 1024 * 1024;
+    private int bulkBatchSize = 500;
+    private boolean asyncRegistration = false;
+    private int registrationQueueCapacity = 10000;
+    private int registrationWorkers = 4;
+    private String registrationJournal = "";
+    private String embeddedStoreLocation = "";
+    private String contextCacheDirectory = "";
+    private String indexBackend = "none";
+    private String luceneDirectory = "lucene-index";
+    private Duration luceneCommitInterval = Duration.ofSeconds(5);
+    private QueryLimits queryLimits = new QueryLimits(10000, 10 * 1024 * 1024, Duration.ofSeconds(60));
+    private double queryMaxCost = 1000000;
+    private int maxConcurrentQueries = 8;
+    private boolean virtualQueryWorkers = false;
+    private int queryQueueCapacity = 32;
+    private int maxConcurrentRegistrations = 8;
+    private Duration registrationWaitTimeout = Duration.ofSeconds(10);
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+    private int sparqlMaxConnections = 32;
+    private Duration sparqlKeepAlive = Duration.ofSeconds(60);
+    private Duration sparqlConnectTimeout = Duration.ofSeconds(10);
+    private boolean cacheTokens = true;
+    private Duration tokenRefreshMargin = Duration.ofSeconds(60);
+    private boolean replication = false;
+    private String replicaId = "";
+    private Duration replicationLease = Duration.ofSeconds(30);
+    private Duration replicationPollInterval = Duration.ofSeconds(1);
+    private boolean changeLogEnabled = false;
+    private Duration changeLogRetention = Duration.ofDays(30);
+    private String snapshotBootstrapFile = "";
+
+    private ParticipantPersistenceAndIndexing participantPersistence;
+    private AsyncParticipantStatusHandler asyncParticipantStatusHandler;
+    private EmbeddedRepositoryFacade embeddedRepositoryFacade;
+    private AdmissionController admissionController;
+    private LuceneIndexing luceneIndexing;
+    private TripleStoreHttpClient tripleStoreHttpClient;
+    private DatCache datCache;
+    private ReplicaCoordinator replicaCoordinator;
+    private MaintenanceScheduler maintenanceScheduler;
+    private ChangeLog changeLog;
+    private CompletableFuture<Void> shaclInitialization = CompletableFuture.completedFuture(null);
+
     public AppConfig(SelfDescriptionProvider selfDescriptionProvider) {
         super(selfDescriptionProvider);
     }
 
+    /**
+     * Sets the strategy which is used to keep the index in sync with the triple store
+     * @param indexRefreshMode FULL to replace the index content on every refresh, INCREMENTAL to only write changes
+     * @return this AppConfig
+     */
+    public AppConfig indexRefreshMode(IndexRefreshMode indexRefreshMode) {
+        this.indexRefreshMode = indexRefreshMode;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of participants which are fetched from the triple store concurrently during an index refresh
+     * @param indexRefreshParallelism maximum number of concurrent fetches
+     * @return this AppConfig
+     */
+    public AppConfig indexRefreshParallelism(int indexRefreshParallelism) {
+        this.indexRefreshParallelism = indexRefreshParallelism;
+        return this;
+    }
+
+    /**
+     * Sets when the index is refreshed from the triple store
+     * @param indexRefreshSchedule initial delay after startup, period and random jitter of the refresh
+     * @return this AppConfig
+     */
+    public AppConfig indexRefreshSchedule(MaintenanceScheduler.Schedule indexRefreshSchedule) {
+        this.indexRefreshSchedule = indexRefreshSchedule;
+        return this;
+    }
+
+    /**
+     * Sets the load at which maintenance jobs, such as the index refresh, are postponed
+     * @param maintenancePauseAboveActiveRequests number of concurrently processed queries and registrations, or 0 to never postpone
+     * @return this AppConfig
+     */
+    public AppConfig maintenancePauseAboveActiveRequests(int maintenancePauseAboveActiveRequests) {
+        this.maintenancePauseAboveActiveRequests = maintenancePauseAboveActiveRequests;
+        return this;
+    }
+
+    /**
+     * Sets the maximum time by which a maintenance job is postponed due to high load
+     * @param maintenanceMaxPostpone maximum postponement
+     * @return this AppConfig
+     */
+    public AppConfig maintenanceMaxPostpone(Duration maintenanceMaxPostpone) {
+        this.maintenanceMaxPostpone = maintenanceMaxPostpone;
+        return this;
+    }
+
+    /**
+     * Sets the time a running maintenance job may take to complete on shutdown, before it is interrupted
+     * @param maintenanceShutdownTimeout grace period on shutdown
+     * @return this AppConfig
+     */
+    public AppConfig maintenanceShutdownTimeout(Duration maintenanceShutdownTimeout) {
+        this.maintenanceShutdownTimeout = maintenanceShutdownTimeout;
+        return this;
+    }
+
+    /**
+     * Sets the time after which cached participants expire
+     * @param participantCacheTtl time to live of cached participants
+     * @return this AppConfig
+     */
+    public AppConfig participantCacheTtl(Duration participantCacheTtl) {
+        this.participantCacheTtl = participantCacheTtl;
+        return this;
+    }
+
+    /**
+     * Sets the maximum total number of triples of all cached participants. 0 disables the participant cache
+     * @param participantCacheMaxWeight maximum weight of the participant cache
+     * @return this AppConfig
+     */
+    public AppConfig participantCacheMaxWeight(long participantCacheMaxWeight) {
+        this.participantCacheMaxWeight = participantCacheMaxWeight;
+        return this;
+    }
+
+    /**
+     * Sets the maximum total size (in bytes, UTF-8 encoded) of all cached query results. 0 disables the query result cache
+     * @param queryCacheMaxBytes maximum size of the query result cache
+     * @return this AppConfig
+     */
+    public AppConfig queryCacheMaxBytes(long queryCacheMaxBytes) {
+        this.queryCacheMaxBytes = queryCacheMaxBytes;
+        return this;
+    }
+
+    /**
+     * Sets the maximum size (in bytes, UTF-8 encoded) of a single cached query result. Larger results are not cached
+     * @param queryCacheMaxEntryBytes maximum size of a cached query result
+     * @return this AppConfig
+     */
+    public AppConfig queryCacheMaxEntryBytes(long queryCacheMaxEntryBytes) {
+        this.queryCacheMaxEntryBytes = queryCacheMaxEntryBytes;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of participants which are written to the triple store in a single request during bulk registration
+     * @param bulkBatchSize maximum number of participants per batch
+     * @return this AppConfig
+     */
+    public AppConfig bulkBatchSize(int bulkBatchSize) {
+        this.bulkBatchSize = bulkBatchSize;
+        return this;
+    }
+
+    /**
+     * Enables the asynchronous registration mode, in which updates are acknowledged as soon as they are queued and applied by a pool of workers
+     * @param asyncRegistration true to enable asynchronous registration
+     * @return this AppConfig
+     */
+    public AppConfig asyncRegistration(boolean asyncRegistration) {
+        this.asyncRegistration = asyncRegistration;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of participants with pending updates in asynchronous registration mode. Further updates are rejected
+     * @param registrationQueueCapacity capacity of the registration queue
+     * @return this AppConfig
+     */
+    public AppConfig registrationQueueCapacity(int registrationQueueCapacity) {
+        this.registrationQueueCapacity = registrationQueueCapacity;
+        return this;
+    }
+
+    /**
+     * Sets the number of workers which apply updates in asynchronous registration mode
+     * @param registrationWorkers number of workers
+     * @return this AppConfig
+     */
+    public AppConfig registrationWorkers(int registrationWorkers) {
+        this.registrationWorkers = registrationWorkers;
+        return this;
+    }
+
+    /**
+     * Sets the journal file to which queued updates are written in asynchronous registration mode. Empty to keep queued updates in memory only
+     * @param registrationJournal path of the journal file
+     * @return this AppConfig
+     */
+    public AppConfig registrationJournal(String registrationJournal) {
+        this.registrationJournal = registrationJournal;
+        return this;
+    }
+
+    /**
+     * Sets the directory of an embedded TDB2 triple store. If set, the triple store runs inside the ParIS JVM and the SPARQL endpoint URL is ignored
+     * @param embeddedStoreLocation directory of the TDB2 dataset, or empty to use the SPARQL endpoint
+     * @return this AppConfig
+     */
+    public AppConfig embeddedStoreLocation(String embeddedStoreLocation) {
+        this.embeddedStoreLocation = embeddedStoreLocation;
+        return this;
+    }
+
+    /**
+     * Sets the directory in which the fetched JSON-LD context document is persisted, such that it is available on restarts without network access
+     * @param contextCacheDirectory directory of the context cache, or empty to keep the context in memory only
+     * @return this AppConfig
+     */
+    public AppConfig contextCacheDirectory(String contextCacheDirectory) {
+        this.contextCacheDirectory = contextCacheDirectory;
+        return this;
+    }
+
+    /**
+     * Sets the index backend. "none" disables the index, "lucene" keeps a full-text index in a local Lucene directory
+     * @param indexBackend name of the index backend
+     * @return this AppConfig
+     */
+    public AppConfig indexBackend(String indexBackend) {
+        this.indexBackend = indexBackend;
+        return this;
+    }
+
+    /**
+     * Sets the directory of the Lucene index, if the lucene index backend is used
+     * @param luceneDirectory directory of the index
+     * @return this AppConfig
+     */
+    public AppConfig luceneDirectory(String luceneDirectory) {
+        this.luceneDirectory = luceneDirectory;
+        return this;
+    }
+
+    /**
+     * Sets the interval in which writes to the Lucene index are committed
+     * @param luceneCommitInterval commit interval
+     * @return this AppConfig
+     */
+    public AppConfig luceneCommitInterval(Duration luceneCommitInterval) {
+        this.luceneCommitInterval = luceneCommitInterval;
+        return this;
+    }
+
+    /**
+     * Sets the server-side limits (rows, result size, execution time, whether a LIMIT is required) which are enforced for participant queries
+     * @param queryLimits limits to be enforced
+     * @return this AppConfig
+     */
+    public AppConfig queryLimits(QueryLimits queryLimits) {
+        this.queryLimits = queryLimits;
+        return this;
+    }
+
+    /**
+     * Sets the maximum statically estimated cost of a query. More expensive queries are rejected before they are evaluated. 0 disables the check
+     * @param queryMaxCost maximum estimated query cost
+     * @return this AppConfig
+     */
+    public AppConfig queryMaxCost(double queryMaxCost) {
+        this.queryMaxCost = queryMaxCost;
+        return this;
+    }
+
+    /**
+     * Sets the number of queries which are evaluated concurrently
+     * @param maxConcurrentQueries size of the query pool
+     * @return this AppConfig
+     */
+    public AppConfig maxConcurrentQueries(int maxConcurrentQueries) {
+        this.maxConcurrentQueries = maxConcurrentQueries;
+        return this;
+    }
+
+    /**
+     * Sets whether the query workers are virtual threads, e.g. if inbound messages are handled on virtual threads as well.
+     * Requires Java 21. On older runtimes, platform threads are used
+     * @param virtualQueryWorkers true for virtual query workers
+     * @return this AppConfig
+     */
+    public AppConfig virtualQueryWorkers(boolean virtualQueryWorkers) {
+        this.virtualQueryWorkers = virtualQueryWorkers;
+        return this;
+    }
+
+    /**
+     * Sets the number of queries which may wait for a free query worker. Further queries are rejected
+     * @param queryQueueCapacity capacity of the query queue
+     * @return this AppConfig
+     */
+    public AppConfig queryQueueCapacity(int queryQueueCapacity) {
+        this.queryQueueCapacity = queryQueueCapacity;
+        return this;
+    }
+
+    /**
+     * Sets the number of registrations which are processed concurrently
+     * @param maxConcurrentRegistrations number of registration slots
+     * @return this AppConfig
+     */
+    public AppConfig maxConcurrentRegistrations(int maxConcurrentRegistrations) {
+        this.maxConcurrentRegistrations = maxConcurrentRegistrations;
+        return this;
+    }
+
+    /**
+     * Sets the maximum time a registration waits for a free slot before it is rejected
+     * @param registrationWaitTimeout maximum waiting time
+     * @return this AppConfig
+     */
+    public AppConfig registrationWaitTimeout(Duration registrationWaitTimeout) {
+        this.registrationWaitTimeout = registrationWaitTimeout;
+        return this;
+    }
+
+    /**
+     * Sets the size of the pool of keep-alive connections to the SPARQL endpoint. 0 keeps the default HTTP client of Jena,
+     * in which case queries evaluated via HTTP are only abandoned after the query timeout, and the triple store stops them by its own timeout
+     * @param sparqlMaxConnections maximum number of connections
+     * @return this AppConfig
+     */
+    public AppConfig sparqlMaxConnections(int sparqlMaxConnections) {
+        this.sparqlMaxConnections = sparqlMaxConnections;
+        return this;
+    }
+
+    /**
+     * Sets the time after which idle connections to the SPARQL endpoint are closed
+     * @param sparqlKeepAlive keep-alive time
+     * @return this AppConfig
+     */
+    public AppConfig sparqlKeepAlive(Duration sparqlKeepAlive) {
+        this.sparqlKeepAlive = sparqlKeepAlive;
+        return this;
+    }
+
+    /**
+     * Sets the maximum time to establish a connection to the SPARQL endpoint, or to wait for a free connection of the pool
+     * @param sparqlConnectTimeout connect timeout
+     * @return this AppConfig
+     */
+    public AppConfig sparqlConnectTimeout(Duration sparqlConnectTimeout) {
+        this.sparqlConnectTimeout = sparqlConnectTimeout;
+        return this;
+    }
+
+    /**
+     * Enables caching of the DAT which is attached to responses, such that responses do not wait for the DAPS
+     * @param cacheTokens true to reuse tokens until shortly before their expiry
+     * @return this AppConfig
+     */
+    public AppConfig cacheTokens(boolean cacheTokens) {
+        this.cacheTokens = cacheTokens;
+        return this;
+    }
+
+    /**
+     * Sets the time before the expiry of a cached DAT at which it is refreshed in the background
+     * @param tokenRefreshMargin refresh margin
+     * @return this AppConfig
+     */
+    public AppConfig tokenRefreshMargin(Duration tokenRefreshMargin) {
+        this.tokenRefreshMargin = tokenRefreshMargin;
+        return this;
+    }
+
+    /**
+     * Enables the multi-replica mode, in which several ParIS instances share one triple store. Background jobs then only run on the leader,
+     * and modifications invalidate the caches of all replicas. Requires a SPARQL endpoint
+     * @param replication true to enable the multi-replica mode
+     * @return this AppConfig
+     */
+    public AppConfig replication(boolean replication) {
+        this.replication = replication;
+        return this;
+    }
+
+    /**
+     * Sets the identifier of this replica, which must be unique among all replicas
+     * @param replicaId identifier of this replica, or empty to derive it from the host name
+     * @return this AppConfig
+     */
+    public AppConfig replicaId(String replicaId) {
+        this.replicaId = replicaId;
+        return this;
+    }
+
+    /**
+     * Sets the duration of the leader lease. If the leader fails, another replica takes over its background jobs after at most this duration
+     * @param replicationLease lease duration
+     * @return this AppConfig
+     */
+    public AppConfig replicationLease(Duration replicationLease) {
+        this.replicationLease = replicationLease;
+        return this;
+    }
+
+    /**
+     * Sets the interval in which modifications made by other replicas are polled. Bounds how long other replicas may serve outdated cache entries
+     * @param replicationPollInterval poll interval
+     * @return this AppConfig
+     */
+    public AppConfig replicationPollInterval(Duration replicationPollInterval) {
+        this.replicationPollInterval = replicationPollInterval;
+        return this;
+    }
+
+    /**
+     * Enables the change log, which records every modification of a participant with a sequence number, such that consumers can synchronize incrementally.
+     * Requires a SPARQL endpoint or the embedded triple store. Each modification then costs one additional SPARQL update,
+     * unless replicas are coordinated, which exchange their modifications through the change log anyway. Disabled by default
+     * @param changeLogEnabled true to log modifications
+     * @return this AppConfig
+     */
+    public AppConfig changeLogEnabled(boolean changeLogEnabled) {
+        this.changeLogEnabled = changeLogEnabled;
+        return this;
+    }
+
+    /**
+     * Sets the time after which entries are removed from the change log. Consumers which fall behind further have to resynchronize completely
+     * @param changeLogRetention retention of change log entries
+     * @return this AppConfig
+     */
+    public AppConfig changeLogRetention(Duration changeLogRetention) {
+        this.changeLogRetention = changeLogRetention;
+        return this;
+    }
+
+    /**
+     * Sets a snapshot from which the triple store and the index are filled on startup, if no participants are registered yet.
+     * Snapshots are created via the admin endpoint GET /admin/snapshot
+     * @param snapshotBootstrapFile path of the snapshot, or empty to not bootstrap
+     * @return this AppConfig
+     */
+    public AppConfig snapshotBootstrapFile(String snapshotBootstrapFile) {
+        this.snapshotBootstrapFile = snapshotBootstrapFile;
+        return this;
+    }
+
+    /**
+     * Sets the registry to which timers, counters and gauges of the registration and query processing are published
+     * @param meterRegistry registry to be used
+     * @return this AppConfig
+     */
+    public AppConfig meterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        return this;
+    }
+
+    /**
+     * Tells whether the SHACL shapes have been loaded, if SHACL validation is enabled
+     * @return true, if SHACL validation is disabled or its initialization has completed
+     */
+    public boolean isShaclReady() {
+        return shaclInitialization.isDone();
+    }
+
+    /**
+     * Blocks until the SHACL shapes have been loaded. Messages arriving during startup are held back this way rather than
+     * each of them triggering the expensive shape initialization. If the timeout expires, the message is processed anyway
+     * @param timeout maximum time to wait
+     */
+    public void awaitShaclInitialization(Duration timeout) {
+        try {
+            shaclInitialization.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("SHACL shapes are not initialized after " + timeout.getSeconds() + " seconds. Processing message anyway.");
+        } catch (ExecutionException e) {
+            logger.warn("SHACL shape initialization failed.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Releases resources which were created by {@link #build()}. Queued registrations are kept in the journal
+     */
+    public void shutDown() {
+        //Stopped first, so that no refresh runs against resources which are closed below
+        if(maintenanceScheduler != null)
+        {
+            maintenanceScheduler.close();
+        }
+        if(replicaCoordinator != null)
+        {
+            replicaCoordinator.close();
+        }
+        if(changeLog != null)
+        {
+            changeLog.close();
+        }
+        if(asyncParticipantStatusHandler != null)
+        {
+            try {
+                asyncParticipantStatusHandler.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close registration queue.", e);
+            }
+        }
+        if(admissionController != null)
+        {
+            admissionController.close();
+        }
+        if(datCache != null)
+        {
+            datCache.close();
+        }
+        if(tripleStoreHttpClient != null)
+        {
+            tripleStoreHttpClient.close();
+        }
+        if(luceneIndexing != null)
+        {
+            try {
+                luceneIndexing.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close Lucene index.", e);
+            }
+        }
+        if(embeddedRepositoryFacade != null)
+        {
+            embeddedRepositoryFacade.close();
+        }
+    }
+
+    /**
+     * Getter for the persistence layer which was created by {@link #build()}
+     * @return the persistence layer, or null if build() was not called yet
+     */
+    public ParticipantPersistenceAndIndexing getParticipantPersistence() {
+        return participantPersistence;
+    }
+
+    /**
+     * Internal function which loads a snapshot into an empty triple store. Failures are logged only, as the ParIS is functional without the snapshot
+     * @param snapshot path of the snapshot
+     */
+    private void bootstrapFromSnapshot(Path snapshot) {
+        try {
+            if(participantPersistence.hasParticipants())
+            {
+                logger.info("Participants are already registered. Not bootstrapping from snapshot " + snapshot + ".");
+                return;
+            }
+            long start = System.currentTimeMillis();
+            ParticipantSnapshot.Manifest manifest = participantPersistence.loadSnapshot(snapshot);
+            logger.info("Bootstrapped " + manifest.getParticipants() + " participants from snapshot " + snapshot + " in " + (System.currentTimeMillis() - start) + " ms.");
+        } catch (IOException | RejectMessageException e) {
+            logger.error("Failed to bootstrap from snapshot " + snapshot + ".", e);
+        }
+    }
+
+    private static String defaultReplicaId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "paris";
+        }
+        //Distinguishes restarts of the same host, such that a restarted replica does not take over the lease of its predecessor
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
     /**
      * This method creates a MultipartComponentInteractor with all settings which were previously configured. Appropriate message handlers are created
      * @return MultipartComponentInteractor with ParIS functionality
      */
     public MultipartComponentInteractor build() {
-        //Try to pre-initialize the SHACL validation shapes so that this won't slow us down during message handling
-        //TODO: Do this in a separate thread
+        //Pre-initialize the SHACL validation shapes in a separate thread so that this won't slow us down during startup or message handling
         if(performShaclValidation) {
+            shaclInitialization = CompletableFuture.runAsync(() -> {
+                try {
+                    ShaclValidator.initialize();
+                    logger.info("Shapes for SHACL validation initialized.");
+                } catch (IOException e) {
+                    logger.warn("Failed to initialize Shapes for SHACL validation.", e);
+                }
+            }, runnable -> {
+                Thread thread = new Thread(runnable, "shacl-initialization");
+                thread.setDaemon(true);
+                thread.start();
+            });
+        }
+        boolean embedded = embeddedStoreLocation != null && !embeddedStoreLocation.isEmpty();
+        //Also used for the loopback endpoint of the embedded triple store, as it limits the time of queries evaluated by the RepositoryFacade
+        if((embedded || (sparqlEndpointUrl != null && !sparqlEndpointUrl.isEmpty())) && sparqlMaxConnections > 0) {
+            tripleStoreHttpClient = new TripleStoreHttpClient(sparqlMaxConnections, sparqlKeepAlive, sparqlConnectTimeout);
+            tripleStoreHttpClient.install();
+        }
+        ParticipantRepositoryFacade repositoryFacade;
+        if(embedded) {
+            logger.info("Using embedded TDB2 triple store at " + embeddedStoreLocation);
             try {
-                ShaclValidator.initialize();
+                embeddedRepositoryFacade = EmbeddedRepositoryFacade.open(embeddedStoreLocation);
             } catch (IOException e) {
-                logger.warn("Failed to initialize Shapes for SHACL validation.", e);
+                throw new UncheckedIOException("Failed to open embedded triple store.", e);
             }
+            repositoryFacade = embeddedRepositoryFacade;
+        }
+        else {
+            repositoryFacade = new ParticipantRepositoryFacade(sparqlEndpointUrl);
         }
-        RepositoryFacade repositoryFacade = new RepositoryFacade(sparqlEndpointUrl);
 
-        ParticipantPersistenceAndIndexing participantPersistence = new ParticipantPersistenceAndIndexing(
+        participantPersistence = new ParticipantPersistenceAndIndexing(
                 repositoryFacade, catalogUri);
-        participantPersistence.setIndexing(new NullIndexing());
+        if("lucene".equalsIgnoreCase(indexBackend)) {
+            logger.info("Using Lucene index at " + luceneDirectory);
+            try {
+                luceneIndexing = new LuceneIndexing(Paths.get(luceneDirectory), luceneCommitInterval);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open Lucene index.", e);
+            }
+            participantPersistence.setIndexing(luceneIndexing);
+        }
+        else {
+            participantPersistence.setIndexing(new NullIndexing());
+        }
+        participantPersistence.setIndexRefreshMode(indexRefreshMode);
+        participantPersistence.setIndexRefreshParallelism(indexRefreshParallelism);
+        participantPersistence.setParticipantCache(new ParticipantCache(participantCacheTtl, participantCacheMaxWeight));
+        participantPersistence.setQueryResultCache(new QueryResultCache(queryCacheMaxBytes, queryCacheMaxEntryBytes));
+        participantPersistence.setBulkBatchSize(bulkBatchSize);
+        participantPersistence.setQueryLimits(queryLimits);
+        participantPersistence.setQueryCostEstimator(new QueryCostEstimator(queryMaxCost));
+        ThreadFactory queryThreadFactory = null;
+        if(virtualQueryWorkers) {
+            queryThreadFactory = VirtualThreads.newVirtualThreadFactory("paris-query-worker-");
+            if(queryThreadFactory == null) {
+                logger.warn("Virtual query workers require Java 21 or newer. Using platform threads.");
+            }
+        }
+        admissionController = new AdmissionController(maxConcurrentQueries, queryQueueCapacity, maxConcurrentRegistrations, registrationWaitTimeout, queryThreadFactory);
+        participantPersistence.setAdmissionController(admissionController);
+        ParisMetrics metrics = new ParisMetrics(meterRegistry);
+        participantPersistence.setMetrics(metrics);
+        if(tripleStoreHttpClient != null) {
+            metrics.bindConnectionPool(tripleStoreHttpClient);
+            participantPersistence.getGraphStatusCache().setLookupExecutor(tripleStoreHttpClient.getLookupExecutor());
+        }
         if (contextDocumentUrl != null && !contextDocumentUrl.isEmpty()) {
             participantPersistence.setContextDocumentUrl(contextDocumentUrl);
             ConstructQueryResultHandler.contextDocumentUrl = contextDocumentUrl;
+            try {
+                participantPersistence.setContextCache(JsonLdContextCache.load(contextDocumentUrl,
+                        contextCacheDirectory == null || contextCacheDirectory.isEmpty() ? null : Paths.get(contextCacheDirectory)));
+            } catch (IOException e) {
+                logger.warn("Failed to load JSON-LD context from " + contextDocumentUrl + ". The context will be fetched per message.", e);
+            }
         }
         ConstructQueryResultHandler.catalogUri = catalogUri.toString();
 
-        ParticipantRegistrationHandler registrationHandler = new ParticipantRegistrationHandler(participantPersistence, selfDescriptionProvider.getSelfDescription(), securityTokenProvider, responseSenderAgent);
+        boolean replicate = replication;
+        if(replication && (embeddedRepositoryFacade != null || !repositoryFacade.supportsDirectAccess())) {
+            logger.warn("Multi-replica mode requires a shared SPARQL endpoint. Running as single instance.");
+            replicate = false;
+        }
+        if(changeLogEnabled && !repositoryFacade.supportsDirectAccess()) {
+            logger.warn("The change log requires a SPARQL endpoint or the embedded triple store. Modifications are not logged.");
+        }
+        if(repositoryFacade.supportsDirectAccess() && (replicate || changeLogEnabled)) {
+            //Replicas follow each other's modifications through the change log, so there is only one log per triple store
+            changeLog = new ChangeLog(repositoryFacade, replicaId == null || replicaId.isEmpty() ? defaultReplicaId() : replicaId);
+            if(replicate) {
+                replicaCoordinator = new ReplicaCoordinator(repositoryFacade, changeLog, replicationLease, replicationPollInterval);
+                participantPersistence.setReplicaCoordinator(replicaCoordinator, luceneIndexing != null);
+            }
+            if(changeLogEnabled) {
+                participantPersistence.setChangeLog(changeLog);
+            }
+        }
+        maintenanceScheduler = new MaintenanceScheduler(metrics, maintenanceShutdownTimeout);
+        maintenanceScheduler.setLoadLimit(() -> admissionController.getActiveQueries() + admissionController.getActiveRegistrations(),
+                maintenancePauseAboveActiveRequests, maintenanceMaxPostpone);
+        participantPersistence.scheduleIndexRefresh(maintenanceScheduler, indexRefreshSchedule);
+
+        if(changeLog != null) {
+            //Without consumers of the change log, entries are only kept until all replicas have seen them
+            Duration retention = changeLogEnabled ? changeLogRetention : Duration.ofHours(1);
+            maintenanceScheduler.schedule("change-log-cleanup",
+                    new MaintenanceScheduler.Schedule(Duration.ofMinutes(5), Duration.ofHours(1), Duration.ofMinutes(5)),
+                    () -> replicaCoordinator == null || replicaCoordinator.isLeader(),
+                    () -> changeLog.removeOldEntries(retention));
+        }
+        if(snapshotBootstrapFile != null && !snapshotBootstrapFile.isEmpty()) {
+            bootstrapFromSnapshot(Paths.get(snapshotBootstrapFile));
+        }
+
+        ParticipantStatusHandler participantStatusHandler = participantPersistence;
+        if(asyncRegistration) {
+            try {
+                asyncParticipantStatusHandler = new AsyncParticipantStatusHandler(participantPersistence, registrationQueueCapacity, registrationWorkers,
+                        registrationJournal.isEmpty() ? null : Paths.get(registrationJournal));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open registration journal.", e);
+            }
+            metrics.bindRegistrationQueue(asyncParticipantStatusHandler);
+            participantStatusHandler = asyncParticipantStatusHandler;
+        }
+
+        ParticipantRegistrationHandler registrationHandler = new ParticipantRegistrationHandler(participantStatusHandler, selfDescriptionProvider.getSelfDescription(), securityTokenProvider, responseSenderAgent);
+        registrationHandler.setMetrics(metrics);
+        if(cacheTokens) {
+            datCache = new DatCache(securityTokenProvider, tokenRefreshMargin, Duration.ofMinutes(5));
+            datCache.prefetch();
+            registrationHandler.setTokenCache(datCache);
+        }
 
         //TODO: implement ParticipantUnavailableValidationStrategy
         //  Task of this validation: Prevent signing off foreign participants
@@ -63,7 +789,8 @@ public class AppConfig extends AppConfigTemplate {
         QueryHandler queryHandler = new QueryHandler(selfDescriptionProvider.getSelfDescription(), participantPersistence, securityTokenProvider, responseSenderAgent);
 
         DefaultComponent component = new DefaultComponent(selfDescriptionProvider, securityTokenProvider, responseSenderAgent, false);
-        DescriptionProvider descriptionProvider = new DescriptionProvider(selfDescriptionProvider.getSelfDescription(), repositoryFacade, catalogUri);
+        //Participants are served through the persistence layer and its caches, all other elements from the triple store
+        DescriptionProvider descriptionProvider = new ParticipantDescriptionProvider(selfDescriptionProvider.getSelfDescription(), participantPersistence, repositoryFacade, catalogUri);
         DescriptionRequestHandler descriptionHandler = new DescriptionRequestHandler(descriptionProvider, securityTokenProvider, responseSenderAgent);
         component.addMessageHandler(registrationHandler, RequestType.INFRASTRUCTURE);
         component.addMessageHandler(queryHandler, RequestType.INFRASTRUCTURE);
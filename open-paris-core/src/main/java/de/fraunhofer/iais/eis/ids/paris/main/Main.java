@@ -5,7 +5,17 @@ import de.fraunhofer.iais.eis.ids.component.core.SelfDescriptionProvider;
 import de.fraunhofer.iais.eis.ids.component.interaction.multipart.MultipartComponentInteractor;
 import de.fraunhofer.iais.eis.ids.component.protocol.http.server.ComponentInteractorProvider;
 import de.fraunhofer.iais.eis.ids.index.common.main.MainTemplate;
+import de.fraunhofer.iais.eis.ids.paris.admin.ParticipantPersistenceProvider;
+import de.fraunhofer.iais.eis.ids.paris.admin.ReadinessProvider;
+import de.fraunhofer.iais.eis.ids.paris.admin.SelfDescriptionDocumentProvider;
 import de.fraunhofer.iais.eis.ids.paris.impl.ParISSelfDescription;
+import de.fraunhofer.iais.eis.ids.paris.persistence.IndexRefreshMode;
+import de.fraunhofer.iais.eis.ids.paris.persistence.MaintenanceScheduler;
+import de.fraunhofer.iais.eis.ids.paris.persistence.ParticipantPersistenceAndIndexing;
+import de.fraunhofer.iais.eis.ids.paris.persistence.QueryLimits;
+import de.fraunhofer.iais.eis.ids.paris.persistence.RenderedDocument;
+import de.fraunhofer.iais.eis.ids.paris.persistence.VirtualThreads;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,24 +23,30 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.solr.SolrAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.Duration;
 import java.util.Collection;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Entry point to the ParIS
  */
 @Configuration
 @EnableAutoConfiguration(exclude = SolrAutoConfiguration.class)
-@ComponentScan(basePackages = { "de.fraunhofer.iais.eis.ids.component.protocol.http.server"} )
+@ComponentScan(basePackages = { "de.fraunhofer.iais.eis.ids.component.protocol.http.server", "de.fraunhofer.iais.eis.ids.paris.admin"} )
 
-public class Main extends MainTemplate implements ComponentInteractorProvider {
+public class Main extends MainTemplate implements ComponentInteractorProvider, ParticipantPersistenceProvider, ReadinessProvider, SelfDescriptionDocumentProvider {
 
     private final Logger logger = LoggerFactory.getLogger(Main.class);
 
@@ -38,33 +54,181 @@ public class Main extends MainTemplate implements ComponentInteractorProvider {
     @Value("${sparql.url}")
     private String sparqlEndpointUrl;
 
+    @Value("${sparql.embeddedLocation}")
+    private String embeddedStoreLocation;
+
+    @Value("${sparql.http.maxConnections}")
+    private int sparqlMaxConnections;
+
+    @Value("${sparql.http.keepAliveSeconds}")
+    private long sparqlKeepAliveSeconds;
+
+    @Value("${sparql.http.connectTimeoutSeconds}")
+    private long sparqlConnectTimeoutSeconds;
+
     @Value("${infomodel.contextUrl}")
     private String contextDocumentUrl;
 
+    @Value("${infomodel.contextCacheDirectory}")
+    private String contextCacheDirectory;
+
     @Value("${jwks.trustedHosts}")
     private Collection<String> trustedJwksHosts;
 
     @Value("${daps.validateIncoming}")
     private boolean dapsValidateIncoming;
 
+    @Value("${daps.cacheTokens}")
+    private boolean cacheTokens;
+
+    @Value("${daps.tokenRefreshMarginSeconds}")
+    private long tokenRefreshMarginSeconds;
+
     @Value("${component.responseSenderAgent}")
     private String responseSenderAgent;
 
     @Value("${infomodel.validateWithShacl}")
     private boolean validateShacl;
 
+    @Value("${infomodel.shaclStartupTimeoutSeconds}")
+    private long shaclStartupTimeoutSeconds;
+
+    @Value("${index.backend}")
+    private String indexBackend;
+
+    @Value("${index.lucene.directory}")
+    private String luceneDirectory;
+
+    @Value("${index.lucene.commitIntervalSeconds}")
+    private long luceneCommitIntervalSeconds;
+
+    @Value("${index.refreshMode}")
+    private IndexRefreshMode indexRefreshMode;
+
+    @Value("${index.refreshParallelism}")
+    private int indexRefreshParallelism;
+
+    @Value("${index.refresh.initialDelaySeconds}")
+    private long indexRefreshInitialDelaySeconds;
+
+    @Value("${index.refresh.periodMinutes}")
+    private long indexRefreshPeriodMinutes;
+
+    @Value("${index.refresh.jitterMinutes}")
+    private long indexRefreshJitterMinutes;
+
+    @Value("${maintenance.pauseAboveActiveRequests}")
+    private int maintenancePauseAboveActiveRequests;
+
+    @Value("${maintenance.maxPostponeMinutes}")
+    private long maintenanceMaxPostponeMinutes;
+
+    @Value("${maintenance.shutdownTimeoutSeconds}")
+    private long maintenanceShutdownTimeoutSeconds;
+
+    @Value("${participantCache.ttlSeconds}")
+    private long participantCacheTtlSeconds;
+
+    @Value("${participantCache.maxWeight}")
+    private long participantCacheMaxWeight;
+
+    @Value("${queryCache.maxBytes}")
+    private long queryCacheMaxBytes;
+
+    @Value("${queryCache.maxEntryBytes}")
+    private long queryCacheMaxEntryBytes;
+
+    @Value("${bulkRegistration.batchSize}")
+    private int bulkBatchSize;
+
+    @Value("${query.maxRows}")
+    private long queryMaxRows;
+
+    @Value("${query.maxBytes}")
+    private long queryMaxBytes;
+
+    @Value("${query.timeoutSeconds}")
+    private long queryTimeoutSeconds;
+
+    @Value("${query.requireLimit}")
+    private boolean queryRequireLimit;
+
+    @Value("${query.maxCost}")
+    private double queryMaxCost;
+
+    @Value("${admission.maxConcurrentQueries}")
+    private int maxConcurrentQueries;
+
+    @Value("${messageHandling.threads}")
+    private String messageHandlingThreads;
+
+    @Value("${admission.queryQueueCapacity}")
+    private int queryQueueCapacity;
+
+    @Value("${admission.maxConcurrentRegistrations}")
+    private int maxConcurrentRegistrations;
+
+    @Value("${admission.registrationWaitSeconds}")
+    private long registrationWaitSeconds;
+
+    @Value("${changeLog.enabled}")
+    private boolean changeLogEnabled;
+
+    @Value("${changeLog.retentionDays}")
+    private long changeLogRetentionDays;
+
+    @Value("${snapshot.bootstrapFile}")
+    private String snapshotBootstrapFile;
+
+    @Value("${replication.enabled}")
+    private boolean replication;
+
+    @Value("${replication.replicaId}")
+    private String replicaId;
+
+    @Value("${replication.leaseSeconds}")
+    private long replicationLeaseSeconds;
+
+    @Value("${replication.pollIntervalMillis}")
+    private long replicationPollIntervalMillis;
+
+    @Value("${registration.async}")
+    private boolean asyncRegistration;
+
+    @Value("${registration.queueCapacity}")
+    private int registrationQueueCapacity;
+
+    @Value("${registration.workers}")
+    private int registrationWorkers;
+
+    @Value("${registration.journal}")
+    private String registrationJournal;
+
+    private AppConfig appConfig;
+
     //private RestHighLevelClient elasticsearchClient;
 
     //Environment allows us to access application.properties
     @Autowired
     private Environment env;
 
+    //Provided by Spring Boot Actuator, exported at /actuator/prometheus
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    //Created once, so that the self-description is only built once, and only serialized once for the description endpoint
+    private ParISSelfDescription parisSelfDescription;
+
     @Override
-    public SelfDescriptionProvider createSelfDescriptionProvider() throws URISyntaxException {
-        return new ParISSelfDescription(
-                new URI(componentUri),
-                new URI(componentMaintainer),
-                componentModelVersion);
+    public synchronized SelfDescriptionProvider createSelfDescriptionProvider() throws URISyntaxException {
+        if(parisSelfDescription == null)
+        {
+            parisSelfDescription = new ParISSelfDescription(
+                    new URI(componentUri),
+                    new URI(componentMaintainer),
+                    componentModelVersion);
+        }
+        return parisSelfDescription;
     }
 
     /**
@@ -88,7 +252,49 @@ public class Main extends MainTemplate implements ComponentInteractorProvider {
 
         try {
             //Open-Source version of ParIS has no indexing
-            multipartComponentInteractor = new AppConfig(createSelfDescriptionProvider())
+            appConfig = new AppConfig(createSelfDescriptionProvider());
+            multipartComponentInteractor = appConfig
+                    .indexBackend(indexBackend)
+                    .luceneDirectory(luceneDirectory)
+                    .luceneCommitInterval(Duration.ofSeconds(luceneCommitIntervalSeconds))
+                    .indexRefreshMode(indexRefreshMode)
+                    .indexRefreshParallelism(indexRefreshParallelism)
+                    .indexRefreshSchedule(new MaintenanceScheduler.Schedule(Duration.ofSeconds(indexRefreshInitialDelaySeconds),
+                            Duration.ofMinutes(indexRefreshPeriodMinutes), Duration.ofMinutes(indexRefreshJitterMinutes)))
+                    .maintenancePauseAboveActiveRequests(maintenancePauseAboveActiveRequests)
+                    .maintenanceMaxPostpone(Duration.ofMinutes(maintenanceMaxPostponeMinutes))
+                    .maintenanceShutdownTimeout(Duration.ofSeconds(maintenanceShutdownTimeoutSeconds))
+                    .participantCacheTtl(Duration.ofSeconds(participantCacheTtlSeconds))
+                    .participantCacheMaxWeight(participantCacheMaxWeight)
+                    .queryCacheMaxBytes(queryCacheMaxBytes)
+                    .queryCacheMaxEntryBytes(queryCacheMaxEntryBytes)
+                    .bulkBatchSize(bulkBatchSize)
+                    .asyncRegistration(asyncRegistration)
+                    .registrationQueueCapacity(registrationQueueCapacity)
+                    .registrationWorkers(registrationWorkers)
+                    .registrationJournal(registrationJournal)
+                    .embeddedStoreLocation(embeddedStoreLocation)
+                    .contextCacheDirectory(contextCacheDirectory)
+                    .queryLimits(new QueryLimits(queryMaxRows, queryMaxBytes, Duration.ofSeconds(queryTimeoutSeconds), queryRequireLimit))
+                    .queryMaxCost(queryMaxCost)
+                    .maxConcurrentQueries(maxConcurrentQueries)
+                    .virtualQueryWorkers("virtual".equalsIgnoreCase(messageHandlingThreads))
+                    .queryQueueCapacity(queryQueueCapacity)
+                    .maxConcurrentRegistrations(maxConcurrentRegistrations)
+                    .registrationWaitTimeout(Duration.ofSeconds(registrationWaitSeconds))
+                    .meterRegistry(meterRegistry)
+                    .sparqlMaxConnections(sparqlMaxConnections)
+                    .sparqlKeepAlive(Duration.ofSeconds(sparqlKeepAliveSeconds))
+                    .sparqlConnectTimeout(Duration.ofSeconds(sparqlConnectTimeoutSeconds))
+                    .cacheTokens(cacheTokens)
+                    .tokenRefreshMargin(Duration.ofSeconds(tokenRefreshMarginSeconds))
+                    .changeLogEnabled(changeLogEnabled)
+                    .changeLogRetention(Duration.ofDays(changeLogRetentionDays))
+                    .snapshotBootstrapFile(snapshotBootstrapFile)
+                    .replication(replication)
+                    .replicaId(replicaId)
+                    .replicationLease(Duration.ofSeconds(replicationLeaseSeconds))
+                    .replicationPollInterval(Duration.ofMillis(replicationPollIntervalMillis))
                     .sparqlEndpointUrl(sparqlEndpointUrl)
                     .contextDocumentUrl(contextDocumentUrl)
                     .securityTokenProvider(createSecurityTokenProvider())
@@ -107,7 +313,33 @@ public class Main extends MainTemplate implements ComponentInteractorProvider {
     @PreDestroy
     @Override
     public void shutDown() {
+        if(appConfig != null) {
+            appConfig.shutDown();
+        }
+    }
 
+    /**
+     * Runs the handling of inbound requests, including IDS messages, on virtual threads if messageHandling.threads is "virtual".
+     * The query workers are then virtual threads as well, see AppConfig.virtualQueryWorkers.
+     * Otherwise, Tomcat uses its platform thread pool, sized by the server.tomcat.* properties.
+     * Static, such that this configuration is not instantiated before the web server is created
+     * @param messageHandlingThreads "platform" or "virtual"
+     * @return customizer of the Tomcat connector
+     */
+    @Bean
+    public static WebServerFactoryCustomizer<TomcatServletWebServerFactory> requestExecutorCustomizer(@Value("${messageHandling.threads}") String messageHandlingThreads) {
+        return factory -> {
+            if(!"virtual".equalsIgnoreCase(messageHandlingThreads)) {
+                return;
+            }
+            ExecutorService executor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+            if(executor == null) {
+                LoggerFactory.getLogger(Main.class).warn("Virtual threads require Java 21 or newer (running on " + System.getProperty("java.version") + "). Using platform threads.");
+                return;
+            }
+            LoggerFactory.getLogger(Main.class).info("Handling requests on virtual threads.");
+            factory.addConnectorCustomizers(connector -> connector.getProtocolHandler().setExecutor(executor));
+        };
     }
 
     public static void main(String[] args) {
@@ -116,6 +348,31 @@ public class Main extends MainTemplate implements ComponentInteractorProvider {
 
     @Override
     public MultipartComponentInteractor getComponentInteractor() {
+        //Messages which arrive before the SHACL shapes are loaded wait for them
+        if(appConfig != null && !appConfig.isShaclReady()) {
+            appConfig.awaitShaclInitialization(Duration.ofSeconds(shaclStartupTimeoutSeconds));
+        }
         return multipartComponentInteractor;
     }
+
+    @Override
+    public boolean isReady() {
+        return multipartComponentInteractor != null && appConfig.isShaclReady();
+    }
+
+    @Override
+    public ParticipantPersistenceAndIndexing getParticipantPersistence() {
+        return appConfig.getParticipantPersistence();
+    }
+
+    @Override
+    public RenderedDocument getRenderedSelfDescription() throws IOException {
+        try {
+            return ((ParISSelfDescription) createSelfDescriptionProvider()).getRenderedSelfDescription();
+        }
+        catch (URISyntaxException e)
+        {
+            throw new IOException("Invalid component URI.", e);
+        }
+    }
 }